@@ -0,0 +1,25 @@
+package cz.gattserver.tulaci.calendar;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Spouští benchmarky vždy s GC profilerem, aby se vedle času reportovala i rychlost alokace
+ * ({@code gc.alloc.rate.norm}). Ostatní přepínače JMH (výběr benchmarků, {@code -p}, {@code -f}, ...) fungují
+ * beze změny.
+ *
+ * @author gattaka
+ *
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -0,0 +1,213 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Jednotlivé fáze {@link CalendarBuilder}u měřené samostatně: čtení a parsování vstupů, modely listů (tabulky dnů,
+ * všechny listy paralelně), zpracování a vložení fotek, převod modelů na POI a zápis sešitu.
+ * <p>
+ * Parsování běží nad velkým seznamem {@link #birthdays}. Listy ale pojmou jen
+ * {@link SyntheticData#MAX_BIRTHDAYS_PER_MONTH} oslavenců na měsíc, fáze rozložení proto pracují se seznamem,
+ * který se do listu vejde.
+ *
+ * @author gattaka
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CalendarBuilderBenchmark {
+
+	private static final int YEAR = 2019;
+
+	@Param({ "10000" })
+	public int birthdays;
+
+	@Param({ "4000" })
+	public int photoWidth;
+
+	@Param({ "XLS", "XLSX" })
+	public OutputFormat format;
+
+	private Path dataDir;
+	private Path rosterDir;
+	private byte[] rawPhoto;
+
+	/**
+	 * Builder s načtenými vstupy a připravenými fotkami
+	 */
+	private CalendarBuilder builder;
+	private List<SheetLayout> layouts;
+	private List<Photo> photos;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dataDir = SyntheticData.create(YEAR, 12 * SyntheticData.MAX_BIRTHDAYS_PER_MONTH, photoWidth,
+				photoWidth * 3 / 4);
+		rosterDir = SyntheticData.create(YEAR, birthdays, 0, 0);
+		rawPhoto = Files.readAllBytes(dataDir.resolve("foto1.jpg"));
+		builder = newBuilder(dataDir);
+		builder.readInputs();
+		builder.preparePhotos(null);
+		layouts = builder.createLayouts();
+		photos = builder.getPhotos();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		SyntheticData.delete(dataDir);
+		SyntheticData.delete(rosterDir);
+	}
+
+	private CalendarBuilder newBuilder(Path dir) {
+		CalendarBuilder calendarBuilder = new CalendarBuilder();
+		calendarBuilder.setDataDir(dir);
+		calendarBuilder.setOutputFormat(format);
+		calendarBuilder.setImageCache(null);
+		return calendarBuilder;
+	}
+
+	/**
+	 * Sešit se všemi listy, připravený k zápisu. Staví se před každým voláním, protože streamovací sešit jde zapsat
+	 * jen jednou.
+	 */
+	@State(Scope.Thread)
+	public static class BuiltWorkbook {
+
+		Workbook workbook;
+
+		@Setup(Level.Invocation)
+		public void setUp(CalendarBuilderBenchmark benchmark) {
+			workbook = benchmark.format.createWorkbook(100);
+			SheetSerializer serializer = new SheetSerializer(workbook);
+			for (int sheetNo = 0; sheetNo < SyntheticData.PHOTO_COUNT; sheetNo++)
+				serializer.write(benchmark.layouts.get(sheetNo), benchmark.photos.get(sheetNo));
+		}
+
+		@TearDown(Level.Invocation)
+		public void tearDown() throws IOException {
+			OutputFormat.dispose(workbook);
+			workbook.close();
+		}
+
+	}
+
+	@Benchmark
+	public CalendarBuilder parseInputs() throws IOException {
+		CalendarBuilder calendarBuilder = newBuilder(rosterDir);
+		calendarBuilder.readInputs();
+		return calendarBuilder;
+	}
+
+	@Benchmark
+	public List<SheetLayout> daysTables() {
+		List<SheetLayout> result = new ArrayList<>();
+		for (int month = 1; month <= 12; month++) {
+			SheetLayout.Builder layout = new SheetLayout.Builder("M" + month);
+			builder.createDaysTable(layout, month);
+			result.add(layout.build());
+		}
+		return result;
+	}
+
+	@Benchmark
+	public List<SheetLayout> layouts() {
+		return builder.createLayouts();
+	}
+
+	@Benchmark
+	public byte[] photoProcessing() throws IOException {
+		return builder.getPhotoProcessor().process(rawPhoto, PhotoSlot.MONTH);
+	}
+
+	@Benchmark
+	public Workbook pictureEmbedding() throws IOException {
+		Workbook workbook = format.createWorkbook(100);
+		try {
+			SheetSerializer serializer = new SheetSerializer(workbook);
+			for (int sheetNo = 0; sheetNo < SyntheticData.PHOTO_COUNT; sheetNo++)
+				serializer.addPhoto(workbook.createSheet("S" + sheetNo), layouts.get(sheetNo).getPhotoAnchor(),
+						photos.get(sheetNo));
+			return workbook;
+		} finally {
+			OutputFormat.dispose(workbook);
+		}
+	}
+
+	@Benchmark
+	public Workbook backSheet() throws IOException {
+		Workbook workbook = format.createWorkbook(100);
+		try {
+			SheetLayout.Builder layout = new SheetLayout.Builder("Poslední list");
+			builder.createBackSheet(layout, 13);
+			new SheetSerializer(workbook).write(layout.build(), photos.get(13));
+			return workbook;
+		} finally {
+			OutputFormat.dispose(workbook);
+		}
+	}
+
+	@Benchmark
+	public Workbook serialize() throws IOException {
+		Workbook workbook = format.createWorkbook(100);
+		try {
+			SheetSerializer serializer = new SheetSerializer(workbook);
+			for (int sheetNo = 0; sheetNo < SyntheticData.PHOTO_COUNT; sheetNo++)
+				serializer.write(layouts.get(sheetNo), photos.get(sheetNo));
+			return workbook;
+		} finally {
+			OutputFormat.dispose(workbook);
+		}
+	}
+
+	@Benchmark
+	public long write(BuiltWorkbook built) throws IOException {
+		CountingOutputStream os = new CountingOutputStream();
+		built.workbook.write(os);
+		return os.count;
+	}
+
+	/**
+	 * Zahazuje zapsaná data, jen je počítá
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generátor syntetických vstupů pro benchmarky -- velký seznam narozenin a fotky ve velikosti originálů z
+ * fotoaparátu. Data jsou deterministická (pevné semínko), aby byly běhy porovnatelné.
+ *
+ * @author gattaka
+ *
+ */
+public final class SyntheticData {
+
+	public static final int PHOTO_COUNT = 14;
+
+	/**
+	 * Měsíční list má pod hlavičkou narozenin místo jen na 7 řádků, pak začíná seznam akcí
+	 */
+	public static final int MAX_BIRTHDAYS_PER_MONTH = 7;
+
+	private SyntheticData() {
+	}
+
+	/**
+	 * Založí dočasný adresář s kompletní sadou vstupů. Narozeniny se rozloží rovnoměrně do měsíců.
+	 *
+	 * @param photoWidth
+	 *            šířka fotek v pixelech; 0 = fotky nevytvářet (stačí pro čtení textových vstupů)
+	 */
+	public static Path create(int year, int birthdays, int photoWidth, int photoHeight) throws IOException {
+		Path dir = Files.createTempDirectory("tulaci-bench");
+		Random random = new Random(42);
+
+		List<String> data = new ArrayList<>();
+		data.add(String.valueOf(year));
+		data.add("popisky.txt");
+		data.add("svatky.txt");
+		data.add("narozeniny.txt");
+		data.add("foto.txt");
+		data.add("nezapomen.txt");
+		Files.write(dir.resolve("data.txt"), data);
+
+		List<String> labels = new ArrayList<>();
+		for (int month = 1; month <= 12; month++)
+			labels.add("Hláška pro měsíc " + month + ", dost dlouhá, aby zabrala celou šířku řádku.");
+		Files.write(dir.resolve("popisky.txt"), labels);
+
+		List<String> svatky = new ArrayList<>();
+		for (int month = 1; month <= 12; month++)
+			for (int day = 1; day <= CalendarIndex.monthLength(2000, month); day++)
+				svatky.add(day + "." + month + ".\tJméno" + day + "-" + month);
+		Files.write(dir.resolve("svatky.txt"), svatky);
+
+		Files.write(dir.resolve("narozeniny.txt"), birthdayLines(birthdays, year, random));
+
+		List<String> akce = new ArrayList<>();
+		for (int month = 1; month <= 12; month++)
+			akce.add("1. Výprava\t8. - 10. Tábor\t15. Schůzka\t22. Brigáda\t29. Oslava");
+		Files.write(dir.resolve("nezapomen.txt"), akce);
+
+		List<String> foto = new ArrayList<>();
+		for (int i = 0; i < PHOTO_COUNT; i++) {
+			String name = "foto" + i + ".jpg";
+			if (photoWidth > 0)
+				writePhoto(dir.resolve(name), photoWidth, photoHeight, random);
+			foto.add(name + "\tAkce " + i);
+		}
+		Files.write(dir.resolve("foto.txt"), foto);
+
+		return dir;
+	}
+
+	public static List<String> birthdayLines(int count, int year, Random random) {
+		List<String> lines = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			int month = 1 + i % 12;
+			int birthYear = year - 6 - random.nextInt(60);
+			int day = 1 + random.nextInt(CalendarIndex.monthLength(birthYear, month));
+			lines.add("Člen " + i + "\t" + day + "." + month + "." + birthYear);
+		}
+		return lines;
+	}
+
+	/**
+	 * Přechod s náhodnými obdélníky -- komprimuje se podobně jako skutečná fotka, ne jako šum ani jako plocha
+	 */
+	public static void writePhoto(Path path, int width, int height, Random random) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height,
+					new Color(random.nextInt())));
+			g.fillRect(0, 0, width, height);
+			for (int i = 0; i < 400; i++) {
+				g.setColor(new Color(random.nextInt(), true));
+				g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width / 4) + 1,
+						random.nextInt(height / 4) + 1);
+			}
+		} finally {
+			g.dispose();
+		}
+		ImageIO.write(image, "jpg", path.toFile());
+	}
+
+	public static void delete(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Celý výstup sešitu z hotových modelů a fotek -- u POI převod na objekty a zápis, u
+ * {@link OutputFormat#XLSX_DIRECT} přímý zápis přes {@link DirectXlsxWriter}. Alokace na operaci reportuje GC
+ * profiler z {@link BenchmarkMain}.
+ *
+ * @author gattaka
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkbookWriteBenchmark {
+
+	private static final int YEAR = 2019;
+
+	@Param({ "4000" })
+	public int photoWidth;
+
+	@Param({ "XLS", "XLSX", "XLSX_DIRECT" })
+	public OutputFormat format;
+
+	private Path dataDir;
+	private List<SheetLayout> layouts;
+	private List<Photo> photos;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		dataDir = SyntheticData.create(YEAR, 12 * SyntheticData.MAX_BIRTHDAYS_PER_MONTH, photoWidth,
+				photoWidth * 3 / 4);
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setImageCache(null);
+		builder.readInputs();
+		builder.preparePhotos(null);
+		layouts = builder.createLayouts();
+		photos = builder.getPhotos();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		PhotoPipeline.close(photos);
+		SyntheticData.delete(dataDir);
+	}
+
+	@Benchmark
+	public long write() throws IOException {
+		CountingOutputStream os = new CountingOutputStream();
+		if (format == OutputFormat.XLSX_DIRECT)
+			return new DirectXlsxWriter(layouts, photos).write(os);
+
+		Workbook workbook = format.createWorkbook(100);
+		try {
+			SheetSerializer serializer = new SheetSerializer(workbook);
+			for (int sheetNo = 0; sheetNo < SyntheticData.PHOTO_COUNT; sheetNo++)
+				serializer.write(layouts.get(sheetNo), photos.get(sheetNo));
+			workbook.write(os);
+			return os.count;
+		} finally {
+			OutputFormat.dispose(workbook);
+			workbook.close();
+		}
+	}
+
+	/**
+	 * Zahazuje zapsaná data, jen je počítá
+	 */
+	private static final class CountingOutputStream extends OutputStream {
+
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
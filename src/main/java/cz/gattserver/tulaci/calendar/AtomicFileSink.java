@@ -0,0 +1,100 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+
+/**
+ * Zápis do souboru tak, aby cíl nikdy nebyl rozepsaný. Sešit se píše do dočasného souboru ve stejném adresáři, při
+ * {@link #commit()} se data vynutí na disk a soubor se atomicky přesune na místo cíle. Po chybě zůstane původní
+ * soubor beze změny a dočasný se smaže.
+ * <p>
+ * Dočasný soubor začíná tečkou, {@link CalendarWatcher} ho tak nepovažuje za vstup.
+ *
+ * @author gattaka
+ *
+ */
+public class AtomicFileSink implements OutputSink {
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final Path target;
+	private Path tmp;
+	private FileChannel channel;
+	private OutputStream outputStream;
+
+	public AtomicFileSink(Path target) {
+		this.target = target.toAbsolutePath();
+	}
+
+	public Path getTarget() {
+		return target;
+	}
+
+	@Override
+	public OutputStream open() throws IOException {
+		if (channel != null)
+			throw new IllegalStateException("Výstup už byl otevřen: " + target);
+		Path dir = target.getParent();
+		if (dir != null)
+			Files.createDirectories(dir);
+		channel = createTemporary();
+		outputStream = ChannelOutputSink.stream(channel);
+		return outputStream;
+	}
+
+	/**
+	 * Založí dočasný soubor s náhodným jménem. Na rozdíl od {@link Files#createTempFile} nemá soubor práva jen pro
+	 * vlastníka, platí pro něj umask jako pro každý jiný nový soubor, a stejná práva má pak i přesunutý výstup.
+	 */
+	private FileChannel createTemporary() throws IOException {
+		while (true) {
+			String name = "." + target.getFileName() + "." + Long.toUnsignedString(RANDOM.nextLong(), 36) + ".tmp";
+			Path path = target.resolveSibling(name);
+			try {
+				FileChannel created = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				tmp = path;
+				return created;
+			} catch (FileAlreadyExistsException e) {
+				// jméno je obsazené, zkusí se jiné
+			}
+		}
+	}
+
+	@Override
+	public void commit() throws IOException {
+		try {
+			outputStream.flush();
+			// přesun je atomický jen pro jmenné záznamy, data musí být na disku dřív
+			channel.force(true);
+			channel.close();
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			abort();
+		}
+	}
+
+	@Override
+	public void abort() {
+		try {
+			if (channel != null)
+				channel.close();
+			if (tmp != null)
+				Files.deleteIfExists(tmp);
+		} catch (IOException e) {
+			// úklid je jen snaha, chybu hlásí zápis
+		}
+	}
+
+	@Override
+	public String toString() {
+		return target.toString();
+	}
+
+}
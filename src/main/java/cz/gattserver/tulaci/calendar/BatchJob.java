@@ -0,0 +1,104 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Jedna položka dávky -- rok, adresář se vstupy a cílový soubor.
+ *
+ * @author gattaka
+ *
+ */
+public final class BatchJob {
+
+	private final int year;
+	private final Path inputDir;
+	private final Path output;
+
+	public BatchJob(int year, Path inputDir, Path output) {
+		this.year = year;
+		this.inputDir = inputDir;
+		this.output = output;
+	}
+
+	/**
+	 * Načte seznam úloh. Každý neprázdný řádek má formát {@code rok -tabulátor- adresář -tabulátor- výstup}, řádky
+	 * začínající {@code #} jsou komentáře. Relativní cesty se berou vůči adresáři seznamu.
+	 */
+	public static List<BatchJob> readJobs(Path jobsFile) throws IOException {
+		if (!Files.exists(jobsFile))
+			throw new IllegalStateException("Soubor " + jobsFile.toString() + " neexistuje");
+		Path base = jobsFile.toAbsolutePath().getParent();
+		List<BatchJob> jobs = new ArrayList<>();
+		for (String line : Files.readAllLines(jobsFile)) {
+			if (line.trim().isEmpty() || line.startsWith("#"))
+				continue;
+			jobs.add(parse(line, base));
+		}
+		return jobs;
+	}
+
+	public static BatchJob parse(String line, Path base) {
+		String[] jobData = line.trim().split("\t");
+		if (jobData.length != 3)
+			writeErrorJob(line);
+		try {
+			int year = Integer.parseInt(jobData[0]);
+			return new BatchJob(year, base.resolve(jobData[1]), base.resolve(jobData[2]));
+		} catch (NumberFormatException e) {
+			writeErrorJob(line);
+			return null;
+		}
+	}
+
+	/**
+	 * Formát výstupu podle přípony cílového souboru
+	 */
+	public OutputFormat getOutputFormat() {
+		return OutputFormat.forFile(output);
+	}
+
+	public CalendarBuilder createBuilder() {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setYearOverride(year);
+		builder.setDataDir(inputDir);
+		builder.setOutputFile(output);
+		builder.setOutputFormat(getOutputFormat());
+		return builder;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	public Path getInputDir() {
+		return inputDir;
+	}
+
+	public Path getOutput() {
+		return output;
+	}
+
+	/**
+	 * Řádek ve formátu, který čte {@link #parse(String, Path)}
+	 */
+	public String format() {
+		return year + "\t" + inputDir.toAbsolutePath() + "\t" + output.toAbsolutePath();
+	}
+
+	@Override
+	public String toString() {
+		return year + " " + inputDir + " -> " + output;
+	}
+
+	private static void writeErrorJob(String errorLine) {
+		throw new IllegalStateException("Řádek úlohy '" + errorLine + "' má nevyhovující formát\n"
+				+ "\tVyžaduji formát: -rok-tabulátor-adresář se vstupy-tabulátor-výstupní soubor-\n"
+				+ "\tNapříklad: 2019\toddil1\t" + Paths.get("vystup", "Tuláci kalendář 2019.xls"));
+	}
+
+}
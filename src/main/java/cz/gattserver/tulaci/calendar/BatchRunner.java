@@ -0,0 +1,123 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Generuje více kalendářů v jednom JVM. Každá úloha má vlastní {@link CalendarBuilder} i sešit, úlohy běží na
+ * omezeném {@link ForkJoinPool}, takže propustnost roste s počtem jader.
+ *
+ * @author gattaka
+ *
+ */
+public class BatchRunner {
+
+	private final int parallelism;
+
+	public BatchRunner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public BatchRunner(int parallelism) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Paralelismus musí být kladný, je: " + parallelism);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Výsledek jedné úlohy -- doba běhu a případná chyba
+	 */
+	public static final class BatchResult {
+
+		private final BatchJob job;
+		private final long durationNanos;
+		private final Exception error;
+
+		BatchResult(BatchJob job, long durationNanos, Exception error) {
+			this.job = job;
+			this.durationNanos = durationNanos;
+			this.error = error;
+		}
+
+		public BatchJob getJob() {
+			return job;
+		}
+
+		public long getDurationMillis() {
+			return durationNanos / 1_000_000;
+		}
+
+		public Exception getError() {
+			return error;
+		}
+
+		public boolean isSuccess() {
+			return error == null;
+		}
+
+	}
+
+	/**
+	 * Spustí všechny úlohy, počká na jejich dokončení a vypíše souhrn. Chyba jedné úlohy ostatní nezastaví.
+	 */
+	public List<BatchResult> run(List<BatchJob> jobs) throws InterruptedException {
+		long start = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			List<Future<BatchResult>> futures = new ArrayList<>();
+			for (BatchJob job : jobs)
+				futures.add(pool.submit(() -> runJob(job)));
+
+			List<BatchResult> results = new ArrayList<>();
+			for (Future<BatchResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					// runJob chyby sám zachytává
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			printSummary(results, System.nanoTime() - start);
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private BatchResult runJob(BatchJob job) {
+		long start = System.nanoTime();
+		try {
+			job.createBuilder().build();
+			return new BatchResult(job, System.nanoTime() - start, null);
+		} catch (Exception e) {
+			return new BatchResult(job, System.nanoTime() - start, e);
+		}
+	}
+
+	private void printSummary(List<BatchResult> results, long totalNanos) {
+		long sumMillis = 0;
+		int failed = 0;
+		System.out.println("Souhrn dávky:");
+		for (BatchResult result : results) {
+			sumMillis += result.getDurationMillis();
+			if (result.isSuccess()) {
+				System.out.println("\t" + result.getDurationMillis() + " ms\t" + result.getJob());
+			} else {
+				failed++;
+				System.out.println("\t" + result.getDurationMillis() + " ms\t" + result.getJob() + "\tCHYBA: "
+						+ result.getError().getMessage());
+			}
+		}
+		long totalMillis = totalNanos / 1_000_000;
+		System.out.println("Úloh: " + results.size() + ", chyb: " + failed + ", vláken: " + parallelism);
+		System.out.println("Celkem: " + totalMillis + " ms, součet úloh: " + sumMillis + " ms, zrychlení: "
+				+ String.format("%.2f", totalMillis == 0 ? 1.0 : (double) sumMillis / totalMillis) + "x");
+		System.out.println(ProcessedImageCache.getShared());
+		System.out.println(PictureStorage.getShared());
+		System.out.println(ReferenceDataRegistry.getShared());
+	}
+
+}
@@ -1,52 +1,63 @@
 package cz.gattserver.tulaci.calendar;
 
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor.HSSFColorPredefined;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.ClientAnchor;
-import org.apache.poi.ss.usermodel.CreationHelper;
-import org.apache.poi.ss.usermodel.Drawing;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.HorizontalAlignment;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.util.IOUtils;
+
+import cz.gattserver.tulaci.calendar.CalendarEvents.InputFileEvent;
+import cz.gattserver.tulaci.calendar.CalendarEvents.PageRenderEvent;
+import cz.gattserver.tulaci.calendar.CalendarEvents.SheetLayoutEvent;
+import cz.gattserver.tulaci.calendar.CalendarEvents.WorkbookWriteEvent;
 
 public class CalendarBuilder {
 
-	private static final String[] sheetNames = new String[] { "První list", "Leden", "Únor", "Březen", "Duben",
-			"Květen", "Červen", "Červenec", "Srpen", "Září", "Říjen", "Listopad", "Prosinec", "Poslední list" };
+	public static final Path DEFAULT_DATA_DIR = Paths.get("./data/");
 
-	private static final String prefix = "./data/";
+	private Path dataDir = DEFAULT_DATA_DIR;
+	private Path inputDir;
+	private Integer yearOverride;
+	private Path outputFile;
 
 	private int year;
 	private List<String> fotoFileLines;
 	private List<String> labelsFileLines;
 	private List<String> akceFileLines;
 
-	private Map<String, String> svatkyMap;
-	private Map<LocalDate, String> birthdaysMap;
+	private CalendarIndex calendarIndex;
 	private List<List<String>> akceList;
 
+	private List<Photo> photos;
+
+	private PhotoProcessor photoProcessor = new PhotoProcessor();
+	private ProcessedImageCache imageCache = ProcessedImageCache.getShared();
+	private PictureStorage pictureStorage = PictureStorage.getShared();
+	private ReferenceDataRegistry referenceData = ReferenceDataRegistry.getShared();
+
+	private boolean incremental;
+	private boolean deterministic;
+	private ContentManifest contentManifest;
+	private List<Integer> rebuiltSheets;
+
+	private OutputFormat outputFormat = OutputFormat.XLS;
+	private int rowWindowSize = 100;
+
 	private static class BirthdayEntry {
 		int day;
 		String name;
@@ -60,9 +71,371 @@ public class CalendarBuilder {
 	public CalendarBuilder() {
 	}
 
+	public Path getDataDir() {
+		return dataDir;
+	}
+
+	/**
+	 * Adresář se vstupy ({@code data.txt} a soubory, na které odkazuje), nebo archiv {@code .zip} se stejným
+	 * obsahem, viz {@link InputBundle}
+	 */
+	public void setDataDir(Path dataDir) {
+		this.dataDir = dataDir;
+	}
+
+	public Integer getYearOverride() {
+		return yearOverride;
+	}
+
+	/**
+	 * Rok, který má přednost před rokem z {@code data.txt}; {@code null} = brát z {@code data.txt}
+	 */
+	public void setYearOverride(Integer yearOverride) {
+		this.yearOverride = yearOverride;
+	}
+
+	/**
+	 * @return rok kalendáře, známý až po načtení vstupů
+	 */
+	public int getYear() {
+		return year;
+	}
+
+	public Path getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * Cílový soubor; {@code null} = {@code Tuláci kalendář <rok>.<přípona>} v pracovním adresáři
+	 */
+	public void setOutputFile(Path outputFile) {
+		this.outputFile = outputFile;
+	}
+
+	public PhotoProcessor getPhotoProcessor() {
+		return photoProcessor;
+	}
+
+	/**
+	 * Zpracování fotek před vložením (DPI, kvalita); {@code null} = vložit originály beze změny
+	 */
+	public void setPhotoProcessor(PhotoProcessor photoProcessor) {
+		this.photoProcessor = photoProcessor;
+	}
+
+	public ProcessedImageCache getImageCache() {
+		return imageCache;
+	}
+
+	/**
+	 * Cache zpracovaných fotek; výchozí je {@link ProcessedImageCache#getShared()}, {@code null} = bez cache
+	 */
+	public void setImageCache(ProcessedImageCache imageCache) {
+		this.imageCache = imageCache;
+	}
+
+	public PictureStorage getPictureStorage() {
+		return pictureStorage;
+	}
+
+	/**
+	 * Úložiště připravených fotek s rozpočtem haldy; výchozí je {@link PictureStorage#getShared()}, {@code null} =
+	 * všechny fotky na haldě
+	 */
+	public void setPictureStorage(PictureStorage pictureStorage) {
+		this.pictureStorage = pictureStorage;
+	}
+
+	public ReferenceDataRegistry getReferenceData() {
+		return referenceData;
+	}
+
+	/**
+	 * Sdílené svátky a texty posledního listu; výchozí je {@link ReferenceDataRegistry#getShared()}
+	 */
+	public void setReferenceData(ReferenceDataRegistry referenceData) {
+		this.referenceData = referenceData;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Inkrementální režim -- otisky vstupů listů se ukládají vedle výstupu a pokud se od minula žádný nezměnil,
+	 * výstup se nepřepisuje. Zpracované fotky nezměněných listů se berou z cache.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isDeterministic() {
+		return deterministic;
+	}
+
+	/**
+	 * Deterministický režim -- stejné vstupy dají bajtově stejný sešit (bez časů v metadatech) a {@link #build()}
+	 * uloží vedle výstupu otisky listů ({@link ContentManifest}) pro regresní porovnání. Styly i fotky se do sešitu
+	 * přidávají v pořadí listů a buněk, takže jejich indexy jsou stálé v obou režimech. {@code .xlsx} se v tomto
+	 * režimu vždy zapisuje přes {@link DirectXlsxWriter}.
+	 */
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	/**
+	 * @return otisky listů posledního zapsaného sešitu, nebo {@code null}, pokud se ještě nezapisoval
+	 */
+	public ContentManifest getContentManifest() {
+		return contentManifest;
+	}
+
+	/**
+	 * @return indexy listů, jejichž vstupy se při posledním {@link #build()} změnily (v neinkrementálním režimu
+	 *         všechny)
+	 */
+	public List<Integer> getRebuiltSheets() {
+		return rebuiltSheets;
+	}
+
+	public OutputFormat getOutputFormat() {
+		return outputFormat;
+	}
+
+	public void setOutputFormat(OutputFormat outputFormat) {
+		this.outputFormat = outputFormat;
+	}
+
+	public int getRowWindowSize() {
+		return rowWindowSize;
+	}
+
+	/**
+	 * Počet řádků, které streamovací {@link OutputFormat#XLSX} drží v paměti; nejméně
+	 * {@link OutputFormat#MIN_ROW_WINDOW_SIZE}.
+	 */
+	public void setRowWindowSize(int rowWindowSize) {
+		this.rowWindowSize = rowWindowSize;
+	}
+
 	public void build() throws IOException {
+		try {
+			buildFile();
+		} finally {
+			releaseInputs();
+		}
+	}
 
-		Path dataFilePath = Paths.get(prefix, "data.txt");
+	private void buildFile() throws IOException {
+		validateInputs();
+		readInputs();
+
+		File file = outputFile != null ? outputFile.toFile()
+				: new File("Tuláci kalendář " + year + outputFormat.getExtension());
+
+		IncrementalCache cache = null;
+		rebuiltSheets = new ArrayList<>();
+		if (incremental) {
+			cache = IncrementalCache.open(file.toPath());
+			List<String> fingerprints = new ArrayList<>();
+			for (int sheetNo = 0; sheetNo < ReferenceDataRegistry.SHEET_COUNT; sheetNo++)
+				fingerprints.add(computeFingerprint(sheetNo, cache));
+			rebuiltSheets = cache.changedSheets(fingerprints);
+			if (rebuiltSheets.isEmpty() && file.exists()) {
+				System.out.println("Kalendář je aktuální: \t" + file.getAbsolutePath());
+				return;
+			}
+			System.out.println("Změněné listy: \t" + describeSheets(rebuiltSheets));
+		} else {
+			for (int sheetNo = 0; sheetNo < ReferenceDataRegistry.SHEET_COUNT; sheetNo++)
+				rebuiltSheets.add(sheetNo);
+		}
+
+		System.out.println("Zapisuji kalendář do souboru: \t" + file.getAbsolutePath());
+		// otevřený výstup nikdy není rozepsaný, viz AtomicFileSink
+		writeWorkbook(OutputSink.file(file.toPath()), cache);
+		if (deterministic)
+			contentManifest.write(ContentManifest.pathFor(file.toPath()));
+		else
+			// otisky z dřívějšího deterministického sestavení už k sešitu nepatří
+			Files.deleteIfExists(ContentManifest.pathFor(file.toPath()));
+
+		if (cache != null)
+			cache.save();
+	}
+
+	/**
+	 * Sestaví celý kalendář do proudu, který nezavírá. Výstupní soubor ani inkrementální režim se neuplatní.
+	 */
+	public void build(OutputStream outputStream) throws IOException {
+		build(OutputSink.of(outputStream));
+	}
+
+	/**
+	 * Sestaví celý kalendář do daného cíle. Výstupní soubor ani inkrementální režim se neuplatní.
+	 */
+	public void build(OutputSink sink) throws IOException {
+		validateInputs();
+		try {
+			readInputs();
+			rebuiltSheets = new ArrayList<>();
+			for (int sheetNo = 0; sheetNo < ReferenceDataRegistry.SHEET_COUNT; sheetNo++)
+				rebuiltSheets.add(sheetNo);
+			writeWorkbook(sink, null);
+		} finally {
+			releaseInputs();
+		}
+	}
+
+	/**
+	 * Otisk všech vstupů sestavení (po {@link #readInputs()}). Stejný otisk znamená stejný obsah kalendáře, hodí se
+	 * proto jako klíč cache hotových kalendářů.
+	 */
+	public String computeInputFingerprint(PhotoHasher hasher) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int sheetNo = 0; sheetNo < ReferenceDataRegistry.SHEET_COUNT; sheetNo++)
+			sb.append(computeFingerprint(sheetNo, hasher)).append('\n');
+		return ContentHash.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Připraví fotky, postaví sešit a zapíše ho do cíle. Cíl se otevře až s hotovými fotkami a po chybě se zahodí.
+	 *
+	 * @param cache
+	 *            cache inkrementálního sestavení, nebo {@code null}
+	 */
+	void writeWorkbook(OutputSink sink, IncrementalCache cache) throws IOException {
+		// modely jsou levné a odhalí chyby rozložení dřív, než se začnou zpracovávat fotky
+		List<SheetLayout> layouts = createLayouts();
+		preparePhotos(cache);
+		contentManifest = null;
+		ContentManifest manifest = ContentManifest.of(layouts, photos);
+
+		boolean committed = false;
+		try {
+			CountingOutputStream countingStream = new CountingOutputStream(sink.open());
+			WorkbookWriteEvent event = new WorkbookWriteEvent();
+			event.begin();
+			// SXSSF ukládá časy do metadat i položek ZIP, přímý zápis je deterministický sám od sebe
+			OutputFormat writtenFormat = deterministic && outputFormat == OutputFormat.XLSX ? OutputFormat.XLSX_DIRECT
+					: outputFormat;
+			if (writtenFormat == OutputFormat.XLSX_DIRECT)
+				new DirectXlsxWriter(layouts, photos).write(countingStream);
+			else
+				writePoiWorkbook(countingStream, layouts);
+			sink.commit();
+			committed = true;
+			contentManifest = manifest;
+			event.end();
+			if (event.shouldCommit()) {
+				event.target = sink.toString();
+				event.format = writtenFormat.name();
+				event.bytes = countingStream.getCount();
+				event.commit();
+			}
+		} finally {
+			if (!committed)
+				sink.abort();
+			PhotoPipeline.close(photos);
+			photos = null;
+		}
+	}
+
+	private void writePoiWorkbook(OutputStream outputStream, List<SheetLayout> layouts) throws IOException {
+		Workbook workbook = outputFormat.createWorkbook(rowWindowSize);
+		try {
+			SheetSerializer serializer = new SheetSerializer(workbook);
+			for (int sheetNo = 0; sheetNo < layouts.size(); sheetNo++)
+				serializer.write(layouts.get(sheetNo), photos.get(sheetNo));
+			workbook.write(outputStream);
+		} finally {
+			OutputFormat.dispose(workbook);
+			workbook.close();
+		}
+	}
+
+	/**
+	 * Vykreslí každý list do samostatného PNG místo sešitu, stránky paralelně
+	 *
+	 * @param outputDir
+	 *            adresář pro stránky, vytvoří se, pokud neexistuje
+	 * @return zapsané soubory v pořadí listů
+	 */
+	public List<Path> renderPages(Path outputDir, PageRenderer renderer) throws IOException {
+		validateInputs();
+		try {
+			readInputs();
+			List<SheetLayout> layouts = createLayouts();
+			preparePhotos(null);
+			Files.createDirectories(outputDir);
+			System.out.println("Kreslím stránky do adresáře: \t" + outputDir.toAbsolutePath());
+			return IntStream.range(0, layouts.size()).parallel()
+					.mapToObj(sheetNo -> renderPage(outputDir, renderer, layouts.get(sheetNo), sheetNo))
+					.collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			PhotoPipeline.close(photos);
+			photos = null;
+			releaseInputs();
+		}
+	}
+
+	private Path renderPage(Path outputDir, PageRenderer renderer, SheetLayout layout, int sheetNo) {
+		PageRenderEvent event = new PageRenderEvent();
+		event.begin();
+		Path file = outputDir.resolve(String.format("%02d %s.png", sheetNo + 1, layout.getName()));
+		try {
+			BufferedImage image = renderer.render(layout, photos.get(sheetNo));
+			try (CountingOutputStream outputStream = new CountingOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(file)))) {
+				renderer.writePng(image, outputStream);
+				event.end();
+				if (event.shouldCommit()) {
+					event.sheet = layout.getName();
+					event.dpi = renderer.getDpi();
+					event.width = image.getWidth();
+					event.height = image.getHeight();
+					event.bytes = outputStream.getCount();
+					event.commit();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Stránku " + file + " se nepodařilo zapsat", e);
+		}
+		return file;
+	}
+
+	/**
+	 * Vrátí vstupy vypůjčené v {@link #readInputs()}; sestavení je volá samo, kdo volá {@link #readInputs()} přímo,
+	 * musí je zavolat sám
+	 */
+	void releaseInputs() {
+		if (inputDir != null)
+			InputBundle.release(inputDir);
+		inputDir = null;
+	}
+
+	/**
+	 * Zkontroluje všechny vstupy najednou, ještě před jakoukoliv prací se sešitem
+	 *
+	 * @throws IllegalStateException
+	 *             se seznamem všech nalezených chyb
+	 */
+	void validateInputs() {
+		new InputValidator(dataDir, yearOverride).check();
+	}
+
+	/**
+	 * Načte {@code data.txt} a všechny soubory, na které odkazuje. Vstupy zůstanou vypůjčené ({@link InputBundle})
+	 * až do {@link #releaseInputs()}.
+	 */
+	void readInputs() throws IOException {
+		InputFileEvent event = new InputFileEvent();
+		event.begin();
+		releaseInputs();
+		inputDir = InputBundle.acquire(dataDir);
+		Path dataFilePath = inputDir.resolve("data.txt");
 		if (!Files.exists(dataFilePath))
 			throw new IllegalStateException("Soubor " + dataFilePath.toString() + " neexistuje");
 		List<String> files = Files.readAllLines(dataFilePath);
@@ -71,64 +444,55 @@ public class CalendarBuilder {
 			throw new IllegalStateException(
 					"Vyžaduji parametry: \n\t rok \n\t název souboru s popisky \n\t název souboru se svátky \n\t název souboru s narozeninami \n\t název souboru s fotkami \n\t název souboru s akcemi");
 
-		try {
-			year = Integer.parseInt(files.get(0));
-		} catch (NumberFormatException e) {
-			throw new IllegalStateException("Rok má špatný formát: '" + files.get(0) + "', musí být celé číslo");
+		if (yearOverride != null) {
+			year = yearOverride;
+		} else {
+			try {
+				year = Integer.parseInt(files.get(0));
+			} catch (NumberFormatException e) {
+				throw new IllegalStateException("Rok má špatný formát: '" + files.get(0) + "', musí být celé číslo");
+			}
 		}
 
+		commitInputEvent(event, "data", dataFilePath, files.size());
+
 		System.out.println("Generuji kalendář pro rok: \t" + year);
 
+		event = new InputFileEvent();
+		event.begin();
 		String labelsFileName = files.get(1);
-		Path labelsFilePath = Paths.get(prefix, labelsFileName);
+		Path labelsFilePath = inputDir.resolve(labelsFileName);
 		if (!Files.exists(labelsFilePath)) {
 			throw new IllegalStateException("Soubor " + labelsFilePath.toString() + " neexistuje");
 		}
 		labelsFileLines = Files.readAllLines(labelsFilePath);
+		commitInputEvent(event, "popisky", labelsFilePath, labelsFileLines.size());
 		System.out.println("Budu brát data ze souboru: \t" + labelsFileName);
 
+		event = new InputFileEvent();
+		event.begin();
 		String svatkyFileName = files.get(2);
-		List<String> svatkyFileLines = Files.readAllLines(Paths.get(prefix, svatkyFileName));
+		NameDayTable nameDays = referenceData.getNameDays(inputDir.resolve(svatkyFileName));
 		System.out.println("Budu brát svátky ze souboru: \t" + svatkyFileName);
 
-		svatkyMap = new HashMap<>();
-		for (String svatek : svatkyFileLines) {
-			String[] svatekData = svatek.split("\t");
-			if (svatekData.length != 2) {
-				writeErrorSvatky(svatek);
-				return;
-			}
-			if (!svatekData[0].matches("[1-3]?[0-9]\\.[1]?[0-9]\\.")) {
-				writeErrorSvatky(svatek);
-				return;
-			}
-			svatkyMap.put(svatekData[0], svatekData[1]);
-		}
+		calendarIndex = new CalendarIndex(year);
+		calendarIndex.setNameDays(nameDays);
+		commitInputEvent(event, "svátky", inputDir.resolve(svatkyFileName), nameDays.getLineCount());
 
+		event = new InputFileEvent();
+		event.begin();
 		String birthdaysFileName = files.get(3);
-		List<String> birthdaysFileLines = Files.readAllLines(Paths.get(prefix, birthdaysFileName));
+		List<String> birthdaysFileLines = Files.readAllLines(inputDir.resolve(birthdaysFileName));
 		System.out.println("Budu brát narozky ze souboru: \t" + birthdaysFileName);
 
-		birthdaysMap = new HashMap<>();
-		for (String birthday : birthdaysFileLines) {
-			String[] birthdayData = birthday.split("\t");
-			if (birthdayData.length != 2) {
-				writeErrorBirthdays(birthday);
-				return;
-			}
-			try {
-				LocalDate date = LocalDate.parse(birthdayData[1], DateTimeFormatter.ofPattern("d.M.uuuu"));
-				String label = birthdayData[0] + " (" + (year - date.getYear()) + ")";
-				birthdaysMap.put(date.withYear(year), label);
-			} catch (DateTimeParseException e) {
-				writeErrorBirthdays(birthday);
-				return;
-			}
-		}
+		calendarIndex.addBirthdays(birthdaysFileLines);
+		commitInputEvent(event, "narozeniny", inputDir.resolve(birthdaysFileName), birthdaysFileLines.size());
 
+		event = new InputFileEvent();
+		event.begin();
 		String fotoFileName = files.get(4);
 		System.out.println("Budu brát narozky ze souboru: \t" + fotoFileName);
-		fotoFileLines = Files.readAllLines(Paths.get(prefix, fotoFileName));
+		fotoFileLines = Files.readAllLines(inputDir.resolve(fotoFileName));
 		if (fotoFileLines.size() != 14) {
 			throw new IllegalStateException("Chyba souboru '" + fotoFileName + "' očekávám následující obsah:\n"
 					+ "\t jméno souboru fotky na první stránku\n"
@@ -137,10 +501,13 @@ public class CalendarBuilder {
 					+ "\t jméno souboru fotky -tabulátor- popisek pro prosinec\n"
 					+ "\t jméno souboru fotky na poslední stránku\n");
 		}
+		commitInputEvent(event, "fotky", inputDir.resolve(fotoFileName), fotoFileLines.size());
 
+		event = new InputFileEvent();
+		event.begin();
 		akceList = new ArrayList<>();
 		String akceFileName = files.get(5);
-		akceFileLines = Files.readAllLines(Paths.get(prefix, akceFileName));
+		akceFileLines = Files.readAllLines(inputDir.resolve(akceFileName));
 		if (akceFileLines.size() != 12) {
 			throw new IllegalStateException("Chyba souboru '" + akceFileName + "' očekávám následující obsah:\n"
 					+ "\t akce leden1 -tabulátor- akce leden2 -tabulátor- ...\n"
@@ -153,586 +520,271 @@ public class CalendarBuilder {
 					akce.add(a);
 			}
 		}
+		commitInputEvent(event, "akce", inputDir.resolve(akceFileName), akceFileLines.size());
+	}
 
-		File file = new File("Tuláci kalendář " + year + ".xls");
-
-		try (Workbook workbook = new HSSFWorkbook(); FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+	private static void commitInputEvent(InputFileEvent event, String kind, Path file, int lines) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.kind = kind;
+			event.file = file.toString();
+			event.lines = lines;
+			event.commit();
+		}
+	}
 
-			for (int sheetNo = 0; sheetNo < sheetNames.length; sheetNo++) {
-				Sheet sheet = workbook.createSheet(sheetNames[sheetNo]);
+	/**
+	 * Paralelně připraví fotky všech listů
+	 *
+	 * @param cache
+	 *            cache inkrementálního sestavení, nebo {@code null}
+	 */
+	void preparePhotos(IncrementalCache cache) throws IOException {
+		PhotoPipeline pipeline = new PhotoPipeline(inputDir, photoProcessor, imageCache, cache);
+		pipeline.setStorage(pictureStorage);
+		try {
+			photos = pipeline.prepare(fotoFileLines);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
 
-				for (int c = 0; c < 7; c++)
-					sheet.setColumnWidth(c, 2400);
+	/**
+	 * @return fotky listů připravené {@link #preparePhotos(IncrementalCache)}
+	 */
+	List<Photo> getPhotos() {
+		return photos;
+	}
 
-				switch (sheetNo) {
-				case 0:
-					createFrontSheet(workbook, sheet, sheetNo);
-					break;
-				case 13:
-					createBackSheet(workbook, sheet, sheetNo);
-					break;
-				default:
-					createMonthSheet(workbook, sheet, sheetNo);
-					break;
-				}
+	/**
+	 * Modely všech listů. Čtou jen načtené vstupy, počítají se proto paralelně.
+	 */
+	List<SheetLayout> createLayouts() {
+		try {
+			return IntStream.range(0, ReferenceDataRegistry.SHEET_COUNT).parallel().mapToObj(this::createLayout)
+					.collect(Collectors.toList());
+		} catch (IllegalStateException e) {
+			// výjimku z jiného vlákna fork-join obaluje kopií se zprávou "třída: zpráva"
+			if (e.getCause() instanceof IllegalStateException)
+				throw (IllegalStateException) e.getCause();
+			throw e;
+		}
+	}
 
-			}
+	SheetLayout createLayout(int sheetNo) {
+		SheetLayoutEvent event = new SheetLayoutEvent();
+		event.begin();
+		SheetLayout.Builder layout = new SheetLayout.Builder(ReferenceDataRegistry.getSheetName(sheetNo));
+
+		for (int c = 0; c < 7; c++)
+			layout.columnWidth(c, PhotoSlot.DAY_COLUMN_WIDTH);
+
+		switch (sheetNo) {
+		case 0:
+			createFrontSheet(layout, sheetNo);
+			break;
+		case 13:
+			createBackSheet(layout, sheetNo);
+			break;
+		default:
+			createMonthSheet(layout, sheetNo);
+			break;
+		}
 
-			System.out.println("Zapisuji kalendář do souboru: \t" + file.getAbsolutePath());
-			workbook.write(fileOutputStream);
-			fileOutputStream.close();
+		SheetLayout result = layout.build();
+		event.end();
+		if (event.shouldCommit()) {
+			event.sheet = result.getName();
+			event.cells = result.getCells().size();
+			event.mergedRegions = result.getMergedRegions().size();
+			event.commit();
 		}
+		return result;
 	}
 
-	private void createFrontSheet(Workbook workbook, Sheet sheet, int sheetNo) throws IOException {
+	/**
+	 * Otisk všeho, z čeho se list skládá -- fotka, popisek, svátky, narozeniny a akce daného měsíce, plus nastavení,
+	 * které ovlivňuje výsledek: rok, formát, deterministický režim a zpracování fotek. Při změně nastavení se tak
+	 * znovu sestaví všechny listy.
+	 */
+	private String computeFingerprint(int sheetNo, PhotoHasher hasher) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		sb.append(year).append('|').append(outputFormat).append('|');
+		sb.append(deterministic ? "deterministický" : "běžný").append('|');
+		sb.append(photoProcessor == null ? "originál"
+				: photoProcessor.getDpi() + "dpi|" + photoProcessor.getQuality());
+		sb.append('\n').append(ReferenceDataRegistry.getSheetName(sheetNo)).append('\n');
 
-		// fotka
 		String fileLine = fotoFileLines.get(sheetNo);
-		String[] fileInfo = fileLine.split("\t");
-		if (fileInfo.length != 2)
-			writeErrorFoto(fileLine);
-
-		Path photoPath = Paths.get(prefix, fileInfo[0]);
-		if (!Files.exists(photoPath))
-			throw new IllegalStateException("Soubor " + photoPath.toString() + " neexistuje");
-
-		final InputStream stream = Files.newInputStream(photoPath);
-		final CreationHelper helper = workbook.getCreationHelper();
-		final Drawing<?> drawing = sheet.createDrawingPatriarch();
-
-		final ClientAnchor anchor = helper.createClientAnchor();
-		anchor.setAnchorType(ClientAnchor.AnchorType.MOVE_AND_RESIZE);
-
-		final int pictureIndex = workbook.addPicture(IOUtils.toByteArray(stream), Workbook.PICTURE_TYPE_PNG);
-
-		anchor.setCol1(0);
-		anchor.setCol2(9);
-		anchor.setRow1(0);
-		anchor.setRow2(50);
-		drawing.createPicture(anchor, pictureIndex);
+		sb.append(fileLine).append('\n');
+		Path photoPath = inputDir.resolve(fileLine.split("\t")[0]);
+		// chybějící fotku ohlásí až PhotoPipeline
+		if (Files.exists(photoPath))
+			sb.append(hasher.photoHash(photoPath)).append('\n');
+
+		if (sheetNo > 0 && sheetNo < 13) {
+			sb.append(labelsFileLines.get(sheetNo - 1)).append('\n');
+			sb.append(akceFileLines.get(sheetNo - 1)).append('\n');
+			for (int day = 1; day <= CalendarIndex.monthLength(year, sheetNo); day++) {
+				sb.append(day).append('\t').append(calendarIndex.getNameDay(sheetNo, day));
+				for (int e = calendarIndex.firstBirthday(sheetNo, day); e >= 0; e = calendarIndex.nextBirthday(e))
+					sb.append('\t').append(calendarIndex.getBirthdayLabel(e));
+				sb.append('\n');
+			}
+		}
+		return ContentHash.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
 	}
 
-	private void createBackSheet(Workbook workbook, Sheet sheet, int sheetNo) throws IOException {
-
-		int line = 0;
-
-		/*
-		 * text 1
-		 */
-
-		Font font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 38);
-		font.setColor(HSSFColorPredefined.BROWN.getIndex());
-
-		CellStyle style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		Row row = sheet.createRow(line);
-		Cell cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line + 2, 0, 8));
-		cell.setCellValue("Tulácký kalendář");
-
-		line += 3;
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line + 2, 0, 8));
-		cell.setCellValue(year);
-
-		line += 3;
-		line++;
-
-		/*
-		 * text 2
-		 */
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 22);
-		font.setColor(HSSFColorPredefined.DARK_GREEN.getIndex());
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("Aktivity našeho oddílu jsou podporovány");
-
-		line++;
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("mladými ochránci přírody z prostředků");
-
-		line++;
+	/**
+	 * Kotva fotky listu podle rozměrů z hlavičky souboru; bez nich přes celé místo
+	 */
+	private PhotoAnchor photoAnchor(int sheetNo) {
+		PhotoSlot slot = PhotoSlot.forSheet(sheetNo);
+		Path photoPath = inputDir.resolve(fotoFileLines.get(sheetNo).split("\t")[0]);
+		try {
+			ImageMetadata metadata = ImageMetadataIndex.getShared().get(photoPath);
+			return metadata == null ? slot.full() : slot.fit(metadata.getWidth(), metadata.getHeight());
+		} catch (IOException e) {
+			throw new UncheckedIOException("Hlavičku fotky " + photoPath + " se nepodařilo přečíst", e);
+		}
+	}
 
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("MŠMT a MHMP.");
+	private String describeSheets(List<Integer> sheets) {
+		StringBuilder sb = new StringBuilder();
+		for (Integer sheetNo : sheets) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(ReferenceDataRegistry.getSheetName(sheetNo));
+		}
+		return sb.toString();
+	}
 
-		line++;
-		line++;
+	private void createFrontSheet(SheetLayout.Builder layout, int sheetNo) {
 
 		// fotka
-		String fileLine = fotoFileLines.get(sheetNo);
-		String[] fileInfo = fileLine.split("\t");
-		if (fileInfo.length != 2)
-			writeErrorFoto(fileLine);
-
-		Path photoPath = Paths.get(prefix, fileInfo[0]);
-		if (!Files.exists(photoPath))
-			throw new IllegalStateException("Soubor " + photoPath.toString() + " neexistuje");
-
-		final InputStream stream = Files.newInputStream(photoPath);
-		final CreationHelper helper = workbook.getCreationHelper();
-		final Drawing<?> drawing = sheet.createDrawingPatriarch();
-
-		final ClientAnchor anchor = helper.createClientAnchor();
-		anchor.setAnchorType(ClientAnchor.AnchorType.MOVE_AND_RESIZE);
-
-		final int pictureIndex = workbook.addPicture(IOUtils.toByteArray(stream), Workbook.PICTURE_TYPE_PNG);
-
-		anchor.setCol1(1);
-		anchor.setCol2(8);
-		anchor.setRow1(line);
-		anchor.setRow2(line + 19);
-		drawing.createPicture(anchor, pictureIndex);
-
-		line += 20;
-
-		/*
-		 * text 3
-		 */
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 12);
-		font.setColor(HSSFColorPredefined.DARK_GREEN.getIndex());
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("vydáno jako 96. publikace oddílového nakladatelství NAKOLENĚ");
-
-		line++;
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("neprodejný materiál pro členy a příznivce oddílu TULÁCI");
-
-		line++;
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("prosinec " + (year - 1) + ", vydání prvé, náklad závratný (25 ks)");
-
-		line++;
-		line++;
-
-		/*
-		 * text 4
-		 */
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 12);
-		font.setColor(HSSFColorPredefined.DARK_GREEN.getIndex());
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("Všechny fotografie pochází z fotoaparátů členů oddílu, jakákoliv podobnost");
-
-		line++;
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue(" s fotografiemi jiných autorů je čistě náhodná. ");
-
-		line++;
-
-		/*
-		 * text 5
-		 */
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 12);
-		font.setColor(HSSFColorPredefined.DARK_RED.getIndex());
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("Neneseme odpovědnost za pohoršení při prohlížení kalendáře.");
-
-		line++;
-		line++;
-
-		/*
-		 * text 6
-		 */
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 15);
-		font.setColor(HSSFColorPredefined.BLACK.getIndex());
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("Kontakt na oddíl (působící v Praze 10)");
-
-		line++;
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("Klára Adámková, tel.: 728 734 009, email: oddil@tulaci.eu");
-
-		line++;
-		line++;
-
-		/*
-		 * text 7
-		 */
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 15);
-		font.setColor(HSSFColorPredefined.DARK_RED.getIndex());
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		style.setFont(font);
-
-		row = sheet.createRow(line);
-		cell = row.createCell(0);
-		cell.setCellStyle(style);
-		sheet.addMergedRegion(new CellRangeAddress(line, line, 0, 8));
-		cell.setCellValue("Vše o nás najdete na http://oddil.tulaci.eu");
-
-	}
-
-	private void createMonthSheet(Workbook workbook, Sheet sheet, int sheetNo) throws IOException {
-
-		// popisek měsíce + hláška
-		createMonthLine(sheet, sheetNames[sheetNo], labelsFileLines.get(sheetNo - 1));
+		layout.photo(PhotoSlot.forSheet(sheetNo), photoAnchor(sheetNo));
+	}
 
+	void createBackSheet(SheetLayout.Builder layout, int sheetNo) {
 		// fotka
-		String fileLine = fotoFileLines.get(sheetNo);
-		String[] fileInfo = fileLine.split("\t");
-		if (fileInfo.length != 2)
-			writeErrorFoto(fileLine);
+		layout.photo(PhotoSlot.forSheet(sheetNo), photoAnchor(sheetNo));
 
-		Path photoPath = Paths.get(prefix, fileInfo[0]);
-		if (!Files.exists(photoPath))
-			throw new IllegalStateException("Soubor " + photoPath.toString() + " neexistuje");
+		for (ReferenceDataRegistry.TextBlock block : referenceData.getBackPage(year))
+			addBackText(layout, block.getLine(), block.getRows(), block.getStyle(), block.getValue());
+	}
 
-		final InputStream stream = Files.newInputStream(photoPath);
-		final CreationHelper helper = workbook.getCreationHelper();
-		final Drawing<?> drawing = sheet.createDrawingPatriarch();
+	/**
+	 * Text přes celou šířku listu, sloučený přes {@code rows} řádků
+	 */
+	private static void addBackText(SheetLayout.Builder layout, int line, int rows, StyleKey style, Object value) {
+		layout.merge(line, line + rows - 1, 0, 8);
+		layout.cell(line, 0, value, style);
+	}
 
-		final ClientAnchor anchor = helper.createClientAnchor();
-		anchor.setAnchorType(ClientAnchor.AnchorType.MOVE_AND_RESIZE);
+	private void createMonthSheet(SheetLayout.Builder layout, int sheetNo) {
 
-		final int pictureIndex = workbook.addPicture(IOUtils.toByteArray(stream), Workbook.PICTURE_TYPE_PNG);
+		// popisek měsíce + hláška
+		createMonthLine(layout, sheetNo, labelsFileLines.get(sheetNo - 1));
 
-		anchor.setCol1(0);
-		anchor.setCol2(10);
-		anchor.setRow1(1);
-		anchor.setRow2(28);
-		drawing.createPicture(anchor, pictureIndex);
+		// fotka
+		layout.photo(PhotoSlot.forSheet(sheetNo), photoAnchor(sheetNo));
 
 		// dny, narozeniny a svátky
-		createDaysTable(sheet, sheetNo);
+		createDaysTable(layout, sheetNo);
 	}
 
-	private void createDaysTable(Sheet sheet, int month) {
+	void createDaysTable(SheetLayout.Builder layout, int month) {
 
 		List<BirthdayEntry> birthdays = new ArrayList<>();
 
-		LocalDate localDate = LocalDate.of(year, month, 1);
+		CalendarGrid grid = CalendarGrid.of(year, month);
 		int rowStart = 29;
-		int rowIndex = rowStart;
-		Row dayRow = sheet.createRow(rowIndex);
-		Row svatekRow = sheet.createRow(rowIndex + 2);
-		while (month == localDate.getMonthValue()) {
-			createDayCell(sheet, dayRow, localDate);
-			createSvatekCell(sheet, svatekRow, localDate);
-			String value = birthdaysMap.get(localDate);
-			if (value != null)
-				birthdays.add(new BirthdayEntry(localDate.getDayOfMonth(), value));
-			localDate = localDate.plusDays(1);
-			// je další pondělí a jsem stále v tom stejném měsíci?
-			if (localDate.getDayOfWeek().getValue() == 1 && month == localDate.getMonthValue()) {
-				rowIndex += 3;
-				dayRow = sheet.createRow(rowIndex);
-				svatekRow = sheet.createRow(rowIndex + 2);
-			}
+		for (int day = 1; day <= grid.getDayCount(); day++) {
+			// každý týden zabírá tři řádky: dvě na číslo dne, jeden na svátek
+			int rowIndex = rowStart + 3 * grid.getWeekRow(day);
+			int column = grid.getWeekday(day);
+			short color = dayColor(grid, day);
+			createDayCell(layout, rowIndex, column, day, color);
+			createSvatekCell(layout, rowIndex + 2, column, calendarIndex.getNameDay(month, day), color);
+			for (int e = calendarIndex.firstBirthday(month, day); e >= 0; e = calendarIndex.nextBirthday(e))
+				birthdays.add(new BirthdayEntry(day, calendarIndex.getBirthdayLabel(e)));
 		}
 
-		createBirthdayAndAkceLists(sheet, rowStart, birthdays, month);
+		createBirthdayAndAkceLists(layout, rowStart, birthdays, month);
 	}
 
-	private void createBirthdayAndAkceLists(Sheet sheet, int rowStart, List<BirthdayEntry> birthdays, int month) {
+	private void createBirthdayAndAkceLists(SheetLayout.Builder layout, int rowStart, List<BirthdayEntry> birthdays,
+			int month) {
 		// Birthdays list
-		Row headerRow = sheet.getRow(rowStart);
-		Cell cell = headerRow.createCell(7);
-		sheet.addMergedRegion(new CellRangeAddress(rowStart, rowStart, 7, 9));
-		cell.setCellValue(" Narozeniny");
+		layout.merge(rowStart, rowStart, 7, 9);
+		layout.cell(rowStart, 7, " Narozeniny",
+				StyleKey.of(13, Font.COLOR_NORMAL, HorizontalAlignment.LEFT, VerticalAlignment.CENTER));
 
-		CellStyle style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.LEFT);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
+		layout.columnWidth(7, PhotoSlot.BIRTHDAY_COLUMN_WIDTH);
 
-		Font font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 13);
-		style.setFont(font);
-
-		cell.setCellStyle(style);
-
-		sheet.setColumnWidth(7, 1000);
+		StyleKey dayStyle = StyleKey.centered(8, HSSFColorPredefined.DARK_RED.getIndex());
+		StyleKey nameStyle = StyleKey.of(8, Font.COLOR_NORMAL, HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
 
 		int currentRowIndex = rowStart + 1;
 		for (BirthdayEntry be : birthdays) {
-
-			Row beRow = sheet.getRow(currentRowIndex);
-			if (beRow == null)
-				beRow = sheet.createRow(currentRowIndex);
-
-			Cell beCell = beRow.createCell(7);
-			beCell.setCellValue(be.day);
-
-			style = sheet.getWorkbook().createCellStyle();
-			style.setAlignment(HorizontalAlignment.CENTER);
-			style.setVerticalAlignment(VerticalAlignment.CENTER);
-
-			font = sheet.getWorkbook().createFont();
-			font.setFontName("Castanet CE");
-			font.setBold(false);
-			font.setColor(HSSFColorPredefined.DARK_RED.getIndex());
-			font.setFontHeightInPoints((short) 8);
-			style.setFont(font);
-
-			beCell.setCellStyle(style);
-
-			beCell = beRow.createCell(8);
-			sheet.addMergedRegion(new CellRangeAddress(currentRowIndex, currentRowIndex, 8, 9));
-			beCell.setCellValue(be.name);
-
-			style = sheet.getWorkbook().createCellStyle();
-			style.setAlignment(HorizontalAlignment.LEFT);
-			style.setVerticalAlignment(VerticalAlignment.CENTER);
-
-			font = sheet.getWorkbook().createFont();
-			font.setFontName("Castanet CE");
-			font.setBold(false);
-			font.setFontHeightInPoints((short) 8);
-			style.setFont(font);
-
-			beCell.setCellStyle(style);
-
+			layout.cell(currentRowIndex, 7, be.day, dayStyle);
+			layout.merge(currentRowIndex, currentRowIndex, 8, 9);
+			layout.cell(currentRowIndex, 8, be.name, nameStyle);
 			currentRowIndex++;
 		}
 
 		// Akce
 		int headerOffset = 8;
 		int headerRowIndex = rowStart + headerOffset;
-		headerRow = sheet.getRow(headerRowIndex);
-		if (headerRow == null)
-			headerRow = sheet.createRow(headerRowIndex);
 
-		cell = headerRow.createCell(7);
-		sheet.addMergedRegion(new CellRangeAddress(headerRowIndex, headerRowIndex, 7, 9));
-		cell.setCellValue(" Nezapomeň!");
-
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.LEFT);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setColor(HSSFColorPredefined.DARK_RED.getIndex());
-		font.setFontHeightInPoints((short) 13);
-		style.setFont(font);
-
-		cell.setCellStyle(style);
+		layout.merge(headerRowIndex, headerRowIndex, 7, 9);
+		layout.cell(headerRowIndex, 7, " Nezapomeň!", StyleKey.of(13, HSSFColorPredefined.DARK_RED.getIndex(),
+				HorizontalAlignment.LEFT, VerticalAlignment.CENTER));
 
 		headerRowIndex++;
 
-		style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.LEFT);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-
-		font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 8);
-		style.setFont(font);
+		StyleKey style = StyleKey.of(8, Font.COLOR_NORMAL, HorizontalAlignment.LEFT, VerticalAlignment.CENTER);
 
 		List<String> akce = akceList.get(month - 1);
 		for (int i = 0; i < 5; i++) {
 			if (i >= akce.size())
 				continue;
-			sheet.addMergedRegion(new CellRangeAddress(headerRowIndex + i, headerRowIndex + i, 7, 9));
-			headerRow = sheet.getRow(headerRowIndex + i);
-			if (headerRow == null)
-				headerRow = sheet.createRow(headerRowIndex + i);
-
-			cell = headerRow.createCell(7);
-			cell.setCellValue("  " + akce.get(i));
-			cell.setCellStyle(style);
+			layout.merge(headerRowIndex + i, headerRowIndex + i, 7, 9);
+			layout.cell(headerRowIndex + i, 7, "  " + akce.get(i), style);
 		}
 
 	}
 
-	private void createSvatekCell(Sheet sheet, Row svatekRow, LocalDate localDate) {
-		Cell cell = svatekRow.createCell(localDate.getDayOfWeek().getValue() - 1);
-		cell.setCellValue(svatkyMap.get(localDate.getDayOfMonth() + "." + localDate.getMonthValue() + "."));
-
-		Font font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 8);
-
-		if (localDate.getDayOfWeek().getValue() > 5)
-			font.setColor(HSSFColorPredefined.GREY_50_PERCENT.getIndex());
-
-		CellStyle style = sheet.getWorkbook().createCellStyle();
-		style.setFont(font);
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		cell.setCellStyle(style);
-	}
-
-	private void createDayCell(Sheet sheet, Row dayRow, LocalDate localDate) {
-		Cell cell = dayRow.createCell(localDate.getDayOfWeek().getValue() - 1);
-		sheet.addMergedRegion(new CellRangeAddress(dayRow.getRowNum(), dayRow.getRowNum() + 1, cell.getColumnIndex(),
-				cell.getColumnIndex()));
-		cell.setCellValue(localDate.getDayOfMonth());
-
-		Font font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 28);
-		if (localDate.getDayOfWeek().getValue() > 5)
-			font.setColor(HSSFColorPredefined.GREY_50_PERCENT.getIndex());
-
-		CellStyle style = sheet.getWorkbook().createCellStyle();
-		style.setFont(font);
-		style.setAlignment(HorizontalAlignment.CENTER);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-		cell.setCellStyle(style);
-	}
-
-	private void createMonthLine(Sheet sheet, String sheetName, String quote) {
-		Row row = sheet.createRow(0);
-		createMonthName(sheet, row, sheetName);
-		createMonthQuote(sheet, row, quote);
+	private void createSvatekCell(SheetLayout.Builder layout, int row, int column, String svatek, short color) {
+		layout.cell(row, column, svatek, StyleKey.centered(8, color));
 	}
 
-	private void createMonthName(Sheet sheet, Row row, String monthName) {
-		Cell cell = row.createCell(0);
-		cell.setCellValue(monthName.toUpperCase());
-
-		Font font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 32);
-		font.setColor(HSSFColorPredefined.BLUE.getIndex());
-
-		CellStyle style = sheet.getWorkbook().createCellStyle();
-		style.setFont(font);
-		cell.setCellStyle(style);
+	private void createDayCell(SheetLayout.Builder layout, int row, int column, int day, short color) {
+		layout.merge(row, row + 1, column, column);
+		layout.cell(row, column, day, StyleKey.centered(28, color));
 	}
 
-	private void createMonthQuote(Sheet sheet, Row row, String quote) {
-		Cell cell = row.createCell(3);
-		sheet.addMergedRegion(new CellRangeAddress(0, 0, 3, 9));
-		cell.setCellValue(quote);
-
-		CellStyle style = sheet.getWorkbook().createCellStyle();
-		style.setAlignment(HorizontalAlignment.RIGHT);
-		style.setVerticalAlignment(VerticalAlignment.CENTER);
-
-		Font font = sheet.getWorkbook().createFont();
-		font.setFontName("Castanet CE");
-		font.setBold(false);
-		font.setFontHeightInPoints((short) 10);
-		style.setFont(font);
-
-		cell.setCellStyle(style);
+	/**
+	 * Víkendy jsou šedé, všední dny výchozí barvou
+	 */
+	private static short dayColor(CalendarGrid grid, int day) {
+		return grid.isWeekend(day) ? HSSFColorPredefined.GREY_50_PERCENT.getIndex() : Font.COLOR_NORMAL;
 	}
 
-	private void writeErrorSvatky(String errorLine) {
-		throw new IllegalStateException("Řádek svátku '" + errorLine + "' má nevyhovující formát\n"
-				+ "\tVyžaduji formát: -datum-tabulátor-text-\n" + "\tNapříklad: 17.1.\tDrahoslav");
+	private void createMonthLine(SheetLayout.Builder layout, int month, String quote) {
+		createMonthName(layout, month);
+		createMonthQuote(layout, quote);
 	}
 
-	private void writeErrorBirthdays(String errorLine) {
-		throw new IllegalStateException("Řádek narozenin '" + errorLine + "' má nevyhovující formát\n"
-				+ "\tVyžaduji formát: -jméno-tabulátor-datum-\n" + "\tNapříklad: Vašek B.\t6.6.2008");
+	private void createMonthName(SheetLayout.Builder layout, int month) {
+		layout.cell(0, 0, ReferenceDataRegistry.getMonthTitle(month), StyleKey.of(32,
+				HSSFColorPredefined.BLUE.getIndex(), HorizontalAlignment.GENERAL, VerticalAlignment.BOTTOM));
 	}
 
-	private void writeErrorFoto(String errorLine) {
-		throw new IllegalStateException("Řádek fotky '" + errorLine + "' má nevyhovující formát\n"
-				+ "\tVyžaduji formát: -soubor.přípona-tabulátor-název akce-\n"
-				+ "\tNapříklad: foto1.jpg\tVýprava na Sněžku");
+	private void createMonthQuote(SheetLayout.Builder layout, String quote) {
+		layout.merge(0, 0, 3, 9);
+		layout.cell(0, 3, quote,
+				StyleKey.of(10, Font.COLOR_NORMAL, HorizontalAlignment.RIGHT, VerticalAlignment.CENTER));
 	}
 
 }
@@ -0,0 +1,167 @@
+package cz.gattserver.tulaci.calendar;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Události Java Flight Recorderu pro jednotlivé fáze generování. Bez běžícího záznamu stojí jen kontrolu
+ * {@code isEnabled}, dají se proto nechat zapnuté trvale; záznam stačí spustit přes
+ * {@code jcmd <pid> JFR.start}. Zásobník se neukládá, fáze je jasná z typu události.
+ *
+ * @author gattaka
+ *
+ */
+public final class CalendarEvents {
+
+	static final String CATEGORY = "Tuláci kalendář";
+
+	private CalendarEvents() {
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.InputFile")
+	@Label("Vstupní soubor")
+	@Description("Načtení a zpracování jednoho vstupního souboru")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class InputFileEvent extends Event {
+
+		@Label("Druh")
+		String kind;
+
+		@Label("Soubor")
+		String file;
+
+		@Label("Řádků")
+		int lines;
+
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.PhotoLoad")
+	@Label("Načtení fotky")
+	@Description("Načtení a zpracování fotky před stavbou listů")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class PhotoLoadEvent extends Event {
+
+		@Label("Soubor")
+		String file;
+
+		@Label("List")
+		int sheetNo;
+
+		@Label("Výsledná velikost")
+		@DataAmount
+		long bytes;
+
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.PhotoEmbed")
+	@Label("Vložení fotky")
+	@Description("Vložení připravené fotky do sešitu")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class PhotoEmbedEvent extends Event {
+
+		@Label("Soubor")
+		String file;
+
+		@Label("List")
+		String sheet;
+
+		@Label("Velikost")
+		@DataAmount
+		long bytes;
+
+		@Label("Index obrázku")
+		int pictureIndex;
+
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.SheetLayout")
+	@Label("Model listu")
+	@Description("Výpočet modelu listu, běží paralelně pro všechny listy")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class SheetLayoutEvent extends Event {
+
+		@Label("List")
+		String sheet;
+
+		@Label("Buněk")
+		int cells;
+
+		@Label("Sloučených oblastí")
+		int mergedRegions;
+
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.SheetBuild")
+	@Label("Stavba listu")
+	@Description("Převod modelu listu na objekty POI")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class SheetBuildEvent extends Event {
+
+		@Label("List")
+		String sheet;
+
+		@Label("Buněk")
+		int cells;
+
+		@Label("Stylů v sešitu")
+		int styles;
+
+		@Label("Sloučených oblastí")
+		int mergedRegions;
+
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.WorkbookWrite")
+	@Label("Zápis sešitu")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class WorkbookWriteEvent extends Event {
+
+		@Label("Cíl")
+		String target;
+
+		@Label("Formát")
+		String format;
+
+		@Label("Zapsáno")
+		@DataAmount
+		long bytes;
+
+	}
+
+	@Name("cz.gattserver.tulaci.calendar.PageRender")
+	@Label("Vykreslení stránky")
+	@Description("Vykreslení listu do obrázku a zápis PNG")
+	@Category(CATEGORY)
+	@StackTrace(false)
+	static class PageRenderEvent extends Event {
+
+		@Label("List")
+		String sheet;
+
+		@Label("DPI")
+		int dpi;
+
+		@Label("Šířka")
+		int width;
+
+		@Label("Výška")
+		int height;
+
+		@Label("Zapsáno")
+		@DataAmount
+		long bytes;
+
+	}
+
+}
@@ -0,0 +1,150 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rozložení dní jednoho měsíce do týdnů -- řádek týdne, den v týdnu, víkendy a pořadí dne v roce. Počítá se jednou
+ * pro každý (rok, měsíc) z několika celočíselných operací do primitivních polí a sdílí se mezi všemi listy, sešity
+ * i formáty výstupu, takže procházení dní měsíce nic nealokuje:
+ *
+ * <pre>
+ * CalendarGrid grid = CalendarGrid.of(2019, 3);
+ * for (int day = 1; day &lt;= grid.getDayCount(); day++)
+ * 	table[grid.getWeekRow(day)][grid.getWeekday(day)] = day;
+ * </pre>
+ *
+ * @author gattaka
+ *
+ */
+public final class CalendarGrid {
+
+	public static final int WEEKDAYS = 7;
+
+	/**
+	 * Nejvíc řádků týdne, které měsíc může zasáhnout (31 dní začínajících v sobotu)
+	 */
+	public static final int MAX_WEEKS = 6;
+
+	/**
+	 * Posun měsíce pro výpočet dne v týdnu (Sakamotův algoritmus)
+	 */
+	private static final int[] WEEKDAY_SHIFT = { 0, 3, 2, 5, 0, 3, 5, 1, 4, 6, 2, 4 };
+
+	private static final Map<Integer, CalendarGrid> GRIDS = new ConcurrentHashMap<>();
+
+	private final int year;
+	private final int month;
+	private final int dayCount;
+	private final int firstWeekday;
+	private final int firstDayOfYear;
+	private final int weekCount;
+
+	/**
+	 * Dny měsíce po řádcích týdnů, 0 = buňka mimo měsíc
+	 */
+	private final int[] cells = new int[MAX_WEEKS * WEEKDAYS];
+
+	/**
+	 * Bit {@code 1 << day} je nastavený pro soboty a neděle
+	 */
+	private final long weekendMask;
+
+	private CalendarGrid(int year, int month) {
+		this.year = year;
+		this.month = month;
+		this.dayCount = CalendarIndex.monthLength(year, month);
+		this.firstWeekday = weekday(year, month, 1);
+		// index přestupného rozložení bez 29. 2., který v nepřestupném roce chybí
+		this.firstDayOfYear = CalendarIndex.dayIndex(month, 1) + 1
+				- (month > 2 && !CalendarIndex.isLeapYear(year) ? 1 : 0);
+		this.weekCount = (firstWeekday + dayCount + WEEKDAYS - 1) / WEEKDAYS;
+
+		long mask = 0;
+		for (int day = 1; day <= dayCount; day++) {
+			int cell = firstWeekday + day - 1;
+			cells[cell] = day;
+			if (cell % WEEKDAYS >= 5)
+				mask |= 1L << day;
+		}
+		this.weekendMask = mask;
+	}
+
+	/**
+	 * @param month
+	 *            měsíc 1 až 12
+	 * @return sdílená mřížka měsíce
+	 */
+	public static CalendarGrid of(int year, int month) {
+		if (month < 1 || month > 12)
+			throw new IllegalArgumentException("Neplatný měsíc: " + month);
+		return GRIDS.computeIfAbsent(year * 12 + month - 1, key -> new CalendarGrid(year, month));
+	}
+
+	/**
+	 * @return den v týdnu, 0 = pondělí až 6 = neděle
+	 */
+	static int weekday(int year, int month, int day) {
+		int y = month < 3 ? year - 1 : year;
+		int sunday = Math.floorMod(y + Math.floorDiv(y, 4) - Math.floorDiv(y, 100) + Math.floorDiv(y, 400)
+				+ WEEKDAY_SHIFT[month - 1] + day, WEEKDAYS);
+		return (sunday + 6) % WEEKDAYS;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	public int getMonth() {
+		return month;
+	}
+
+	public int getDayCount() {
+		return dayCount;
+	}
+
+	/**
+	 * @return počet řádků týdne, do kterých měsíc zasahuje (4 až 6)
+	 */
+	public int getWeekCount() {
+		return weekCount;
+	}
+
+	/**
+	 * @return den v týdnu, 0 = pondělí až 6 = neděle
+	 */
+	public int getWeekday(int day) {
+		return (firstWeekday + day - 1) % WEEKDAYS;
+	}
+
+	/**
+	 * @return řádek týdne od 0, nový řádek začíná pondělím
+	 */
+	public int getWeekRow(int day) {
+		return (firstWeekday + day - 1) / WEEKDAYS;
+	}
+
+	public boolean isWeekend(int day) {
+		return (weekendMask & 1L << day) != 0;
+	}
+
+	/**
+	 * @return pořadí dne v roce od 1
+	 */
+	public int getDayOfYear(int day) {
+		return firstDayOfYear + day - 1;
+	}
+
+	/**
+	 * @return den měsíce v buňce mřížky, nebo 0, pokud buňka do měsíce nepatří
+	 */
+	public int getDay(int weekRow, int weekday) {
+		return cells[weekRow * WEEKDAYS + weekday];
+	}
+
+	@Override
+	public String toString() {
+		return month + "/" + year + ": " + dayCount + " dní, " + weekCount + " týdnů";
+	}
+
+}
@@ -0,0 +1,195 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Svátky a narozeniny jednoho roku v polích indexovaných dnem v roce. Pole mají vždy 366 míst v rozložení
+ * přestupného roku, takže 29. 2. má vlastní místo a index dne nezávisí na roce. Narozeniny jednoho dne tvoří
+ * spojový seznam v primitivních polích -- víc oslavenců stejného dne se tak nepřepíše a dotazy nic nealokují:
+ *
+ * <pre>
+ * for (int e = index.firstBirthday(month, day); e &gt;= 0; e = index.nextBirthday(e))
+ * 	index.getBirthdayLabel(e);
+ * </pre>
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarIndex {
+
+	public static final int DAYS = 366;
+
+	/**
+	 * Počet dní před začátkem měsíce v přestupném roce
+	 */
+	private static final int[] MONTH_OFFSETS = { 0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335, 366 };
+
+	private static final Pattern BIRTHDAY_DATE = Pattern.compile("([1-3]?[0-9])\\.([1]?[0-9])\\.([0-9]{4})");
+
+	private static final int NONE = -1;
+
+	private final int year;
+	private NameDayTable nameDays = NameDayTable.EMPTY;
+	private final int[] firstBirthday = new int[DAYS];
+	private final int[] lastBirthday = new int[DAYS];
+
+	private int birthdayCount;
+	private int[] nextBirthday = new int[16];
+	private String[] birthdayLabels = new String[16];
+
+	/**
+	 * @param year
+	 *            rok kalendáře -- určuje věk oslavenců a jestli 29. 2. existuje
+	 */
+	public CalendarIndex(int year) {
+		this.year = year;
+		Arrays.fill(firstBirthday, NONE);
+		Arrays.fill(lastBirthday, NONE);
+	}
+
+	public static boolean isLeapYear(int year) {
+		return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+	/**
+	 * @return počet dní měsíce v daném roce
+	 */
+	public static int monthLength(int year, int month) {
+		if (month == 2 && !isLeapYear(year))
+			return 28;
+		return MONTH_OFFSETS[month] - MONTH_OFFSETS[month - 1];
+	}
+
+	/**
+	 * @return index dne v rozložení přestupného roku (0 až 365)
+	 */
+	public static int dayIndex(int month, int day) {
+		return MONTH_OFFSETS[month - 1] + day - 1;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	/**
+	 * Svátky se nemění s rokem, tabulka se proto jen převezme a může být sdílená více indexy
+	 */
+	public void setNameDays(NameDayTable nameDays) {
+		this.nameDays = nameDays;
+	}
+
+	/**
+	 * Načte řádky ve formátu {@code jméno -tabulátor- den.měsíc.rok}. Kdo se narodil 29. 2., slaví v nepřestupném
+	 * roce 28. 2.
+	 */
+	public void addBirthdays(List<String> lines) {
+		for (String line : lines) {
+			String birthday = stripTrailingTabs(line);
+			int[] date = parseBirthdayDate(birthday);
+			if (date == null)
+				writeErrorBirthdays(birthday);
+			int day = date[0];
+			int month = date[1];
+			int birthYear = date[2];
+			if (month == 2 && day == 29 && !isLeapYear(year))
+				day = 28;
+			addBirthday(dayIndex(month, day),
+					birthday.substring(0, birthday.indexOf('\t')) + " (" + (year - birthYear) + ")");
+		}
+	}
+
+	/**
+	 * @param birthday
+	 *            řádek bez koncových tabulátorů
+	 * @return den, měsíc a rok narození, nebo {@code null}, pokud řádek nemá formát
+	 *         {@code jméno -tabulátor- den.měsíc.rok}
+	 */
+	static int[] parseBirthdayDate(String birthday) {
+		int tab = birthday.indexOf('\t');
+		if (tab < 0 || birthday.indexOf('\t', tab + 1) >= 0)
+			return null;
+		Matcher matcher = BIRTHDAY_DATE.matcher(birthday);
+		matcher.region(tab + 1, birthday.length());
+		if (!matcher.matches())
+			return null;
+		int day = Integer.parseInt(matcher.group(1));
+		int month = Integer.parseInt(matcher.group(2));
+		int birthYear = Integer.parseInt(matcher.group(3));
+		if (!isValidDate(birthYear, month, day))
+			return null;
+		return new int[] { day, month, birthYear };
+	}
+
+	/**
+	 * Prázdné sloupce na konci řádku se ignorují, stejně jako dřív při {@code split("\t")}
+	 */
+	static String stripTrailingTabs(String line) {
+		int end = line.length();
+		while (end > 0 && line.charAt(end - 1) == '\t')
+			end--;
+		return line.substring(0, end);
+	}
+
+	static boolean isValidDate(int year, int month, int day) {
+		return month >= 1 && month <= 12 && day >= 1 && day <= monthLength(year, month);
+	}
+
+	private void addBirthday(int dayIndex, String label) {
+		if (birthdayCount == birthdayLabels.length) {
+			nextBirthday = Arrays.copyOf(nextBirthday, birthdayCount * 2);
+			birthdayLabels = Arrays.copyOf(birthdayLabels, birthdayCount * 2);
+		}
+		int entry = birthdayCount++;
+		birthdayLabels[entry] = label;
+		nextBirthday[entry] = NONE;
+		// na konec seznamu dne, ať zůstane pořadí ze souboru
+		if (lastBirthday[dayIndex] == NONE)
+			firstBirthday[dayIndex] = entry;
+		else
+			nextBirthday[lastBirthday[dayIndex]] = entry;
+		lastBirthday[dayIndex] = entry;
+	}
+
+	/**
+	 * @return jméno, které má daný den svátek, nebo {@code null}
+	 */
+	public String getNameDay(int month, int day) {
+		return nameDays.get(month, day);
+	}
+
+	/**
+	 * @return první záznam narozenin daného dne, nebo -1
+	 */
+	public int firstBirthday(int month, int day) {
+		return firstBirthday[dayIndex(month, day)];
+	}
+
+	/**
+	 * @return další záznam narozenin téhož dne, nebo -1
+	 */
+	public int nextBirthday(int entry) {
+		return nextBirthday[entry];
+	}
+
+	/**
+	 * @return popisek oslavence ve tvaru {@code jméno (věk)}
+	 */
+	public String getBirthdayLabel(int entry) {
+		return birthdayLabels[entry];
+	}
+
+	public int getBirthdayCount() {
+		return birthdayCount;
+	}
+
+	static final String BIRTHDAY_FORMAT = "Vyžaduji formát: -jméno-tabulátor-datum-, například: Vašek B.\t6.6.2008";
+
+	private static void writeErrorBirthdays(String errorLine) {
+		throw new IllegalStateException("Řádek narozenin '" + errorLine + "' má nevyhovující formát\n"
+				+ "\tVyžaduji formát: -jméno-tabulátor-datum-\n" + "\tNapříklad: Vašek B.\t6.6.2008");
+	}
+
+}
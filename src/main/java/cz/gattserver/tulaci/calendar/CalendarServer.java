@@ -0,0 +1,355 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Dlouho běžící HTTP server, který generuje kalendáře oddílů na požádání. Data oddílů jsou podadresáře kořenového
+ * adresáře, nebo archivy {@code <oddil>.zip} ({@link InputBundle}) v něm:
+ *
+ * <pre>
+ * GET /kalendar?oddil=tulaci&amp;rok=2020&amp;format=xlsx
+ * GET /stav
+ * </pre>
+ *
+ * Svátky ({@link NameDayTable}) a zpracované fotky ({@link ProcessedImageCache}) zůstávají mezi požadavky v paměti,
+ * hotové sešity se drží v LRU cache podle otisku vstupů, takže opakované stažení nezměněného kalendáře se jen
+ * pošle z paměti. Souběžné požadavky na stejný kalendář se sestaví jen jednou. S vypnutou cache (velikost 0) se
+ * sešit v paměti neskládá a zapisuje se rovnou do odpovědi.
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarServer {
+
+	public static final int DEFAULT_PORT = 8080;
+	public static final long DEFAULT_OUTPUT_CACHE_BYTES = 256L * 1024 * 1024;
+
+	private static final String CALENDAR_PATH = "/kalendar";
+	private static final String STATUS_PATH = "/stav";
+
+	private final Path rootDir;
+	private final PhotoProcessor photoProcessor;
+	private final LruByteCache outputCache;
+	private final PhotoHasher photoHasher = new MemoryPhotoHasher();
+	private final ConcurrentMap<String, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Sestavení jsou náročná na CPU, víc souběžných než jader by jen zvětšilo spotřebu paměti
+	 */
+	private final Semaphore builds = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * @param rootDir
+	 *            adresář, jehož podadresáře jsou data jednotlivých oddílů
+	 * @param photoProcessor
+	 *            zmenšování fotek, nebo {@code null} pro originály
+	 */
+	public CalendarServer(Path rootDir, PhotoProcessor photoProcessor, long outputCacheBytes) {
+		this.rootDir = rootDir.toAbsolutePath().normalize();
+		this.photoProcessor = photoProcessor;
+		this.outputCache = new LruByteCache("cache kalendářů", outputCacheBytes);
+	}
+
+	public CalendarServer(Path rootDir) {
+		this(rootDir, new PhotoProcessor(), DEFAULT_OUTPUT_CACHE_BYTES);
+	}
+
+	public synchronized void start(int port) throws IOException {
+		if (server != null)
+			throw new IllegalStateException("Server už běží");
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.createContext(CALENDAR_PATH, this::handleCalendar);
+		server.createContext(STATUS_PATH, this::handleStatus);
+		server.start();
+		System.out.println("Server kalendářů naslouchá na portu: \t" + getPort());
+		System.out.println("Data oddílů: \t" + rootDir);
+	}
+
+	public synchronized void stop() {
+		if (server == null)
+			return;
+		server.stop(1);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		server = null;
+		executor = null;
+	}
+
+	/**
+	 * @return skutečný port (při startu s portem 0 přidělený systémem)
+	 */
+	public synchronized int getPort() {
+		if (server == null)
+			throw new IllegalStateException("Server neběží");
+		return server.getAddress().getPort();
+	}
+
+	public LruByteCache getOutputCache() {
+		return outputCache;
+	}
+
+	/**
+	 * Na Javě 21+ vlákno na požadavek (virtuální), jinak omezený pool. Projekt se překládá pro Javu 11, proto přes
+	 * reflexi.
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			AtomicInteger counter = new AtomicInteger();
+			return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors(), r -> {
+				Thread thread = new Thread(r, "kalendar-http-" + counter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	private void handleCalendar(HttpExchange exchange) throws IOException {
+		try {
+			serveCalendar(exchange);
+		} catch (Exception e) {
+			if (e instanceof InterruptedException)
+				Thread.currentThread().interrupt();
+			if (exchange.getResponseCode() != -1) {
+				// Rozepsanou odpověď už opravit nejde. Výjimka z handleru zavře spojení bez ukončovacího chunku,
+				// který by dopsal exchange.close(), takže klient pozná useknutý sešit místo platné odpovědi 200.
+				throw e instanceof IOException ? (IOException) e : new IOException(e);
+			}
+			sendText(exchange, 500, "Generování kalendáře selhalo: " + e.getMessage());
+		}
+		exchange.close();
+	}
+
+	private void serveCalendar(HttpExchange exchange) throws IOException, InterruptedException {
+		if (!"GET".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "GET");
+			sendText(exchange, 405, "Podporována je jen metoda GET");
+			return;
+		}
+		Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+
+		String troop = params.get("oddil");
+		if (troop == null || troop.isEmpty()) {
+			sendText(exchange, 400, "Chybí parametr oddil");
+			return;
+		}
+		Path dataDir = rootDir.resolve(troop).normalize();
+		if (!Files.isDirectory(dataDir))
+			dataDir = rootDir.resolve(troop + InputBundle.EXTENSION).normalize();
+		// oddil nesmí vést mimo kořenový adresář
+		if (!rootDir.equals(dataDir.getParent())
+				|| !Files.isDirectory(dataDir) && !InputBundle.isBundle(dataDir)) {
+			sendText(exchange, 404, "Neznámý oddíl: " + troop);
+			return;
+		}
+
+		OutputFormat format;
+		Integer year = null;
+		try {
+			format = OutputFormat.valueOf(params.getOrDefault("format", "xls").toUpperCase());
+			if (params.containsKey("rok"))
+				year = Integer.valueOf(params.get("rok"));
+		} catch (IllegalArgumentException e) {
+			sendText(exchange, 400, "Neplatný parametr rok nebo format");
+			return;
+		}
+
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setYearOverride(year);
+		builder.setOutputFormat(format);
+		builder.setPhotoProcessor(photoProcessor);
+
+		ByteBuffer data = null;
+		boolean cached = false;
+		try {
+			builder.validateInputs();
+			builder.readInputs();
+			String fileName = "Tuláci kalendář " + builder.getYear() + format.getExtension();
+			exchange.getResponseHeaders().set("Content-Type", contentType(format));
+			exchange.getResponseHeaders().set("Content-Disposition",
+					"attachment; filename*=UTF-8''" + URLEncoder.encode(fileName, "UTF-8").replace("+", "%20"));
+			if (outputCache.getMaxBytes() == 0) {
+				exchange.getResponseHeaders().set("X-Cache", "OFF");
+				streamCalendar(exchange, builder);
+				return;
+			}
+			String key = builder.computeInputFingerprint(photoHasher);
+			data = outputCache.getBuffer(key);
+			cached = data != null;
+			if (!cached)
+				data = buildShared(key, builder);
+		} catch (IllegalStateException e) {
+			// chyba ve vstupních datech oddílu; u streamované odpovědi už je pozdě, rozhodne handleCalendar
+			if (exchange.getResponseCode() != -1)
+				throw e;
+			sendText(exchange, 422, e.getMessage());
+			return;
+		} finally {
+			builder.releaseInputs();
+		}
+
+		exchange.getResponseHeaders().set("X-Cache", cached ? "HIT" : "MISS");
+		exchange.sendResponseHeaders(200, data.remaining());
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+		}
+	}
+
+	/**
+	 * Zapíše sešit rovnou do odpovědi (chunked). Hlavičky se pošlou až při otevření výstupu, po zpracování fotek,
+	 * takže chyba vstupů ještě dostane vlastní stavový kód. Chyba po odeslání hlaviček se propaguje až z handleru,
+	 * viz {@link #handleCalendar(HttpExchange)}.
+	 */
+	private void streamCalendar(HttpExchange exchange, CalendarBuilder builder)
+			throws IOException, InterruptedException {
+		OutputSink sink = new StreamOutputSink(exchange.getResponseBody(), "HTTP " + builder.getDataDir()) {
+
+			@Override
+			public OutputStream open() throws IOException {
+				exchange.sendResponseHeaders(200, 0);
+				return super.open();
+			}
+
+		};
+		builds.acquire();
+		try {
+			builder.writeWorkbook(sink, null);
+		} finally {
+			builds.release();
+		}
+	}
+
+	/**
+	 * Sestaví kalendář, nebo počká na sestavení, které pro stejný klíč už běží
+	 */
+	private ByteBuffer buildShared(String key, CalendarBuilder builder) throws IOException, InterruptedException {
+		CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+		CompletableFuture<ByteBuffer> running = inFlight.putIfAbsent(key, future);
+		if (running != null) {
+			try {
+				return running.get().duplicate();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new IllegalStateException(cause);
+			}
+		}
+
+		try {
+			builds.acquire();
+			try {
+				ResponseBuffer bytes = new ResponseBuffer();
+				builder.writeWorkbook(new StreamOutputSink(bytes, "HTTP " + key), null);
+				// cache i odpověď čtou přímo z bufferu, bez kopie do pole přesné délky
+				ByteBuffer data = bytes.toByteBuffer();
+				outputCache.put(key, data);
+				future.complete(data);
+				return data.duplicate();
+			} finally {
+				builds.release();
+			}
+		} catch (IOException | RuntimeException | InterruptedException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key);
+		}
+	}
+
+	/**
+	 * Výstup sestavení v paměti, který se předá dál bez {@link ByteArrayOutputStream#toByteArray()}
+	 */
+	private static final class ResponseBuffer extends ByteArrayOutputStream {
+
+		/**
+		 * Typický sešit s fotkami má jednotky MB, menší počáteční buffer by se jen několikrát zvětšoval
+		 */
+		private static final int INITIAL_SIZE = 1024 * 1024;
+
+		ResponseBuffer() {
+			super(INITIAL_SIZE);
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+
+	}
+
+	private void handleStatus(HttpExchange exchange) throws IOException {
+		try {
+			sendText(exchange, 200, outputCache + "\n" + ProcessedImageCache.getShared() + "\n"
+					+ ReferenceDataRegistry.getShared() + "\n");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static String contentType(OutputFormat format) {
+		return format != OutputFormat.XLS ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
+				: "application/vnd.ms-excel";
+	}
+
+	private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+		byte[] body = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+		Map<String, String> params = new HashMap<>();
+		if (rawQuery == null)
+			return params;
+		for (String pair : rawQuery.split("&")) {
+			if (pair.isEmpty())
+				continue;
+			int eq = pair.indexOf('=');
+			String name = eq < 0 ? pair : pair.substring(0, eq);
+			String value = eq < 0 ? "" : pair.substring(eq + 1);
+			params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+		}
+		return params;
+	}
+
+}
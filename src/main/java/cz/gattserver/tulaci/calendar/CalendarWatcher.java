@@ -0,0 +1,140 @@
+package cz.gattserver.tulaci.calendar;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Hlídá adresář s daty a po každé změně vstupů kalendář znovu sestaví. Dávka úprav (editor ukládající přes dočasný
+ * soubor, kopírování více fotek) se sloučí do jednoho sestavení -- to začne až po {@link #getDebounceMillis()} bez
+ * další změny.
+ * <p>
+ * Sestavuje se vždy v inkrementálním režimu {@link CalendarBuilder}u, takže se znovu zpracují jen fotky listů, které
+ * změna zasáhla (nová fotka jeden list, změna svátků všechny měsíce), ostatní se vezmou z cache. Builder i cache
+ * zůstávají mezi sestaveními v paměti a výstup se nahrazuje atomicky.
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarWatcher {
+
+	public static final long DEFAULT_DEBOUNCE_MILLIS = 150;
+
+	private final CalendarBuilder builder;
+	private final Path dataDir;
+	private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+	private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+
+	public CalendarWatcher(CalendarBuilder builder) {
+		this.builder = builder;
+		this.dataDir = builder.getDataDir().toAbsolutePath().normalize();
+		builder.setIncremental(true);
+	}
+
+	public long getDebounceMillis() {
+		return debounceMillis;
+	}
+
+	public void setDebounceMillis(long debounceMillis) {
+		if (debounceMillis < 0)
+			throw new IllegalArgumentException("Prodleva nesmí být záporná, je: " + debounceMillis);
+		this.debounceMillis = debounceMillis;
+	}
+
+	/**
+	 * Sestaví kalendář a pak hlídá změny, dokud není vlákno přerušeno
+	 */
+	public void run() throws IOException, InterruptedException {
+		try (WatchService watchService = dataDir.getFileSystem().newWatchService()) {
+			registerAll(dataDir, watchService);
+			System.out.println("Hlídám změny v adresáři: \t" + dataDir);
+			rebuild(new TreeSet<>());
+
+			while (!Thread.currentThread().isInterrupted()) {
+				Set<Path> changed = new TreeSet<>();
+				collectChanges(watchService.take(), watchService, changed);
+				WatchKey key;
+				while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null)
+					collectChanges(key, watchService, changed);
+				if (!changed.isEmpty())
+					rebuild(changed);
+			}
+		}
+	}
+
+	private void rebuild(Set<Path> changed) {
+		if (!changed.isEmpty()) {
+			StringBuilder sb = new StringBuilder();
+			for (Path path : changed)
+				sb.append(sb.length() == 0 ? "" : ", ").append(dataDir.relativize(path));
+			System.out.println("Změněné soubory: \t" + sb);
+		}
+		long start = System.nanoTime();
+		try {
+			builder.build();
+			System.out.println("Sestaveno za: \t" + (System.nanoTime() - start) / 1_000_000 + " ms");
+		} catch (IOException | UncheckedIOException | IllegalStateException e) {
+			// rozpracovaný vstup -- chyba se jen vypíše a čeká se na další úpravu
+			System.err.println("Sestavení selhalo: " + e.getMessage());
+		} catch (RuntimeException e) {
+			// chyba v builderu nesmí ukončit sledování, výpis se ale hodí celý
+			System.err.println("Sestavení selhalo: " + e);
+			e.printStackTrace();
+		}
+	}
+
+	private void collectChanges(WatchKey key, WatchService watchService, Set<Path> changed) throws IOException {
+		Path dir = watchedDirs.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW) {
+				// ztracené události, o tom, co je aktuální, rozhodnou otisky vstupů
+				changed.add(dataDir);
+				continue;
+			}
+			Path path = dir.resolve((Path) event.context());
+			if (isIgnored(path))
+				continue;
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path))
+				registerAll(path, watchService);
+			changed.add(path);
+		}
+		if (!key.reset())
+			watchedDirs.remove(key);
+	}
+
+	/**
+	 * Skryté soubory (dočasný výstup, cache), zálohy editorů a samotné výstupy nejsou vstupy
+	 */
+	private static boolean isIgnored(Path path) {
+		String name = path.getFileName().toString();
+		return name.startsWith(".") || name.endsWith("~") || name.endsWith(OutputFormat.XLS.getExtension())
+				|| name.endsWith(OutputFormat.XLSX.getExtension()) || name.endsWith(ContentManifest.EXTENSION);
+	}
+
+	private void registerAll(Path root, WatchService watchService) throws IOException {
+		try (Stream<Path> dirs = Files.walk(root)) {
+			for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+				if (dir != root && isIgnored(dir))
+					continue;
+				watchedDirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+			}
+		}
+	}
+
+}
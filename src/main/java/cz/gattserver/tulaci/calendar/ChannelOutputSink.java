@@ -0,0 +1,119 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Zápis do kanálu, který patří volajícímu. Sink ho nezavírá, při {@link #commit()} jen dopíše buffer, {@link #abort()}
+ * obsah bufferu zahodí.
+ * <p>
+ * Zápisy POI a zipu se kopírují rovnou do přímého (direct) {@link ByteBuffer}u a kanál dostává celé bloky. Mezi
+ * polem volajícího a kanálem je tak jediná kopie -- tu by jinak dělal sám JDK do svého dočasného přímého bufferu,
+ * protože soubory ani sokety z pole na haldě nezapisují.
+ *
+ * @author gattaka
+ *
+ */
+public class ChannelOutputSink implements OutputSink {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final String description;
+	private ChannelStream outputStream;
+
+	public ChannelOutputSink(WritableByteChannel channel) {
+		this(channel, "kanál");
+	}
+
+	/**
+	 * @param description
+	 *            popis cíle pro výpisy a události JFR
+	 */
+	public ChannelOutputSink(WritableByteChannel channel, String description) {
+		this.channel = channel;
+		this.description = description;
+	}
+
+	@Override
+	public OutputStream open() throws IOException {
+		if (outputStream != null)
+			throw new IllegalStateException("Výstup už byl otevřen");
+		outputStream = new ChannelStream(channel);
+		return outputStream;
+	}
+
+	/**
+	 * Proud nad kanálem, jehož {@code close()} jen dopíše buffer; kanál zavírá ten, komu patří
+	 */
+	static OutputStream stream(WritableByteChannel channel) {
+		return new ChannelStream(channel);
+	}
+
+	private static final class ChannelStream extends OutputStream {
+
+		private final WritableByteChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		ChannelStream(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (!buffer.hasRemaining())
+				drain();
+			buffer.put((byte) b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (!buffer.hasRemaining())
+					drain();
+				int chunk = Math.min(len, buffer.remaining());
+				buffer.put(b, off, chunk);
+				off += chunk;
+				len -= chunk;
+			}
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			// neblokující kanál smí zapsat jen část
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		@Override
+		public void flush() throws IOException {
+			drain();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+	}
+
+	@Override
+	public void commit() throws IOException {
+		outputStream.flush();
+	}
+
+	@Override
+	public void abort() {
+		if (outputStream != null)
+			outputStream.buffer.clear();
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+}
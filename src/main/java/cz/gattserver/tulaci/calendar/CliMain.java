@@ -0,0 +1,398 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import cz.gattserver.tulaci.calendar.BatchRunner.BatchResult;
+
+/**
+ * Vstupní bod pro skripty a CI. Na rozdíl od {@link Main} nikdy nevytváří okna (nenačítá Swing ani AWT toolkit),
+ * výsledek hlásí na stdout/stderr a návratovým kódem:
+ *
+ * <pre>
+ * java -cp tulaci-calendar-jar-with-dependencies.jar cz.gattserver.tulaci.calendar.CliMain data 2020 kalendar.xlsx
+ * </pre>
+ *
+ * @author gattaka
+ *
+ */
+public class CliMain {
+
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_FAILURE = 1;
+	public static final int EXIT_USAGE = 2;
+
+	private static final String USAGE = "Použití:\n"
+			+ "\tCliMain <adresář nebo .zip s daty> [rok] [výstupní soubor .xls|.xlsx] [přepínače]\n"
+			+ "\tCliMain --batch <soubor s úlohami> [--threads <počet>]\n"
+			+ "\tCliMain --batch <soubor s úlohami> --processes <počet> [--queue <adresář fronty>]\n"
+			+ "\tCliMain --worker <adresář fronty>\n"
+			+ "\tCliMain <adresář s daty oddílů> --server <port> [--output-cache <MB>] [přepínače fotek]\n"
+			+ "Dávky sestavují kalendáře s výchozím nastavením, přepínače níže platí jen pro jeden kalendář;\n"
+			+ "server používá jen --original-photos, --dpi, --quality a --picture-heap.\n" + "Přepínače:\n"
+			+ "\t--check            jen zkontrolovat vstupy a vypsat všechny chyby najednou\n"
+			+ "\t--watch            sledovat vstupy a po změně kalendář sestavit znovu\n"
+			+ "\t--incremental      znovu sestavit jen při změně vstupů\n"
+			+ "\t--original-photos  vložit fotky beze změny\n"
+			+ "\t--dpi <dpi>        rozlišení, na které se fotky zmenšují (výchozí "
+			+ PhotoProcessor.DEFAULT_DPI + ")\n" + "\t--quality <0-1>    kvalita JPEG (výchozí "
+			+ PhotoProcessor.DEFAULT_QUALITY + ")\n"
+			+ "\t--direct           .xlsx zapsat přímo, bez POI a s paralelní kompresí\n"
+			+ "\t--deterministic    stejné vstupy dají stejné bajty, vedle výstupu se uloží otisky listů\n"
+			+ "\t--compare <sešit>  porovnat výstup s dřívějším deterministickým sestavením,\n"
+			+ "\t                   rozdíly vypsat po buňkách\n"
+			+ "\t--pages <adresář>  místo sešitu vykreslit stránky do PNG v tiskovém rozlišení ("
+			+ PageRenderer.PRINT_DPI + " DPI)\n" + "\t--preview          stránky jen jako náhled ("
+			+ PageRenderer.PREVIEW_DPI + " DPI)\n"
+			+ "\t--picture-heap <MB> kolik připravených fotek smí být na haldě, zbytek čeká na disku (výchozí "
+			+ PictureStorage.DEFAULT_HEAP_BUDGET / (1024 * 1024) + ")\n"
+			+ "\t--output-cache <MB> cache hotových sešitů serveru, 0 = psát rovnou do odpovědi (výchozí "
+			+ CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES / (1024 * 1024) + ")\n";
+
+	public static void main(String[] args) {
+		// fotky se zpracovávají přes java.awt.image, toolkit se ale nesmí inicializovat
+		System.setProperty("java.awt.headless", "true");
+		long start = System.nanoTime();
+		int exitCode = run(args);
+		System.out.println("Doba běhu: \t" + (System.nanoTime() - start) / 1_000_000 + " ms");
+		System.exit(exitCode);
+	}
+
+	/**
+	 * @return návratový kód procesu
+	 */
+	static int run(String[] args) {
+		try {
+			return runUnchecked(args);
+		} catch (UsageException e) {
+			System.err.println(e.getMessage());
+			System.err.print(USAGE);
+			return EXIT_USAGE;
+		} catch (Exception e) {
+			System.err.println("Generování kalendáře selhalo: " + e.getMessage());
+			return EXIT_FAILURE;
+		} finally {
+			try {
+				PictureStorage.getShared().close();
+			} catch (IOException e) {
+				System.err.println("Dočasné soubory fotek se nepodařilo smazat: " + e.getMessage());
+			}
+			try {
+				InputBundle.closeAll();
+			} catch (IOException e) {
+				System.err.println("Archiv se vstupy se nepodařilo zavřít: " + e.getMessage());
+			}
+		}
+	}
+
+	private static int runUnchecked(String[] args) throws Exception {
+		List<String> positional = new ArrayList<>();
+		String batchFile = null;
+		Integer serverPort = null;
+		Integer threads = null;
+		Integer processes = null;
+		String queueDir = null;
+		String workerQueue = null;
+		boolean incremental = false;
+		boolean watch = false;
+		boolean checkOnly = false;
+		boolean originalPhotos = false;
+		String pagesDir = null;
+		boolean preview = false;
+		boolean direct = false;
+		boolean deterministic = false;
+		String compareWith = null;
+		long outputCacheBytes = CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES;
+		int dpi = PhotoProcessor.DEFAULT_DPI;
+		float quality = PhotoProcessor.DEFAULT_QUALITY;
+		Set<String> options = new LinkedHashSet<>();
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].startsWith("--"))
+				options.add(args[i]);
+			switch (args[i]) {
+			case "--batch":
+				batchFile = value(args, ++i, "--batch");
+				break;
+			case "--server":
+				serverPort = parseInt(value(args, ++i, "--server"), "--server");
+				break;
+			case "--threads":
+				threads = parsePositive(value(args, ++i, "--threads"), "--threads");
+				break;
+			case "--processes":
+				processes = parsePositive(value(args, ++i, "--processes"), "--processes");
+				break;
+			case "--queue":
+				queueDir = value(args, ++i, "--queue");
+				break;
+			case "--worker":
+				workerQueue = value(args, ++i, "--worker");
+				break;
+			case "--incremental":
+				incremental = true;
+				break;
+			case "--watch":
+				watch = true;
+				break;
+			case "--check":
+				checkOnly = true;
+				break;
+			case "--original-photos":
+				originalPhotos = true;
+				break;
+			case "--dpi":
+				dpi = parseInt(value(args, ++i, "--dpi"), "--dpi");
+				break;
+			case "--quality":
+				try {
+					quality = Float.parseFloat(value(args, ++i, "--quality"));
+				} catch (NumberFormatException e) {
+					throw new UsageException("Přepínač --quality vyžaduje desetinné číslo");
+				}
+				break;
+			case "--pages":
+				pagesDir = value(args, ++i, "--pages");
+				break;
+			case "--preview":
+				preview = true;
+				break;
+			case "--direct":
+				direct = true;
+				break;
+			case "--deterministic":
+				deterministic = true;
+				break;
+			case "--compare":
+				compareWith = value(args, ++i, "--compare");
+				break;
+			case "--picture-heap":
+				int megabytes = parseInt(value(args, ++i, "--picture-heap"), "--picture-heap");
+				if (megabytes < 0)
+					throw new UsageException("Přepínač --picture-heap nesmí být záporný");
+				PictureStorage.getShared().setHeapBudget(megabytes * 1024L * 1024);
+				break;
+			case "--output-cache":
+				int cacheMegabytes = parseInt(value(args, ++i, "--output-cache"), "--output-cache");
+				if (cacheMegabytes < 0)
+					throw new UsageException("Přepínač --output-cache nesmí být záporný");
+				outputCacheBytes = cacheMegabytes * 1024L * 1024;
+				break;
+			case "-h":
+			case "--help":
+				System.out.print(USAGE);
+				return EXIT_OK;
+			default:
+				if (args[i].startsWith("--"))
+					throw new UsageException("Neznámý přepínač: " + args[i]);
+				positional.add(args[i]);
+			}
+		}
+
+		if (workerQueue != null) {
+			checkOptions(options, "--worker", "--picture-heap");
+			if (!positional.isEmpty())
+				throw new UsageException("Přebytečný parametr: " + positional.get(0));
+			QueueWorker worker = new QueueWorker(new WorkQueue(Paths.get(workerQueue)));
+			return worker.run() == 0 ? EXIT_OK : EXIT_FAILURE;
+		}
+
+		if (batchFile != null && !positional.isEmpty())
+			throw new UsageException("Přebytečný parametr: " + positional.get(0));
+		if (batchFile != null && processes != null) {
+			// workery jsou samostatné procesy, sdílené úložiště fotek koordinátora se jich netýká
+			checkOptions(options, "--batch --processes", "--queue");
+			List<BatchJob> jobs = BatchJob.readJobs(Paths.get(batchFile));
+			Path dir = queueDir != null ? Paths.get(queueDir) : Files.createTempDirectory("tulaci-fronta");
+			boolean success = false;
+			try {
+				success = new ProcessCoordinator(processes).run(new WorkQueue(dir), jobs);
+			} finally {
+				// dočasnou frontu po úspěchu není proč nechávat, jinak se hodí její logy
+				if (success && queueDir == null)
+					deleteTree(dir);
+				else
+					System.out.println("Fronta a logy workerů: \t" + dir);
+			}
+			return success ? EXIT_OK : EXIT_FAILURE;
+		}
+
+		if (batchFile != null) {
+			checkOptions(options, "--batch", "--threads", "--picture-heap");
+			BatchRunner runner = threads == null ? new BatchRunner() : new BatchRunner(threads);
+			List<BatchResult> results = runner.run(BatchJob.readJobs(Paths.get(batchFile)));
+			for (BatchResult result : results)
+				if (!result.isSuccess())
+					return EXIT_FAILURE;
+			return EXIT_OK;
+		}
+
+		if (positional.isEmpty())
+			throw new UsageException("Chybí adresář s daty");
+		if (serverPort != null)
+			checkOptions(options, "--server", "--output-cache", "--original-photos", "--dpi", "--quality",
+					"--picture-heap");
+		else
+			for (String option : Arrays.asList("--threads", "--processes", "--queue", "--output-cache"))
+				if (options.contains(option))
+					throw new UsageException("Přepínač " + option + " platí jen pro dávku nebo server");
+
+		PhotoProcessor photoProcessor = null;
+		if (!originalPhotos) {
+			try {
+				photoProcessor = new PhotoProcessor(dpi, quality);
+			} catch (IllegalArgumentException e) {
+				throw new UsageException(e.getMessage());
+			}
+		}
+		if (serverPort != null) {
+			if (positional.size() > 1)
+				throw new UsageException("Přebytečný parametr: " + positional.get(1));
+			CalendarServer server = new CalendarServer(Paths.get(positional.get(0)), photoProcessor,
+					outputCacheBytes);
+			server.start(serverPort);
+			Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+			// server běží do ukončení procesu
+			Thread.currentThread().join();
+			return EXIT_OK;
+		}
+
+		if (positional.size() > 3)
+			throw new UsageException("Přebytečný parametr: " + positional.get(3));
+
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(Paths.get(positional.get(0)));
+		if (positional.size() > 1)
+			builder.setYearOverride(parseInt(positional.get(1), "rok"));
+		if (checkOnly) {
+			List<InputProblem> problems = new InputValidator(builder.getDataDir(), builder.getYearOverride())
+					.validate();
+			for (InputProblem problem : problems)
+				System.err.println(problem);
+			System.out.println(problems.isEmpty() ? "Vstupy jsou v pořádku" : "Nalezených chyb: " + problems.size());
+			return problems.isEmpty() ? EXIT_OK : EXIT_FAILURE;
+		}
+		if (positional.size() > 2) {
+			Path output = Paths.get(positional.get(2));
+			builder.setOutputFile(output);
+			builder.setOutputFormat(OutputFormat.forFile(output));
+		}
+		if (direct) {
+			if (builder.getOutputFormat() != OutputFormat.XLSX)
+				throw new UsageException("Přepínač --direct vyžaduje výstupní soubor .xlsx");
+			builder.setOutputFormat(OutputFormat.XLSX_DIRECT);
+		}
+		if (compareWith != null && (positional.size() < 3 || incremental || pagesDir != null || watch))
+			throw new UsageException("Přepínač --compare vyžaduje výstupní soubor a nejde kombinovat s --incremental, "
+					+ "--pages ani --watch");
+		builder.setIncremental(incremental);
+		builder.setDeterministic(deterministic || compareWith != null);
+		builder.setPhotoProcessor(photoProcessor);
+		if (pagesDir != null) {
+			List<Path> pages = builder.renderPages(Paths.get(pagesDir),
+					new PageRenderer(preview ? PageRenderer.PREVIEW_DPI : PageRenderer.PRINT_DPI));
+			System.out.println("Vykresleno stránek: " + pages.size());
+			return EXIT_OK;
+		}
+		if (watch) {
+			if (InputBundle.isBundle(builder.getDataDir()))
+				throw new UsageException("Režim sledování vyžaduje adresář s daty, ne archiv");
+			// běží do ukončení procesu
+			new CalendarWatcher(builder).run();
+			return EXIT_OK;
+		}
+		builder.build();
+		System.out.println("Generování kalendáře dopadlo úspěšně");
+		if (compareWith != null)
+			return compare(Paths.get(compareWith), builder.getOutputFile(), builder.getContentManifest());
+		return EXIT_OK;
+	}
+
+	/**
+	 * Porovná otisky listů s dřívějším sestavením; po buňkách se procházejí jen listy s jiným otiskem
+	 *
+	 * @return {@link #EXIT_OK}, pokud se obsah shoduje
+	 */
+	private static int compare(Path previous, Path current, ContentManifest manifest) throws IOException {
+		Path previousManifest = ContentManifest.pathFor(previous);
+		if (!Files.exists(previousManifest))
+			throw new IllegalStateException("K sešitu " + previous + " chybí otisky listů (" + previousManifest
+					+ "), vznikl s --deterministic?");
+		List<String> sheetNames = manifest.changedSheets(ContentManifest.read(previousManifest));
+		if (sheetNames.isEmpty()) {
+			System.out.println("Obsah všech listů se shoduje s: \t" + previous);
+			return EXIT_OK;
+		}
+		System.out.println("Změněné listy: \t" + String.join(", ", sheetNames));
+		for (String difference : SheetDiff.diff(previous, current, sheetNames))
+			System.out.println("\t" + difference);
+		return EXIT_FAILURE;
+	}
+
+	private static void deleteTree(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+				Files.delete(path);
+		}
+	}
+
+	/**
+	 * Odmítne přepínače, které by daný režim tiše ignoroval
+	 *
+	 * @param mode
+	 *            přepínač režimu, povolený vždy
+	 */
+	private static void checkOptions(Set<String> options, String mode, String... allowed) {
+		List<String> accepted = new ArrayList<>(Arrays.asList(mode.split(" ")));
+		accepted.addAll(Arrays.asList(allowed));
+		for (String option : options)
+			if (!accepted.contains(option))
+				throw new UsageException("Přepínač " + option + " nejde použít s " + mode);
+	}
+
+	private static int parsePositive(String value, String option) {
+		int number = parseInt(value, option);
+		if (number < 1)
+			throw new UsageException("Hodnota pro " + option + " musí být kladná, je: " + number);
+		return number;
+	}
+
+	private static String value(String[] args, int index, String option) {
+		if (index >= args.length)
+			throw new UsageException("Za " + option + " chybí hodnota");
+		return args[index];
+	}
+
+	private static int parseInt(String value, String option) {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new UsageException("Hodnota '" + value + "' pro " + option + " musí být celé číslo");
+		}
+	}
+
+	/**
+	 * Chybné parametry příkazové řádky. Jen ty vedou na nápovědu a {@link CliMain#EXIT_USAGE}, ostatní
+	 * {@link IllegalArgumentException} ze sestavení jsou obyčejné selhání.
+	 */
+	private static class UsageException extends IllegalArgumentException {
+
+		private static final long serialVersionUID = 1L;
+
+		UsageException(String message) {
+			super(message);
+		}
+
+	}
+
+}
@@ -0,0 +1,41 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 otisky obsahu, používané jako klíče úložišť a cache.
+ *
+ * @author gattaka
+ *
+ */
+public final class ContentHash {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private ContentHash() {
+	}
+
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 musí podle specifikace umět každé JVM
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public static String sha256(byte[] data) {
+		return toHex(newDigest().digest(data));
+	}
+
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,165 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import cz.gattserver.tulaci.calendar.SheetLayout.CellModel;
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Otisky obsahu listů jednoho sestavení. Otisk listu se počítá z jeho modelu -- buněk, stylů, sloučených oblastí,
+ * šířek sloupců a fotky s kotvou -- nezávisí tedy na výstupním formátu ani na metadatech sešitu. Dvě sestavení se
+ * stejnými otisky mají stejný obsah; regresní kontrola porovná otisky a podrobně ({@link SheetDiff}) prochází jen
+ * listy, které se liší.
+ * <p>
+ * Ukládá se vedle výstupu jako {@code <výstup>.manifest}, jeden list na řádek: otisk, tabulátor, název listu.
+ *
+ * @author gattaka
+ *
+ */
+public class ContentManifest {
+
+	public static final String EXTENSION = ".manifest";
+
+	private final List<String> sheetNames;
+	private final List<String> hashes;
+
+	public ContentManifest(List<String> sheetNames, List<String> hashes) {
+		if (sheetNames.size() != hashes.size())
+			throw new IllegalArgumentException("Počet názvů listů neodpovídá počtu otisků");
+		this.sheetNames = Collections.unmodifiableList(new ArrayList<>(sheetNames));
+		this.hashes = Collections.unmodifiableList(new ArrayList<>(hashes));
+	}
+
+	/**
+	 * Spočítá otisky všech listů, paralelně
+	 *
+	 * @param photos
+	 *            fotky listů ve stejném pořadí jako {@code layouts}
+	 */
+	public static ContentManifest of(List<SheetLayout> layouts, List<Photo> photos) {
+		List<String> hashes = IntStream.range(0, layouts.size()).parallel()
+				.mapToObj(sheetNo -> hashSheet(layouts.get(sheetNo), photos.get(sheetNo)))
+				.collect(Collectors.toList());
+		return new ContentManifest(layouts.stream().map(SheetLayout::getName).collect(Collectors.toList()), hashes);
+	}
+
+	/**
+	 * Otisk listu z kanonického zápisu modelu. Buňky jdou po řádcích a sloupcích, takže na pořadí, v jakém je model
+	 * vytvořil, nezáleží.
+	 */
+	static String hashSheet(SheetLayout layout, Photo photo) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("list\t").append(layout.getName()).append('\n');
+		for (int c = 0; c < layout.getColumnCount(); c++)
+			if (layout.getColumnWidth(c) > 0)
+				sb.append("sloupec\t").append(c).append('\t').append(layout.getColumnWidth(c)).append('\n');
+		for (CellModel cell : layout.getSortedCells()) {
+			Object value = cell.getValue();
+			sb.append(Region.cellName(cell.getRow(), cell.getColumn())).append('\t');
+			if (value instanceof Number)
+				sb.append('n').append(((Number) value).doubleValue());
+			else
+				sb.append('s').append(value);
+			sb.append('\t').append(cell.getStyle()).append('\n');
+		}
+		for (Region region : layout.getMergedRegions())
+			sb.append("oblast\t").append(region).append('\n');
+		PhotoAnchor anchor = layout.getPhotoAnchor();
+		if (anchor != null)
+			sb.append("fotka\t").append(photo.getHash()).append('\t').append(anchor.getCol1()).append('+')
+					.append(anchor.getCol1Offset()).append('\t').append(anchor.getRow1()).append('+')
+					.append(anchor.getRow1Offset()).append('\t').append(anchor.getCol2()).append('+')
+					.append(anchor.getCol2Offset()).append('\t').append(anchor.getRow2()).append('+')
+					.append(anchor.getRow2Offset()).append('\n');
+		return ContentHash.sha256(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return soubor s otisky k danému sešitu
+	 */
+	public static Path pathFor(Path workbook) {
+		Path absolute = workbook.toAbsolutePath();
+		return absolute.resolveSibling(absolute.getFileName() + EXTENSION);
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             pokud má některý řádek špatný formát
+	 */
+	public static ContentManifest read(Path file) throws IOException {
+		List<String> names = new ArrayList<>();
+		List<String> hashes = new ArrayList<>();
+		int lineNo = 0;
+		for (String line : Files.readAllLines(file)) {
+			lineNo++;
+			if (line.isEmpty())
+				continue;
+			int tab = line.indexOf('\t');
+			if (tab <= 0)
+				throw new IllegalStateException("Chybný řádek " + lineNo + " v souboru otisků " + file + ": " + line);
+			hashes.add(line.substring(0, tab));
+			names.add(line.substring(tab + 1));
+		}
+		return new ContentManifest(names, hashes);
+	}
+
+	/**
+	 * Zapíše otisky atomicky přes {@link AtomicFileSink}
+	 */
+	public void write(Path file) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int sheetNo = 0; sheetNo < hashes.size(); sheetNo++)
+			sb.append(hashes.get(sheetNo)).append('\t').append(sheetNames.get(sheetNo)).append('\n');
+		OutputSink sink = OutputSink.file(file);
+		boolean committed = false;
+		try {
+			OutputStream outputStream = sink.open();
+			outputStream.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+			sink.commit();
+			committed = true;
+		} finally {
+			if (!committed)
+				sink.abort();
+		}
+	}
+
+	/**
+	 * Listy se párují podle názvu, názvy listů jsou v sešitu jedinečné
+	 *
+	 * @return názvy listů, jejichž otisk se od {@code previous} liší, včetně listů, které v něm chybí (v pořadí
+	 *         tohoto sestavení), a na konci listy, které jsou jen v {@code previous}
+	 */
+	public List<String> changedSheets(ContentManifest previous) {
+		Map<String, String> previousHashes = new HashMap<>();
+		for (int sheetNo = 0; sheetNo < previous.hashes.size(); sheetNo++)
+			previousHashes.put(previous.sheetNames.get(sheetNo), previous.hashes.get(sheetNo));
+		List<String> changed = new ArrayList<>();
+		for (int sheetNo = 0; sheetNo < hashes.size(); sheetNo++)
+			if (!hashes.get(sheetNo).equals(previousHashes.get(sheetNames.get(sheetNo))))
+				changed.add(sheetNames.get(sheetNo));
+		for (String sheetName : previous.sheetNames)
+			if (!sheetNames.contains(sheetName))
+				changed.add(sheetName);
+		return changed;
+	}
+
+	public List<String> getSheetNames() {
+		return sheetNames;
+	}
+
+	public List<String> getHashes() {
+		return hashes;
+	}
+
+}
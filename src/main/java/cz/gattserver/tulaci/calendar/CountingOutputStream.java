@@ -0,0 +1,37 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Propouští zápis dál a počítá zapsané bajty.
+ *
+ * @author gattaka
+ *
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+	private long count;
+
+	public CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+}
@@ -0,0 +1,366 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.util.Units;
+
+import cz.gattserver.tulaci.calendar.SheetLayout.CellModel;
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Zápis {@code .xlsx} přímo z {@link SheetLayout}ů, bez objektového modelu POI. Listy kalendáře mají pevnou a
+ * předem známou strukturu, XML částí (listy, styly, kresby) se proto skládají rovnou do textu a balí
+ * {@link ParallelZipWriter}em: části se komprimují paralelně a fotky se ukládají beze změny, JPEG ani PNG by další
+ * komprese nezmenšila.
+ * <p>
+ * Obsah odpovídá tomu, co zapíše {@link SheetSerializer} -- stejné buňky, styly, sloučené oblasti i kotvy fotek.
+ * Výška řádků je pevně ta, se kterou počítá {@link PhotoSlot}, texty se ukládají přímo v buňkách
+ * ({@code inlineStr}), bez tabulky sdílených řetězců.
+ *
+ * @author gattaka
+ *
+ */
+public class DirectXlsxWriter {
+
+	private static final String XML_HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n";
+	private static final String NS_MAIN = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+	private static final String NS_RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	private static final String NS_PACKAGE_RELATIONSHIPS = "http://schemas.openxmlformats.org/package/2006/relationships";
+	private static final String NS_DRAWING = "http://schemas.openxmlformats.org/drawingml/2006/spreadsheetDrawing";
+	private static final String NS_DRAWING_MAIN = "http://schemas.openxmlformats.org/drawingml/2006/main";
+
+	private static final String CONTENT_TYPE_PREFIX = "application/vnd.openxmlformats-officedocument.";
+
+	/**
+	 * Výchozí písmo sešitu -- Arial 10 odpovídá výchozí výšce řádku 12,75 bodu a šířce znaku 7 px, se kterými počítá
+	 * {@link PhotoSlot}
+	 */
+	private static final String DEFAULT_FONT = "<font><sz val=\"10\"/><name val=\"Arial\"/></font>";
+
+	private final List<SheetLayout> layouts;
+	private final List<Photo> photos;
+
+	private final Map<StyleKey, Integer> styles = new LinkedHashMap<>();
+	private final Map<String, Integer> fonts = new LinkedHashMap<>();
+	private final List<StyleKey> fontStyles = new ArrayList<>();
+
+	/**
+	 * Název části s obrázkem podle otisku fotky, stejné fotky se uloží jen jednou
+	 */
+	private final Map<String, String> media = new LinkedHashMap<>();
+	private final Map<String, Photo> mediaPhotos = new HashMap<>();
+
+	/**
+	 * @param photos
+	 *            fotky listů ve stejném pořadí jako {@code layouts}
+	 */
+	public DirectXlsxWriter(List<SheetLayout> layouts, List<Photo> photos) {
+		this.layouts = layouts;
+		this.photos = photos;
+	}
+
+	/**
+	 * Zapíše celý sešit do proudu, který nezavírá
+	 *
+	 * @return počet zapsaných bajtů
+	 */
+	public long write(OutputStream outputStream) throws IOException {
+		// styly a obrázky dostanou indexy předem, listy se pak dají skládat nezávisle na sobě
+		for (SheetLayout layout : layouts)
+			for (CellModel cell : layout.getCells())
+				registerStyle(cell.getStyle());
+		String[] sheetMedia = new String[layouts.size()];
+		for (int sheetNo = 0; sheetNo < layouts.size(); sheetNo++)
+			if (layouts.get(sheetNo).getPhotoAnchor() != null)
+				sheetMedia[sheetNo] = registerMedia(photos.get(sheetNo));
+
+		List<String[]> sheetParts = IntStream.range(0, layouts.size()).parallel()
+				.mapToObj(sheetNo -> new String[] { sheetXml(layouts.get(sheetNo)),
+						sheetMedia[sheetNo] == null ? null : drawingXml(layouts.get(sheetNo)) })
+				.collect(Collectors.toList());
+
+		ParallelZipWriter zip = new ParallelZipWriter();
+		zip.add("[Content_Types].xml", utf8(contentTypesXml(sheetMedia)), true);
+		zip.add("_rels/.rels", utf8(relationships(new String[][] {
+				{ "officeDocument/2006/relationships/officeDocument", "xl/workbook.xml" } })), true);
+		zip.add("xl/workbook.xml", utf8(workbookXml()), true);
+		String[][] workbookRelationships = new String[layouts.size() + 1][];
+		for (int sheetNo = 0; sheetNo < layouts.size(); sheetNo++)
+			workbookRelationships[sheetNo] = new String[] { "officeDocument/2006/relationships/worksheet",
+					"worksheets/sheet" + (sheetNo + 1) + ".xml" };
+		workbookRelationships[layouts.size()] = new String[] { "officeDocument/2006/relationships/styles",
+				"styles.xml" };
+		zip.add("xl/_rels/workbook.xml.rels", utf8(relationships(workbookRelationships)), true);
+		zip.add("xl/styles.xml", utf8(stylesXml()), true);
+
+		for (int sheetNo = 0; sheetNo < layouts.size(); sheetNo++) {
+			int number = sheetNo + 1;
+			zip.add("xl/worksheets/sheet" + number + ".xml", utf8(sheetParts.get(sheetNo)[0]), true);
+			if (sheetMedia[sheetNo] == null)
+				continue;
+			zip.add("xl/worksheets/_rels/sheet" + number + ".xml.rels", utf8(relationships(new String[][] {
+					{ "officeDocument/2006/relationships/drawing", "../drawings/drawing" + number + ".xml" } })),
+					true);
+			zip.add("xl/drawings/drawing" + number + ".xml", utf8(sheetParts.get(sheetNo)[1]), true);
+			zip.add("xl/drawings/_rels/drawing" + number + ".xml.rels", utf8(relationships(new String[][] {
+					{ "officeDocument/2006/relationships/image", "../media/" + sheetMedia[sheetNo] } })), true);
+		}
+		for (Map.Entry<String, String> entry : media.entrySet())
+			zip.add("xl/media/" + entry.getValue(), mediaPhotos.get(entry.getKey()).getData(), false);
+
+		return zip.write(outputStream);
+	}
+
+	private void registerStyle(StyleKey style) {
+		if (styles.containsKey(style))
+			return;
+		String fontKey = style.fontKey();
+		if (!fonts.containsKey(fontKey)) {
+			// font 0 je výchozí písmo sešitu
+			fonts.put(fontKey, fonts.size() + 1);
+			fontStyles.add(style);
+		}
+		// xf 0 je výchozí styl
+		styles.put(style, styles.size() + 1);
+	}
+
+	private String registerMedia(Photo photo) {
+		String hash = photo.getHash();
+		String name = media.get(hash);
+		if (name == null) {
+			name = "image" + (media.size() + 1)
+					+ (photo.getPictureType() == Workbook.PICTURE_TYPE_PNG ? ".png" : ".jpeg");
+			media.put(hash, name);
+			mediaPhotos.put(hash, photo);
+		}
+		return name;
+	}
+
+	private String contentTypesXml(String[] sheetMedia) {
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+		sb.append("<Default Extension=\"rels\"")
+				.append(" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>")
+				.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>")
+				.append("<Default Extension=\"jpeg\" ContentType=\"image/jpeg\"/>")
+				.append("<Default Extension=\"png\" ContentType=\"image/png\"/>");
+		override(sb, "/xl/workbook.xml", "spreadsheetml.sheet.main+xml");
+		override(sb, "/xl/styles.xml", "spreadsheetml.styles+xml");
+		for (int sheetNo = 0; sheetNo < layouts.size(); sheetNo++) {
+			override(sb, "/xl/worksheets/sheet" + (sheetNo + 1) + ".xml", "spreadsheetml.worksheet+xml");
+			if (sheetMedia[sheetNo] != null)
+				override(sb, "/xl/drawings/drawing" + (sheetNo + 1) + ".xml", "drawing+xml");
+		}
+		return sb.append("</Types>").toString();
+	}
+
+	private static void override(StringBuilder sb, String part, String type) {
+		sb.append("<Override PartName=\"").append(part).append("\" ContentType=\"").append(CONTENT_TYPE_PREFIX)
+				.append(type).append("\"/>");
+	}
+
+	/**
+	 * @param targets
+	 *            dvojice typ vztahu (bez {@code http://schemas.openxmlformats.org/}) a cíl, {@code rId} podle pořadí
+	 */
+	private static String relationships(String[][] targets) {
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<Relationships xmlns=\"").append(NS_PACKAGE_RELATIONSHIPS).append("\">");
+		for (int i = 0; i < targets.length; i++)
+			sb.append("<Relationship Id=\"rId").append(i + 1).append("\" Type=\"http://schemas.openxmlformats.org/")
+					.append(targets[i][0]).append("\" Target=\"").append(targets[i][1]).append("\"/>");
+		return sb.append("</Relationships>").toString();
+	}
+
+	private String workbookXml() {
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<workbook xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_RELATIONSHIPS)
+				.append("\"><sheets>");
+		for (int sheetNo = 0; sheetNo < layouts.size(); sheetNo++) {
+			sb.append("<sheet name=\"");
+			escape(sb, layouts.get(sheetNo).getName());
+			sb.append("\" sheetId=\"").append(sheetNo + 1).append("\" r:id=\"rId").append(sheetNo + 1).append("\"/>");
+		}
+		return sb.append("</sheets></workbook>").toString();
+	}
+
+	private String stylesXml() {
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<styleSheet xmlns=\"").append(NS_MAIN).append("\">");
+		sb.append("<fonts count=\"").append(fonts.size() + 1).append("\">").append(DEFAULT_FONT);
+		for (StyleKey style : fontStyles) {
+			sb.append("<font>");
+			if (style.isBold())
+				sb.append("<b/>");
+			sb.append("<sz val=\"").append(style.getFontHeightInPoints()).append("\"/>");
+			if (style.getColor() != Font.COLOR_NORMAL)
+				sb.append("<color indexed=\"").append(style.getColor()).append("\"/>");
+			sb.append("<name val=\"");
+			escape(sb, style.getFontName());
+			sb.append("\"/></font>");
+		}
+		sb.append("</fonts>");
+		sb.append("<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+				+ "<fill><patternFill patternType=\"gray125\"/></fill></fills>");
+		sb.append("<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>");
+		sb.append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/>"
+				+ "</cellStyleXfs>");
+		sb.append("<cellXfs count=\"").append(styles.size() + 1).append("\">")
+				.append("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+		for (StyleKey style : styles.keySet()) {
+			sb.append("<xf numFmtId=\"0\" fontId=\"").append(fonts.get(style.fontKey()))
+					.append("\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\" applyAlignment=\"1\">")
+					.append("<alignment");
+			if (style.getAlignment() != HorizontalAlignment.GENERAL)
+				sb.append(" horizontal=\"").append(horizontal(style.getAlignment())).append('"');
+			sb.append(" vertical=\"").append(style.getVerticalAlignment().name().toLowerCase()).append("\"/></xf>");
+		}
+		sb.append("</cellXfs>");
+		sb.append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>");
+		return sb.append("</styleSheet>").toString();
+	}
+
+	private static String horizontal(HorizontalAlignment alignment) {
+		return alignment == HorizontalAlignment.CENTER_SELECTION ? "centerContinuous"
+				: alignment.name().toLowerCase();
+	}
+
+	private String sheetXml(SheetLayout layout) {
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<worksheet xmlns=\"").append(NS_MAIN).append("\" xmlns:r=\"").append(NS_RELATIONSHIPS)
+				.append("\">");
+		sb.append("<sheetFormatPr defaultRowHeight=\"").append(PhotoSlot.DEFAULT_ROW_HEIGHT_POINTS)
+				.append("\" customHeight=\"1\"/>");
+
+		boolean cols = false;
+		for (int c = 0; c < layout.getColumnCount(); c++) {
+			if (layout.getColumnWidth(c) <= 0)
+				continue;
+			if (!cols)
+				sb.append("<cols>");
+			cols = true;
+			sb.append("<col min=\"").append(c + 1).append("\" max=\"").append(c + 1).append("\" width=\"")
+					.append(layout.getColumnWidth(c) / 256.0).append("\" customWidth=\"1\"/>");
+		}
+		if (cols)
+			sb.append("</cols>");
+
+		sb.append("<sheetData>");
+		// sheetData vyžaduje buňky po řádcích a sloupcích
+		List<CellModel> cells = layout.getSortedCells();
+		int row = -1;
+		for (CellModel cell : cells) {
+			if (cell.getRow() != row) {
+				if (row >= 0)
+					sb.append("</row>");
+				row = cell.getRow();
+				sb.append("<row r=\"").append(row + 1).append("\">");
+			}
+			sb.append("<c r=\"").append(Region.cellName(cell.getRow(), cell.getColumn())).append("\" s=\"")
+					.append(styles.get(cell.getStyle())).append('"');
+			Object value = cell.getValue();
+			if (value instanceof Number) {
+				double number = ((Number) value).doubleValue();
+				sb.append("><v>");
+				if (number == Math.rint(number) && Math.abs(number) < 1e15)
+					sb.append((long) number);
+				else
+					sb.append(number);
+				sb.append("</v></c>");
+			} else if (value != null) {
+				sb.append(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+				escape(sb, (String) value);
+				sb.append("</t></is></c>");
+			} else {
+				sb.append("/>");
+			}
+		}
+		if (row >= 0)
+			sb.append("</row>");
+		sb.append("</sheetData>");
+
+		if (!layout.getMergedRegions().isEmpty()) {
+			sb.append("<mergeCells count=\"").append(layout.getMergedRegions().size()).append("\">");
+			for (Region region : layout.getMergedRegions())
+				sb.append("<mergeCell ref=\"").append(region).append("\"/>");
+			sb.append("</mergeCells>");
+		}
+		if (layout.getPhotoAnchor() != null)
+			sb.append("<drawing r:id=\"rId1\"/>");
+		return sb.append("</worksheet>").toString();
+	}
+
+	private String drawingXml(SheetLayout layout) {
+		PhotoAnchor anchor = layout.getPhotoAnchor();
+		StringBuilder sb = new StringBuilder(XML_HEADER);
+		sb.append("<xdr:wsDr xmlns:xdr=\"").append(NS_DRAWING).append("\" xmlns:a=\"").append(NS_DRAWING_MAIN)
+				.append("\" xmlns:r=\"").append(NS_RELATIONSHIPS).append("\">");
+		sb.append("<xdr:twoCellAnchor editAs=\"twoCell\">");
+		marker(sb, "from", layout, anchor.getCol1(), anchor.getCol1Offset(), anchor.getRow1(), anchor.getRow1Offset());
+		marker(sb, "to", layout, anchor.getCol2(), anchor.getCol2Offset(), anchor.getRow2(), anchor.getRow2Offset());
+		sb.append("<xdr:pic><xdr:nvPicPr><xdr:cNvPr id=\"1\" name=\"Picture 1\"/><xdr:cNvPicPr>"
+				+ "<a:picLocks noChangeAspect=\"1\"/></xdr:cNvPicPr></xdr:nvPicPr>"
+				+ "<xdr:blipFill><a:blip r:embed=\"rId1\"/><a:stretch><a:fillRect/></a:stretch></xdr:blipFill>"
+				+ "<xdr:spPr><a:xfrm><a:off x=\"0\" y=\"0\"/><a:ext cx=\"0\" cy=\"0\"/></a:xfrm>"
+				+ "<a:prstGeom prst=\"rect\"><a:avLst/></a:prstGeom></xdr:spPr></xdr:pic><xdr:clientData/>");
+		sb.append("</xdr:twoCellAnchor></xdr:wsDr>");
+		return sb.toString();
+	}
+
+	/**
+	 * Roh kotvy, posuny v EMU stejně jako u XLSX v {@link SheetSerializer}
+	 */
+	private static void marker(StringBuilder sb, String name, SheetLayout layout, int col, double colOffset, int row,
+			double rowOffset) {
+		int width = layout.getColumnWidth(col) > 0 ? layout.getColumnWidth(col) : PhotoSlot.DEFAULT_COLUMN_WIDTH;
+		double columnEmu = PhotoSlot.columnWidthPoints(width) * Units.EMU_PER_POINT;
+		double rowEmu = PhotoSlot.DEFAULT_ROW_HEIGHT_POINTS * Units.EMU_PER_POINT;
+		sb.append("<xdr:").append(name).append("><xdr:col>").append(col).append("</xdr:col><xdr:colOff>")
+				.append(Math.round(colOffset * columnEmu)).append("</xdr:colOff><xdr:row>").append(row)
+				.append("</xdr:row><xdr:rowOff>").append(Math.round(rowOffset * rowEmu)).append("</xdr:rowOff></xdr:")
+				.append(name).append('>');
+	}
+
+	/**
+	 * Escapuje text pro XML a vynechá znaky, které XML 1.0 nepovoluje
+	 */
+	private static void escape(StringBuilder sb, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r')
+					sb.append(c);
+			}
+		}
+	}
+
+	private static byte[] utf8(String xml) {
+		return xml.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,59 @@
+package cz.gattserver.tulaci.calendar;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Formát a rozměry obrázku přečtené z hlavičky, viz {@link ImageMetadataIndex}
+ *
+ * @author gattaka
+ *
+ */
+public final class ImageMetadata {
+
+	public enum Format {
+
+		JPEG(Workbook.PICTURE_TYPE_JPEG), PNG(Workbook.PICTURE_TYPE_PNG);
+
+		private final int pictureType;
+
+		private Format(int pictureType) {
+			this.pictureType = pictureType;
+		}
+
+		/**
+		 * @return typ pro {@link Workbook#addPicture(byte[], int)}
+		 */
+		public int getPictureType() {
+			return pictureType;
+		}
+
+	}
+
+	private final Format format;
+	private final int width;
+	private final int height;
+
+	public ImageMetadata(Format format, int width, int height) {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public String toString() {
+		return format + " " + width + "x" + height;
+	}
+
+}
@@ -0,0 +1,148 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Formát a rozměry fotek bez dekódování pixelů. Čtou se jen značky souboru a hlavička s rozměry (u JPEG segment
+ * SOF, ke kterému se přeskakuje po délkách segmentů, u PNG blok IHDR), takže i u velké fotky jde o pár set bajtů.
+ * Výsledky se pamatují podle cesty, velikosti a času změny souboru; fotky z archivu podle
+ * {@link InputBundle#cacheKey(Path)}, aby index nerostl s každým znovuotevřením archivu.
+ *
+ * @author gattaka
+ *
+ */
+public class ImageMetadataIndex {
+
+	private static final ImageMetadataIndex SHARED = new ImageMetadataIndex();
+
+	private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private static final class Entry {
+
+		final String stat;
+		final ImageMetadata metadata;
+
+		Entry(String stat, ImageMetadata metadata) {
+			this.stat = stat;
+			this.metadata = metadata;
+		}
+
+	}
+
+	/**
+	 * Index společný pro celý proces
+	 */
+	public static ImageMetadataIndex getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return metadata fotky, nebo {@code null}, pokud soubor není JPEG ani PNG nebo má poškozenou hlavičku
+	 */
+	public ImageMetadata get(Path file) throws IOException {
+		String key = InputBundle.cacheKey(file);
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		String stat = attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.stat.equals(stat)) {
+			entry = new Entry(stat, read(file));
+			entries.put(key, entry);
+		}
+		return entry.metadata;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Přečte hlavičku bez cache. Soubor se čte jen dopředu, takže stejně levně funguje i pro fotky uvnitř archivu
+	 * {@link InputBundle}; na výchozím souborovém systému přeskakování segmentů jen posouvá pozici v souboru.
+	 */
+	public static ImageMetadata read(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 512))) {
+			byte[] head = new byte[24];
+			in.readFully(head, 0, 2);
+			if ((head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xD8)
+				return readJpeg(in);
+
+			in.readFully(head, 2, head.length - 2);
+			for (int i = 0; i < PNG_SIGNATURE.length; i++)
+				if (head[i] != PNG_SIGNATURE[i])
+					return null;
+			ByteBuffer buffer = ByteBuffer.wrap(head);
+			// délka bloku (4), "IHDR" (4), šířka (4), výška (4)
+			if (head[12] != 'I' || head[13] != 'H' || head[14] != 'D' || head[15] != 'R')
+				return null;
+			return valid(ImageMetadata.Format.PNG, buffer.getInt(16), buffer.getInt(20));
+		} catch (EOFException e) {
+			// useknutý soubor
+			return null;
+		}
+	}
+
+	private static ImageMetadata readJpeg(DataInputStream in) throws IOException {
+		while (true) {
+			// značka segmentu, před ní mohou být výplňové 0xFF
+			int marker = in.readUnsignedByte();
+			if (marker != 0xFF)
+				return null;
+			while ((marker = in.readUnsignedByte()) == 0xFF)
+				;
+			if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7))
+				continue;
+			// konec obrázku nebo začátek dat bez předchozího SOF
+			if (marker == 0xD9 || marker == 0xDA)
+				return null;
+
+			int length = in.readUnsignedShort();
+			if (length < 2)
+				return null;
+			if (isStartOfFrame(marker)) {
+				// přesnost (1), výška (2), šířka (2)
+				in.readUnsignedByte();
+				int height = in.readUnsignedShort();
+				int width = in.readUnsignedShort();
+				return valid(ImageMetadata.Format.JPEG, width, height);
+			}
+			skipFully(in, length - 2);
+		}
+	}
+
+	/**
+	 * SOF0-SOF15 kromě DHT (C4), JPG (C8) a DAC (CC)
+	 */
+	private static boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+	}
+
+	private static ImageMetadata valid(ImageMetadata.Format format, int width, int height) {
+		return width > 0 && height > 0 ? new ImageMetadata(format, width, height) : null;
+	}
+
+	private static void skipFully(InputStream in, long length) throws IOException {
+		while (length > 0) {
+			long skipped = in.skip(length);
+			if (skipped <= 0) {
+				// skip smí vrátit 0 i před koncem proudu, konec pozná až read
+				if (in.read() < 0)
+					throw new EOFException();
+				skipped = 1;
+			}
+			length -= skipped;
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Perzistentní cache pro inkrementální sestavení, uložená v adresáři vedle výstupu
+ * ({@code .<výstup>.cache}). Drží otisky vstupů jednotlivých listů z posledního sestavení, otisky fotek podle
+ * velikosti a času změny (fotka se tak znovu čte jen když se změnila) a zpracované fotky, které si další běh
+ * nemusí znovu dekódovat.
+ *
+ * @author gattaka
+ *
+ */
+public class IncrementalCache implements PhotoHasher {
+
+	private static final String FINGERPRINTS_FILE = "fingerprints.properties";
+	private static final String SHEET_PREFIX = "sheet.";
+	private static final String PHOTO_PREFIX = "photo.";
+	private static final String IMAGE_SUFFIX = ".img";
+
+	private final Path dir;
+	private final Properties previous = new Properties();
+	private final Properties current = new Properties();
+	private final Set<Path> usedImages = new HashSet<>();
+
+	private IncrementalCache(Path dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Otevře (případně založí) cache pro daný výstupní soubor
+	 */
+	public static IncrementalCache open(Path outputFile) throws IOException {
+		Path absolute = outputFile.toAbsolutePath();
+		IncrementalCache cache = new IncrementalCache(
+				absolute.resolveSibling("." + absolute.getFileName().toString() + ".cache"));
+		Files.createDirectories(cache.dir);
+		Path fingerprints = cache.dir.resolve(FINGERPRINTS_FILE);
+		if (Files.exists(fingerprints)) {
+			try (InputStream is = Files.newInputStream(fingerprints)) {
+				cache.previous.load(is);
+			}
+		}
+		return cache;
+	}
+
+	public Path getDir() {
+		return dir;
+	}
+
+	/**
+	 * Otisk obsahu fotky. Pokud se od minula nezměnila velikost ani čas změny souboru, vrátí uložený otisk bez čtení
+	 * souboru.
+	 */
+	@Override
+	public synchronized String photoHash(Path photoPath) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(photoPath, BasicFileAttributes.class);
+		String stat = attrs.size() + "|" + attrs.lastModifiedTime().toMillis() + "|";
+		String key = PHOTO_PREFIX + photoPath.toAbsolutePath().normalize();
+
+		String hash = null;
+		String known = current.getProperty(key, previous.getProperty(key));
+		if (known != null && known.startsWith(stat))
+			hash = known.substring(stat.length());
+		if (hash == null)
+			hash = ContentHash.sha256(Files.readAllBytes(photoPath));
+		current.setProperty(key, stat + hash);
+		return hash;
+	}
+
+	/**
+	 * Porovná otisky listů s minulým sestavením a zapamatuje si je pro {@link #save()}.
+	 *
+	 * @return indexy listů, jejichž vstupy se změnily
+	 */
+	public List<Integer> changedSheets(List<String> fingerprints) {
+		List<Integer> changed = new ArrayList<>();
+		for (int sheetNo = 0; sheetNo < fingerprints.size(); sheetNo++) {
+			String key = SHEET_PREFIX + sheetNo;
+			if (!fingerprints.get(sheetNo).equals(previous.getProperty(key)))
+				changed.add(sheetNo);
+			current.setProperty(key, fingerprints.get(sheetNo));
+		}
+		return changed;
+	}
+
+	/**
+	 * @return zpracovaná fotka z minulých běhů, nebo {@code null}
+	 */
+	public byte[] getImage(String key) {
+		Path path = imagePath(key);
+		markUsed(path);
+		try {
+			return Files.exists(path) ? Files.readAllBytes(path) : null;
+		} catch (IOException e) {
+			// poškozená položka cache se prostě spočítá znovu
+			return null;
+		}
+	}
+
+	public boolean hasImage(String key) {
+		Path path = imagePath(key);
+		markUsed(path);
+		return Files.exists(path);
+	}
+
+	public void putImage(String key, byte[] data) {
+		Path path = imagePath(key);
+		markUsed(path);
+		try {
+			Path tmp = Files.createTempFile(dir, "img", ".tmp");
+			Files.write(tmp, data);
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Nepodařilo se uložit fotku do cache " + dir, e);
+		}
+	}
+
+	private synchronized void markUsed(Path path) {
+		usedImages.add(path);
+	}
+
+	private Path imagePath(String key) {
+		// klíč obsahuje oddělovače a desetinnou tečku, do názvu souboru jde jeho otisk
+		return dir.resolve(ContentHash.sha256(key.getBytes(StandardCharsets.UTF_8)) + IMAGE_SUFFIX);
+	}
+
+	/**
+	 * Uloží otisky tohoto sestavení a smaže fotky, které už žádný list nepoužívá. Volá se až po úspěšném zápisu
+	 * výstupu.
+	 */
+	public synchronized void save() throws IOException {
+		try (DirectoryStream<Path> images = Files.newDirectoryStream(dir, "*" + IMAGE_SUFFIX)) {
+			for (Path image : images)
+				if (!usedImages.contains(image))
+					Files.deleteIfExists(image);
+		}
+
+		Path tmp = Files.createTempFile(dir, "fingerprints", ".tmp");
+		try (OutputStream os = Files.newOutputStream(tmp)) {
+			current.store(os, "Tuláci kalendář -- otisky vstupů");
+		}
+		Files.move(tmp, dir.resolve(FINGERPRINTS_FILE), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
@@ -0,0 +1,184 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vstupy oddílu zabalené do jednoho {@code .zip} -- {@code data.txt}, textové soubory i fotky v kořeni archivu.
+ * Archiv se otevře jako {@link FileSystem} a dál se s ním pracuje přes {@link Path} stejně jako s adresářem, nic se
+ * nerozbaluje na disk. Otevřený archiv se drží v paměti procesu (adresář archivu se čte jen jednou) a znovu se
+ * otevře až při změně velikosti nebo času změny souboru.
+ * <p>
+ * Každé sestavení si archiv vypůjčí přes {@link #acquire(Path)} a po dočtení vrátí přes {@link #release(Path)}.
+ * Předchozí verze archivu se tak nezavírá hned, mohou z ní ještě číst běžící sestavení; zavře se, jakmile ji vrátí
+ * poslední z nich.
+ *
+ * @author gattaka
+ *
+ */
+public final class InputBundle {
+
+	public static final String EXTENSION = ".zip";
+
+	private static final Map<Path, Opened> OPENED = new HashMap<>();
+	private static final List<Opened> RETIRED = new ArrayList<>();
+
+	private static final class Opened {
+
+		final Path bundle;
+		final String stat;
+		final FileSystem fileSystem;
+		final Path root;
+		int users;
+
+		Opened(Path bundle, String stat, FileSystem fileSystem) {
+			this.bundle = bundle;
+			this.stat = stat;
+			this.fileSystem = fileSystem;
+			this.root = fileSystem.getRootDirectories().iterator().next();
+		}
+
+	}
+
+	private InputBundle() {
+	}
+
+	/**
+	 * @return {@code true}, pokud cesta vede na soubor s příponou {@code .zip}
+	 */
+	public static boolean isBundle(Path path) {
+		return path.getFileName() != null
+				&& path.getFileName().toString().toLowerCase().endsWith(EXTENSION) && Files.isRegularFile(path);
+	}
+
+	/**
+	 * Vypůjčí si vstupy, každé volání musí mít svůj {@link #release(Path)}
+	 *
+	 * @param dataDir
+	 *            adresář se vstupy, nebo archiv {@code .zip}
+	 * @return kořen archivu, nebo {@code dataDir} beze změny, pokud nejde o archiv
+	 */
+	public static Path acquire(Path dataDir) throws IOException {
+		if (!isBundle(dataDir))
+			return dataDir;
+
+		Path key = dataDir.toAbsolutePath().normalize();
+		String stat = stat(key);
+		synchronized (InputBundle.class) {
+			Opened opened = OPENED.get(key);
+			if (opened == null || !opened.stat.equals(stat)) {
+				Opened fresh = new Opened(key, stat, FileSystems.newFileSystem(key, (ClassLoader) null));
+				OPENED.put(key, fresh);
+				if (opened != null)
+					retire(opened);
+				opened = fresh;
+			}
+			opened.users++;
+			return opened.root;
+		}
+	}
+
+	/**
+	 * Vrátí vstupy vypůjčené přes {@link #acquire(Path)}. Předchozí verze archivu se zavře, když ji už nikdo nečte.
+	 *
+	 * @param root
+	 *            kořen, který vrátil {@link #acquire(Path)}
+	 */
+	public static void release(Path root) {
+		FileSystem fileSystem = root.getFileSystem();
+		synchronized (InputBundle.class) {
+			for (Opened opened : OPENED.values())
+				if (opened.fileSystem == fileSystem) {
+					opened.users--;
+					return;
+				}
+			for (Opened opened : RETIRED)
+				if (opened.fileSystem == fileSystem) {
+					if (--opened.users == 0)
+						retire(opened);
+					return;
+				}
+		}
+	}
+
+	/**
+	 * Klíč souboru pro cache v paměti procesu. Cesta uvnitř archivu se jako klíč nehodí, rovná se jen cestě ze stejné
+	 * instance {@link FileSystem}; každé znovuotevření archivu by tak přidalo nové klíče a ty by v paměti držely už
+	 * zavřený archiv. Klíčem je proto cesta k archivu spojená s cestou uvnitř něj.
+	 */
+	static String cacheKey(Path file) {
+		Path absolute = file.toAbsolutePath().normalize();
+		FileSystem fileSystem = absolute.getFileSystem();
+		if (fileSystem == FileSystems.getDefault())
+			return absolute.toString();
+		synchronized (InputBundle.class) {
+			for (Opened opened : OPENED.values())
+				if (opened.fileSystem == fileSystem)
+					return opened.bundle + "!" + absolute;
+			for (Opened opened : RETIRED)
+				if (opened.fileSystem == fileSystem)
+					return opened.bundle + "!" + absolute;
+		}
+		// archiv otevřený mimo InputBundle, zip FileSystem se vypisuje jako cesta k archivu
+		return fileSystem + "!" + absolute;
+	}
+
+	private static void retire(Opened opened) {
+		if (opened.users > 0) {
+			if (!RETIRED.contains(opened))
+				RETIRED.add(opened);
+			return;
+		}
+		RETIRED.remove(opened);
+		try {
+			opened.fileSystem.close();
+		} catch (IOException e) {
+			// čtení je hotové, neuzavřený archiv jen drží deskriptor
+			System.err.println("Předchozí verzi archivu se nepodařilo zavřít: " + e.getMessage());
+		}
+	}
+
+	private static String stat(Path file) throws IOException {
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		return attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Zavře všechny otevřené archivy, včetně předchozích verzí, i když je ještě někdo čte
+	 */
+	public static synchronized void closeAll() throws IOException {
+		List<FileSystem> fileSystems = new ArrayList<>();
+		for (Opened opened : RETIRED)
+			fileSystems.add(opened.fileSystem);
+		for (Opened opened : OPENED.values())
+			fileSystems.add(opened.fileSystem);
+		OPENED.clear();
+		RETIRED.clear();
+		IOException failure = null;
+		for (FileSystem fileSystem : fileSystems) {
+			try {
+				fileSystem.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Počet otevřených archivů včetně předchozích verzí, které ještě někdo čte
+	 */
+	static synchronized int getOpenCount() {
+		return OPENED.size() + RETIRED.size();
+	}
+
+}
@@ -0,0 +1,47 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.Comparator;
+
+/**
+ * Jedna chyba vstupních dat nalezená {@link InputValidator}em
+ *
+ * @author gattaka
+ *
+ */
+public final class InputProblem {
+
+	static final Comparator<InputProblem> ORDER = Comparator.comparing(InputProblem::getFile)
+			.thenComparingInt(InputProblem::getLine);
+
+	private final String file;
+	private final int line;
+	private final String message;
+
+	/**
+	 * @param line
+	 *            číslo řádku od 1, nebo 0, pokud se chyba týká celého souboru
+	 */
+	public InputProblem(String file, int line, String message) {
+		this.file = file;
+		this.line = line;
+		this.message = message;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return line > 0 ? file + ":" + line + ": " + message : file + ": " + message;
+	}
+
+}
@@ -0,0 +1,207 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Kontrola vstupů před sestavením. Na rozdíl od {@link CalendarBuilder#readInputs()}, který skončí na první chybě,
+ * projde všechny soubory i fotky (souběžně) a vrátí úplný seznam problémů se souborem a číslem řádku. Fotky se
+ * nedekódují, čte se jen jejich hlavička přes {@link ImageMetadataIndex}.
+ *
+ * @author gattaka
+ *
+ */
+public class InputValidator {
+
+	static final String DATA_FILE = "data.txt";
+
+	private static final int PHOTO_LINES = 14;
+	private static final int MONTHS = 12;
+
+	private final Path dataDir;
+	private Path inputDir;
+	private final Integer yearOverride;
+
+	/**
+	 * @param dataDir
+	 *            adresář se vstupy, nebo archiv {@link InputBundle}
+	 * @param yearOverride
+	 *            rok zadaný mimo {@code data.txt}, nebo {@code null}
+	 */
+	public InputValidator(Path dataDir, Integer yearOverride) {
+		this.dataDir = dataDir;
+		this.yearOverride = yearOverride;
+	}
+
+	/**
+	 * @return všechny nalezené problémy seřazené podle souboru a řádku, prázdný seznam pro platné vstupy
+	 */
+	public List<InputProblem> validate() {
+		List<InputProblem> problems = new ArrayList<>();
+		try {
+			inputDir = InputBundle.acquire(dataDir);
+		} catch (IOException e) {
+			problems.add(new InputProblem(dataDir.toString(), 0,
+					"Archiv se vstupy nelze otevřít: " + e.getMessage()));
+			return problems;
+		}
+		try {
+			return validateFiles(problems);
+		} finally {
+			InputBundle.release(inputDir);
+		}
+	}
+
+	private List<InputProblem> validateFiles(List<InputProblem> problems) {
+		List<String> files = readLines(DATA_FILE, problems);
+		if (files == null)
+			return problems;
+		if (files.size() < 6) {
+			problems.add(new InputProblem(DATA_FILE, 0, "Vyžaduji 6 řádků: rok, soubor s popisky, se svátky, "
+					+ "s narozeninami, s fotkami a s akcemi; soubor jich má " + files.size()));
+			return problems;
+		}
+		if (yearOverride == null) {
+			try {
+				Integer.parseInt(files.get(0));
+			} catch (NumberFormatException e) {
+				problems.add(new InputProblem(DATA_FILE, 1,
+						"Rok má špatný formát: '" + files.get(0) + "', musí být celé číslo"));
+			}
+		}
+
+		List<Supplier<List<InputProblem>>> checks = Arrays.asList(() -> checkLabels(files.get(1)),
+				() -> checkNameDays(files.get(2)), () -> checkBirthdays(files.get(3)),
+				() -> checkPhotos(files.get(4)), () -> checkAkce(files.get(5)));
+		problems.addAll(checks.parallelStream().flatMap(check -> check.get().stream()).collect(Collectors.toList()));
+		problems.sort(InputProblem.ORDER);
+		return problems;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             se všemi problémy, pokud nějaké jsou
+	 */
+	public void check() {
+		List<InputProblem> problems = validate();
+		if (problems.isEmpty())
+			return;
+		StringBuilder sb = new StringBuilder("Vstupní data obsahují chyby (" + problems.size() + "):");
+		for (InputProblem problem : problems)
+			sb.append("\n\t").append(problem);
+		throw new IllegalStateException(sb.toString());
+	}
+
+	private List<InputProblem> checkLabels(String fileName) {
+		List<InputProblem> problems = new ArrayList<>();
+		List<String> lines = readLines(fileName, problems);
+		if (lines != null && lines.size() < MONTHS)
+			problems.add(new InputProblem(fileName, 0,
+					"Očekávám popisky pro všech " + MONTHS + " měsíců, soubor má jen " + lines.size() + " řádků"));
+		return problems;
+	}
+
+	private List<InputProblem> checkNameDays(String fileName) {
+		List<InputProblem> problems = new ArrayList<>();
+		List<String> lines = readLines(fileName, problems);
+		if (lines == null)
+			return problems;
+		for (int i = 0; i < lines.size(); i++) {
+			String svatek = CalendarIndex.stripTrailingTabs(lines.get(i));
+			if (NameDayTable.parseDayIndex(svatek) < 0)
+				problems.add(new InputProblem(fileName, i + 1,
+						"Řádek svátku '" + svatek + "' má nevyhovující formát. " + NameDayTable.SVATEK_FORMAT));
+		}
+		return problems;
+	}
+
+	private List<InputProblem> checkBirthdays(String fileName) {
+		List<InputProblem> problems = new ArrayList<>();
+		List<String> lines = readLines(fileName, problems);
+		if (lines == null)
+			return problems;
+		for (int i = 0; i < lines.size(); i++) {
+			String birthday = CalendarIndex.stripTrailingTabs(lines.get(i));
+			if (CalendarIndex.parseBirthdayDate(birthday) == null)
+				problems.add(new InputProblem(fileName, i + 1, "Řádek narozenin '" + birthday
+						+ "' má nevyhovující formát. " + CalendarIndex.BIRTHDAY_FORMAT));
+		}
+		return problems;
+	}
+
+	private List<InputProblem> checkAkce(String fileName) {
+		List<InputProblem> problems = new ArrayList<>();
+		List<String> lines = readLines(fileName, problems);
+		if (lines != null && lines.size() != MONTHS)
+			problems.add(new InputProblem(fileName, 0, "Očekávám " + MONTHS
+					+ " řádků (akce měsíců oddělené tabulátorem), soubor má " + lines.size()));
+		return problems;
+	}
+
+	private List<InputProblem> checkPhotos(String fileName) {
+		List<InputProblem> problems = new ArrayList<>();
+		List<String> lines = readLines(fileName, problems);
+		if (lines == null)
+			return problems;
+		if (lines.size() != PHOTO_LINES)
+			problems.add(new InputProblem(fileName, 0, "Očekávám " + PHOTO_LINES
+					+ " řádků (titulní list, 12 měsíců, poslední list), soubor má " + lines.size()));
+
+		problems.addAll(IntStream.range(0, lines.size()).parallel()
+				.mapToObj(i -> checkPhoto(fileName, i + 1, lines.get(i))).filter(problem -> problem != null)
+				.collect(Collectors.toList()));
+		return problems;
+	}
+
+	/**
+	 * @return problém fotky, nebo {@code null}
+	 */
+	private InputProblem checkPhoto(String fileName, int lineNo, String line) {
+		String[] fileInfo = line.split("\t");
+		if (fileInfo.length != 2)
+			return new InputProblem(fileName, lineNo, "Řádek fotky '" + line
+					+ "' má nevyhovující formát. Vyžaduji formát: -soubor.přípona-tabulátor-název akce-");
+
+		Path photoPath = inputDir.resolve(fileInfo[0]);
+		if (!Files.isRegularFile(photoPath))
+			return new InputProblem(fileName, lineNo, "Fotka '" + fileInfo[0] + "' neexistuje");
+		if (!Files.isReadable(photoPath))
+			return new InputProblem(fileName, lineNo, "Fotku '" + fileInfo[0] + "' nelze číst");
+
+		try {
+			if (ImageMetadataIndex.getShared().get(photoPath) == null)
+				return new InputProblem(fileName, lineNo,
+						"Fotka '" + fileInfo[0] + "' není JPEG ani PNG, nebo má poškozenou hlavičku");
+		} catch (IOException e) {
+			return new InputProblem(fileName, lineNo,
+					"Hlavičku fotky '" + fileInfo[0] + "' nelze přečíst: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * @return řádky souboru, nebo {@code null}, pokud ho nelze přečíst (problém se přidá do seznamu)
+	 */
+	private List<String> readLines(String fileName, List<InputProblem> problems) {
+		try {
+			return Files.readAllLines(inputDir.resolve(fileName));
+		} catch (NoSuchFileException e) {
+			problems.add(new InputProblem(fileName, 0, "Soubor neexistuje"));
+		} catch (CharacterCodingException e) {
+			problems.add(new InputProblem(fileName, 0, "Soubor není v kódování UTF-8"));
+		} catch (IOException e) {
+			problems.add(new InputProblem(fileName, 0, "Soubor nelze přečíst: " + e.getMessage()));
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,131 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache bajtových polí s velikostí omezenou součtem bajtů. Při překročení se vyhazují nejdéle nepoužité položky
+ * (LRU). Bezpečná pro souběžné použití.
+ * <p>
+ * Vedle celých polí umí držet i {@link ByteBuffer} nad částí pole, třeba nad bufferem rozepsaného výstupu, bez
+ * kopírování do pole přesné délky. Do velikosti cache se pak počítá celé pole, ne jen platná data.
+ *
+ * @author gattaka
+ *
+ */
+public class LruByteCache {
+
+	private final String name;
+	private final long maxBytes;
+	private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long currentBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param name
+	 *            název do výpisu statistik
+	 */
+	public LruByteCache(String name, long maxBytes) {
+		if (maxBytes < 0)
+			throw new IllegalArgumentException("Velikost cache nesmí být záporná, je: " + maxBytes);
+		this.name = name;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return uložené bajty, nebo {@code null}, pokud v cache nejsou
+	 */
+	public byte[] get(String key) {
+		ByteBuffer data = getBuffer(key);
+		if (data == null)
+			return null;
+		// položky z put(String, byte[]) obalují celé pole
+		if (data.arrayOffset() == 0 && data.position() == 0 && data.remaining() == data.array().length)
+			return data.array();
+		return Arrays.copyOfRange(data.array(), data.arrayOffset() + data.position(),
+				data.arrayOffset() + data.limit());
+	}
+
+	/**
+	 * @return uložená data (vlastní pozice a limit pro každého volajícího), nebo {@code null}, pokud v cache nejsou;
+	 *         obsah se nesmí měnit
+	 */
+	public synchronized ByteBuffer getBuffer(String key) {
+		ByteBuffer data = entries.get(key);
+		if (data == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return data.duplicate();
+	}
+
+	public void put(String key, byte[] data) {
+		put(key, ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * @param data
+	 *            buffer nad polem na haldě, které už nikdo nezmění
+	 */
+	public synchronized void put(String key, ByteBuffer data) {
+		// položka větší než celá cache by jen vyhodila všechno ostatní
+		if (data.capacity() > maxBytes)
+			return;
+		ByteBuffer previous = entries.put(key, data.duplicate());
+		if (previous != null)
+			currentBytes -= previous.capacity();
+		currentBytes += data.capacity();
+
+		Iterator<Map.Entry<String, ByteBuffer>> it = entries.entrySet().iterator();
+		while (currentBytes > maxBytes && it.hasNext()) {
+			Map.Entry<String, ByteBuffer> eldest = it.next();
+			currentBytes -= eldest.getValue().capacity();
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		currentBytes = 0;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized long getCurrentBytes() {
+		return currentBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getEntryCount() + " položek, " + getCurrentBytes() / 1024 + " / " + maxBytes / 1024
+				+ " kB, zásahů: " + getHits() + ", minutí: " + getMisses() + ", vyhozeno: " + getEvictions();
+	}
+
+}
@@ -1,5 +1,11 @@
 package cz.gattserver.tulaci.calendar;
 
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import cz.gattserver.tulaci.calendar.BatchRunner.BatchResult;
+
 /**
  * https://www.programcreek.com/java-api-examples/?class=org.apache.poi.ss.usermodel.CellStyle&method=setFillForegroundColor
  * http://www.dominotricks.com/?p=115 http://viralpatel.net/blogs/java-read-write-excel-file-apache-poi/
@@ -12,7 +18,20 @@ public class Main {
 
 	public static void main(String[] args) throws Exception {
 
+		List<String> argList = Arrays.asList(args);
+		int batchIndex = argList.indexOf("--batch");
+		if (batchIndex >= 0) {
+			if (batchIndex + 1 >= args.length)
+				throw new IllegalArgumentException("Za --batch chybí soubor se seznamem úloh");
+			runBatch(args[batchIndex + 1]);
+			return;
+		}
+
 		CalendarBuilder calendarBuilder = new CalendarBuilder();
+		if (argList.contains("--xlsx"))
+			calendarBuilder.setOutputFormat(OutputFormat.XLSX);
+		if (argList.contains("--incremental"))
+			calendarBuilder.setIncremental(true);
 		try {
 			calendarBuilder.build();
 			GFXLogger.showSuccess("Generování kalendáře dopadlo úspěšně");
@@ -23,4 +42,18 @@ public class Main {
 
 	}
 
+	private static void runBatch(String jobsFile) throws Exception {
+		try {
+			List<BatchResult> results = new BatchRunner().run(BatchJob.readJobs(Paths.get(jobsFile)));
+			long failed = results.stream().filter(r -> !r.isSuccess()).count();
+			if (failed == 0)
+				GFXLogger.showSuccess("Generování " + results.size() + " kalendářů dopadlo úspěšně");
+			else
+				GFXLogger.showError("Generování selhalo u " + failed + " z " + results.size() + " kalendářů");
+		} catch (Exception e) {
+			GFXLogger.showError(e.getMessage());
+			throw e;
+		}
+	}
+
 }
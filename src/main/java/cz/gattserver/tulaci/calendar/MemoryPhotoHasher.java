@@ -0,0 +1,39 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link PhotoHasher} s otisky jen v paměti procesu, pro dlouho běžící režimy, které nepotřebují
+ * {@link IncrementalCache} na disku. Fotky z archivu se pamatují podle {@link InputBundle#cacheKey(Path)}, takže
+ * znovuotevřený archiv nepřidává nové položky.
+ *
+ * @author gattaka
+ *
+ */
+public class MemoryPhotoHasher implements PhotoHasher {
+
+	private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<>();
+
+	@Override
+	public String photoHash(Path photoPath) throws IOException {
+		String key = InputBundle.cacheKey(photoPath);
+		BasicFileAttributes attrs = Files.readAttributes(photoPath, BasicFileAttributes.class);
+		String stat = attrs.size() + "|" + attrs.lastModifiedTime().toMillis() + "|";
+		String known = hashes.get(key);
+		if (known != null && known.startsWith(stat))
+			return known.substring(stat.length());
+		String hash = ContentHash.sha256(Files.readAllBytes(photoPath));
+		hashes.put(key, stat + hash);
+		return hash;
+	}
+
+	public int size() {
+		return hashes.size();
+	}
+
+}
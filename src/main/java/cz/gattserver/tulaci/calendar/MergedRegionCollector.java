@@ -0,0 +1,71 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Sbírá sloučené oblasti jednoho listu a překryvy kontroluje najednou. POI při každém
+ * {@code Sheet#addMergedRegion} prochází všechny dosavadní oblasti listu, takže cena roste kvadraticky; tady se
+ * oblasti seřadí podle prvního řádku a zametají se přes řádky s indexem právě otevřených oblastí podle sloupců,
+ * celkem O(n log n). Zkontrolované oblasti pak může {@link SheetSerializer} vložit přes
+ * {@code Sheet#addMergedRegionUnsafe}.
+ *
+ * @author gattaka
+ *
+ */
+public class MergedRegionCollector {
+
+	private final List<Region> regions = new ArrayList<>();
+
+	public void add(Region region) {
+		regions.add(region);
+	}
+
+	public int size() {
+		return regions.size();
+	}
+
+	/**
+	 * Ověří, že žádné dvě oblasti nesdílí buňku a že každá má aspoň dvě buňky
+	 *
+	 * @param sheetName
+	 *            název listu do chybové hlášky
+	 * @return oblasti v pořadí přidání
+	 * @throws IllegalStateException
+	 *             s názvy buněk první nalezené kolize
+	 */
+	public List<Region> validate(String sheetName) {
+		List<Region> byFirstRow = new ArrayList<>(regions);
+		byFirstRow.sort(Comparator.comparingInt(Region::getFirstRow));
+
+		// otevřené oblasti obsahují všechny aktuální řádek, bez překryvu jsou tedy jejich sloupce disjunktní
+		TreeMap<Integer, Region> openByColumn = new TreeMap<>();
+		PriorityQueue<Region> openByLastRow = new PriorityQueue<>(Comparator.comparingInt(Region::getLastRow));
+
+		for (Region region : byFirstRow) {
+			if (region.getFirstRow() == region.getLastRow() && region.getFirstColumn() == region.getLastColumn())
+				throw new IllegalStateException("List '" + sheetName + "': sloučená oblast " + region
+						+ " musí mít aspoň dvě buňky");
+
+			while (!openByLastRow.isEmpty() && openByLastRow.peek().getLastRow() < region.getFirstRow())
+				openByColumn.remove(openByLastRow.poll().getFirstColumn());
+
+			Map.Entry<Integer, Region> left = openByColumn.floorEntry(region.getLastColumn());
+			if (left != null && left.getValue().getLastColumn() >= region.getFirstColumn())
+				throw new IllegalStateException("List '" + sheetName + "': sloučené oblasti " + left.getValue()
+						+ " a " + region + " se překrývají");
+
+			openByColumn.put(region.getFirstColumn(), region);
+			openByLastRow.add(region);
+		}
+		return Collections.unmodifiableList(new ArrayList<>(regions));
+	}
+
+}
@@ -0,0 +1,86 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Neměnná tabulka svátků v rozložení přestupného roku (viz {@link CalendarIndex#dayIndex(int, int)}). Svátky
+ * nezávisí na roce ani na oddílu, tabulka se proto dá sdílet mezi sestaveními, viz
+ * {@link ReferenceDataRegistry#getNameDays(java.nio.file.Path)}.
+ *
+ * @author gattaka
+ *
+ */
+public final class NameDayTable {
+
+	public static final NameDayTable EMPTY = new NameDayTable(new String[CalendarIndex.DAYS], 0);
+
+	private static final Pattern SVATEK_DATE = Pattern.compile("([1-3]?[0-9])\\.([1]?[0-9])\\.");
+
+	private final String[] names;
+	private final int lineCount;
+
+	private NameDayTable(String[] names, int lineCount) {
+		this.names = names;
+		this.lineCount = lineCount;
+	}
+
+	/**
+	 * Načte řádky ve formátu {@code den.měsíc. -tabulátor- jméno}
+	 */
+	public static NameDayTable parse(List<String> lines) {
+		String[] names = new String[CalendarIndex.DAYS];
+		for (String line : lines) {
+			String svatek = CalendarIndex.stripTrailingTabs(line);
+			int dayIndex = parseDayIndex(svatek);
+			if (dayIndex < 0)
+				writeErrorSvatky(svatek);
+			names[dayIndex] = svatek.substring(svatek.indexOf('\t') + 1);
+		}
+		return new NameDayTable(names, lines.size());
+	}
+
+	/**
+	 * @param svatek
+	 *            řádek bez koncových tabulátorů
+	 * @return index dne v roce, nebo -1, pokud řádek nemá formát {@code den.měsíc. -tabulátor- jméno}
+	 */
+	static int parseDayIndex(String svatek) {
+		int tab = svatek.indexOf('\t');
+		if (tab < 0 || svatek.indexOf('\t', tab + 1) >= 0)
+			return -1;
+		Matcher matcher = SVATEK_DATE.matcher(svatek);
+		matcher.region(0, tab);
+		if (!matcher.matches())
+			return -1;
+		int day = Integer.parseInt(matcher.group(1));
+		int month = Integer.parseInt(matcher.group(2));
+		// svátky jsou bez roku, 29. 2. je platný
+		if (!CalendarIndex.isValidDate(2000, month, day))
+			return -1;
+		return CalendarIndex.dayIndex(month, day);
+	}
+
+	/**
+	 * @return jméno, které má daný den svátek, nebo {@code null}
+	 */
+	public String get(int month, int day) {
+		return names[CalendarIndex.dayIndex(month, day)];
+	}
+
+	/**
+	 * @return počet řádků zdrojového souboru
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	static final String SVATEK_FORMAT = "Vyžaduji formát: -datum-tabulátor-text-, například: 17.1.\tDrahoslav";
+
+	private static void writeErrorSvatky(String errorLine) {
+		throw new IllegalStateException("Řádek svátku '" + errorLine + "' má nevyhovující formát\n"
+				+ "\tVyžaduji formát: -datum-tabulátor-text-\n" + "\tNapříklad: 17.1.\tDrahoslav");
+	}
+
+}
@@ -0,0 +1,78 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.nio.file.Path;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Výstupní formát kalendáře. Všechny listy se staví přes společné rozhraní {@link Workbook}, takže builder neví,
+ * který backend právě plní.
+ *
+ * @author gattaka
+ *
+ */
+public enum OutputFormat {
+
+	/**
+	 * Klasický binární {@code .xls}, celý sešit je až do zápisu na haldě.
+	 */
+	XLS(".xls"),
+
+	/**
+	 * {@code .xlsx} přes streamovací {@link SXSSFWorkbook} -- v paměti drží jen posledních
+	 * {@link CalendarBuilder#getRowWindowSize()} řádků, starší odlévá do dočasných souborů.
+	 */
+	XLSX(".xlsx"),
+
+	/**
+	 * {@code .xlsx} zapsaný přímo z modelů listů přes {@link DirectXlsxWriter}, bez POI; části sešitu se komprimují
+	 * paralelně.
+	 */
+	XLSX_DIRECT(".xlsx");
+
+	/**
+	 * Builder se vrací k již vytvořeným řádkům listu (narozeniny, akce), okno tak musí pokrýt celý list.
+	 */
+	public static final int MIN_ROW_WINDOW_SIZE = 64;
+
+	private final String extension;
+
+	private OutputFormat(String extension) {
+		this.extension = extension;
+	}
+
+	public String getExtension() {
+		return extension;
+	}
+
+	/**
+	 * Formát podle přípony souboru, {@link #XLS} pokud přípona nesedí na žádný
+	 */
+	public static OutputFormat forFile(Path file) {
+		return file.getFileName().toString().toLowerCase().endsWith(XLSX.extension) ? XLSX : XLS;
+	}
+
+	Workbook createWorkbook(int rowWindowSize) {
+		switch (this) {
+		case XLSX_DIRECT:
+			throw new IllegalStateException("Formát " + this + " se nezapisuje přes POI");
+		case XLSX:
+			SXSSFWorkbook workbook = new SXSSFWorkbook(Math.max(rowWindowSize, MIN_ROW_WINDOW_SIZE));
+			workbook.setCompressTempFiles(true);
+			return workbook;
+		default:
+			return new HSSFWorkbook();
+		}
+	}
+
+	/**
+	 * Uklidí dočasné soubory streamovacího backendu, u {@code .xls} nedělá nic.
+	 */
+	static void dispose(Workbook workbook) {
+		if (workbook instanceof SXSSFWorkbook)
+			((SXSSFWorkbook) workbook).dispose();
+	}
+
+}
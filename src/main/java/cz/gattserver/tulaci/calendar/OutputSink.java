@@ -0,0 +1,56 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Cíl, do kterého {@link CalendarBuilder} zapíše hotový sešit. Builder si proud otevře přes {@link #open()}, zapíše
+ * do něj celý sešit a potom zavolá {@link #commit()}; pokud zápis selže, zavolá místo toho {@link #abort()}. Proud
+ * vrácený z {@link #open()} builder sám nezavírá, o to se stará sink.
+ * <p>
+ * {@link #toString()} popisuje cíl pro výpisy a události JFR.
+ *
+ * @author gattaka
+ *
+ */
+public interface OutputSink {
+
+	/**
+	 * Otevře proud pro zápis sešitu, volá se nejvýš jednou
+	 */
+	OutputStream open() throws IOException;
+
+	/**
+	 * Sešit je celý zapsaný, sink ho dopíše do cíle
+	 */
+	void commit() throws IOException;
+
+	/**
+	 * Zápis selhal, sink uklidí rozepsaný výstup. Chyby při úklidu už nehlásí.
+	 */
+	void abort();
+
+	/**
+	 * Zápis do proudu volajícího, který se nezavírá
+	 */
+	static OutputSink of(OutputStream outputStream) {
+		return new StreamOutputSink(outputStream);
+	}
+
+	/**
+	 * Zápis do kanálu volajícího (odpověď HTTP, socket, ...), který se nezavírá
+	 */
+	static OutputSink of(WritableByteChannel channel) {
+		return new ChannelOutputSink(channel);
+	}
+
+	/**
+	 * Zápis do souboru přes dočasný soubor vedle něj; cíl se nahradí až hotovým sešitem
+	 */
+	static OutputSink file(Path target) {
+		return new AtomicFileSink(target);
+	}
+
+}
@@ -0,0 +1,316 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.apache.poi.hssf.util.HSSFColor.HSSFColorPredefined;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+import cz.gattserver.tulaci.calendar.SheetLayout.CellModel;
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Vykreslí {@link SheetLayout} přímo do obrázku přes Java2D, bez sešitu a tabulkového procesoru. Geometrie odpovídá
+ * listu: šířky sloupců z modelu, výchozí výška řádků (řádek s větším písmem se zvětší jako při automatické výšce),
+ * text zarovnaný v buňce nebo ve sloučené oblasti a fotka podle kotvy. Kreslí se v bodech a na pixely se převádí
+ * až měřítkem podle DPI, takže náhled i tisková stránka mají stejné rozložení.
+ * <p>
+ * Instance je neměnná a vláknově bezpečná, stránky se dají kreslit paralelně. Nepotřebuje grafické prostředí,
+ * funguje i s {@code java.awt.headless=true}.
+ *
+ * @author gattaka
+ *
+ */
+public class PageRenderer {
+
+	public static final int PRINT_DPI = 300;
+	public static final int PREVIEW_DPI = 48;
+
+	/**
+	 * Okraj kolem obsahu listu v bodech
+	 */
+	public static final float DEFAULT_MARGIN_POINTS = 18f;
+
+	private static final float POINTS_PER_INCH = 72f;
+	private static final double METERS_PER_INCH = 0.0254;
+	private static final String PNG_METADATA_FORMAT = "javax_imageio_png_1.0";
+
+	/**
+	 * Výška řádku vůči velikosti písma při automatické výšce
+	 */
+	private static final float LINE_SPACING = 1.3f;
+
+	private static final Map<Short, Color> PALETTE = new HashMap<>();
+
+	static {
+		for (HSSFColorPredefined color : HSSFColorPredefined.values()) {
+			short[] rgb = color.getTriplet();
+			PALETTE.putIfAbsent(color.getIndex(), new Color(rgb[0], rgb[1], rgb[2]));
+		}
+	}
+
+	private final int dpi;
+	private final float marginPoints;
+
+	public PageRenderer(int dpi) {
+		this(dpi, DEFAULT_MARGIN_POINTS);
+	}
+
+	public PageRenderer(int dpi, float marginPoints) {
+		if (dpi <= 0)
+			throw new IllegalArgumentException("DPI musí být kladné, je: " + dpi);
+		if (marginPoints < 0)
+			throw new IllegalArgumentException("Okraj nesmí být záporný, je: " + marginPoints);
+		this.dpi = dpi;
+		this.marginPoints = marginPoints;
+	}
+
+	public int getDpi() {
+		return dpi;
+	}
+
+	/**
+	 * Rozměry listu v bodech -- pozice sloupců a řádků od levého horního rohu obsahu
+	 */
+	private static final class Grid {
+
+		final float[] columnX;
+		final float[] rowY;
+		/**
+		 * Sloučené oblasti podle levé horní buňky, viz {@link #key(int, int)}
+		 */
+		final Map<Integer, Region> regions = new HashMap<>();
+
+		Grid(SheetLayout layout) {
+			int columns = 0;
+			int rows = 0;
+			for (CellModel cell : layout.getCells()) {
+				columns = Math.max(columns, cell.getColumn() + 1);
+				rows = Math.max(rows, cell.getRow() + 1);
+			}
+			for (Region region : layout.getMergedRegions()) {
+				regions.put(key(region.getFirstRow(), region.getFirstColumn()), region);
+				columns = Math.max(columns, region.getLastColumn() + 1);
+				rows = Math.max(rows, region.getLastRow() + 1);
+			}
+			PhotoAnchor anchor = layout.getPhotoAnchor();
+			if (anchor != null) {
+				columns = Math.max(columns, anchor.getCol2() + 1);
+				rows = Math.max(rows, anchor.getRow2() + 1);
+			}
+
+			float[] rowHeights = new float[rows];
+			Arrays.fill(rowHeights, PhotoSlot.DEFAULT_ROW_HEIGHT_POINTS);
+			// automatická výška jen pro buňky a oblasti v jednom řádku, víc řádků si výšku rozdělí
+			for (CellModel cell : layout.getCells()) {
+				Region region = getRegion(cell);
+				if (cell.getValue() != null && (region == null || region.getFirstRow() == region.getLastRow()))
+					rowHeights[cell.getRow()] = Math.max(rowHeights[cell.getRow()],
+							cell.getStyle().getFontHeightInPoints() * LINE_SPACING);
+			}
+
+			columnX = new float[columns + 1];
+			for (int c = 0; c < columns; c++) {
+				int width = layout.getColumnWidth(c);
+				columnX[c + 1] = columnX[c]
+						+ PhotoSlot.columnWidthPoints(width > 0 ? width : PhotoSlot.DEFAULT_COLUMN_WIDTH);
+			}
+			rowY = new float[rows + 1];
+			for (int r = 0; r < rows; r++)
+				rowY[r + 1] = rowY[r] + rowHeights[r];
+		}
+
+		private static int key(int row, int column) {
+			// XLS má nejvýš 256 sloupců
+			return row << 8 | column;
+		}
+
+		/**
+		 * @return sloučená oblast začínající buňkou, nebo {@code null}
+		 */
+		Region getRegion(CellModel cell) {
+			return regions.get(key(cell.getRow(), cell.getColumn()));
+		}
+
+		float getWidth() {
+			return columnX[columnX.length - 1];
+		}
+
+		float getHeight() {
+			return rowY[rowY.length - 1];
+		}
+
+	}
+
+	/**
+	 * Vykreslí list do obrázku
+	 *
+	 * @param photo
+	 *            fotka listu, použije se jen pokud model určuje její umístění
+	 */
+	public BufferedImage render(SheetLayout layout, Photo photo) throws IOException {
+		Grid grid = new Grid(layout);
+		float scale = dpi / POINTS_PER_INCH;
+		int width = Math.round((grid.getWidth() + 2 * marginPoints) * scale);
+		int height = Math.round((grid.getHeight() + 2 * marginPoints) * scale);
+
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, width, height);
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			// dál se kreslí v bodech
+			g.scale(scale, scale);
+			g.translate(marginPoints, marginPoints);
+
+			if (layout.getPhotoAnchor() != null && photo != null)
+				drawPhoto(g, grid, layout.getPhotoAnchor(), photo);
+			for (CellModel cell : layout.getCells())
+				if (cell.getValue() != null)
+					drawCell(g, grid, cell);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	private static void drawPhoto(Graphics2D g, Grid grid, PhotoAnchor anchor, Photo photo) throws IOException {
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(photo.getData()));
+		if (image == null)
+			throw new IOException("Fotku " + photo.getFileName() + " nelze dekódovat");
+		double x1 = x(grid, anchor.getCol1(), anchor.getCol1Offset());
+		double y1 = y(grid, anchor.getRow1(), anchor.getRow1Offset());
+		double x2 = x(grid, anchor.getCol2(), anchor.getCol2Offset());
+		double y2 = y(grid, anchor.getRow2(), anchor.getRow2Offset());
+		Graphics2D photoGraphics = (Graphics2D) g.create();
+		try {
+			photoGraphics.translate(x1, y1);
+			photoGraphics.scale((x2 - x1) / image.getWidth(), (y2 - y1) / image.getHeight());
+			photoGraphics.drawImage(image, 0, 0, null);
+		} finally {
+			photoGraphics.dispose();
+		}
+	}
+
+	private static double x(Grid grid, int col, double offset) {
+		return grid.columnX[col] + offset * (grid.columnX[col + 1] - grid.columnX[col]);
+	}
+
+	private static double y(Grid grid, int row, double offset) {
+		return grid.rowY[row] + offset * (grid.rowY[row + 1] - grid.rowY[row]);
+	}
+
+	private static void drawCell(Graphics2D g, Grid grid, CellModel cell) {
+		StyleKey style = cell.getStyle();
+		Region region = grid.getRegion(cell);
+		float left = grid.columnX[cell.getColumn()];
+		float top = grid.rowY[cell.getRow()];
+		float right = grid.columnX[region == null ? cell.getColumn() + 1 : region.getLastColumn() + 1];
+		float bottom = grid.rowY[region == null ? cell.getRow() + 1 : region.getLastRow() + 1];
+
+		Object value = cell.getValue();
+		String text = value instanceof Number ? formatNumber((Number) value) : (String) value;
+		Font font = new Font(style.getFontName(), style.isBold() ? Font.BOLD : Font.PLAIN, 1)
+				.deriveFont((float) style.getFontHeightInPoints());
+		g.setFont(font);
+		g.setColor(color(style.getColor()));
+		FontMetrics metrics = g.getFontMetrics();
+		float textWidth = (float) metrics.getStringBounds(text, g).getWidth();
+
+		float x;
+		HorizontalAlignment alignment = style.getAlignment();
+		if (alignment == HorizontalAlignment.GENERAL)
+			// tabulka zarovnává čísla doprava a text doleva
+			alignment = value instanceof Number ? HorizontalAlignment.RIGHT : HorizontalAlignment.LEFT;
+		switch (alignment) {
+		case CENTER:
+			x = (left + right - textWidth) / 2;
+			break;
+		case RIGHT:
+			x = right - textWidth;
+			break;
+		default:
+			x = left;
+		}
+
+		float y;
+		VerticalAlignment verticalAlignment = style.getVerticalAlignment();
+		if (verticalAlignment == VerticalAlignment.TOP)
+			y = top + metrics.getAscent();
+		else if (verticalAlignment == VerticalAlignment.CENTER)
+			y = (top + bottom + metrics.getAscent() - metrics.getDescent()) / 2;
+		else
+			y = bottom - metrics.getDescent();
+		g.drawString(text, x, y);
+	}
+
+	private static String formatNumber(Number value) {
+		double d = value.doubleValue();
+		return d == Math.rint(d) ? Long.toString((long) d) : Double.toString(d);
+	}
+
+	private static Color color(short index) {
+		// Font.COLOR_NORMAL a neznámé indexy jsou černé
+		return PALETTE.getOrDefault(index, Color.BLACK);
+	}
+
+	/**
+	 * Zapíše obrázek jako PNG s rozlišením v bloku pHYs, aby tiskárna znala fyzickou velikost stránky
+	 */
+	public void writePng(BufferedImage image, OutputStream outputStream) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+		if (!writers.hasNext())
+			throw new IllegalStateException("Chybí zapisovač PNG");
+		ImageWriter writer = writers.next();
+		// bez dočasných souborů, které by ImageIO jinak zakládalo pro každou stránku
+		try (ImageOutputStream ios = new MemoryCacheImageOutputStream(outputStream)) {
+			writer.setOutput(ios);
+			IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image),
+					writer.getDefaultWriteParam());
+			setDpi(metadata);
+			writer.write(new IIOImage(image, null, metadata));
+		} finally {
+			writer.dispose();
+		}
+	}
+
+	private void setDpi(IIOMetadata metadata) throws IIOInvalidTreeException {
+		// přes nativní strom PNG, standardní HorizontalPixelSize zapisovač JDK převádí chybně
+		String pixelsPerMeter = Long.toString(Math.round(dpi / METERS_PER_INCH));
+		IIOMetadataNode physical = new IIOMetadataNode("pHYs");
+		physical.setAttribute("pixelsPerUnitXAxis", pixelsPerMeter);
+		physical.setAttribute("pixelsPerUnitYAxis", pixelsPerMeter);
+		physical.setAttribute("unitSpecifier", "meter");
+		IIOMetadataNode root = new IIOMetadataNode(PNG_METADATA_FORMAT);
+		root.appendChild(physical);
+		metadata.mergeTree(PNG_METADATA_FORMAT, root);
+	}
+
+}
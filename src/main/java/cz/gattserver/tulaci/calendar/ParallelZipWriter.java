@@ -0,0 +1,170 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Minimální zápis ZIP pro balíky, jejichž části jsou celé v paměti. Na rozdíl od
+ * {@link java.util.zip.ZipOutputStream} se části komprimují paralelně, každá vlastním {@link Deflater}em, a do
+ * proudu se pak jen sekvenčně vypíšou hlavičky a hotová data. Části, které už komprimované jsou (JPEG, PNG), se
+ * ukládají beze změny.
+ * <p>
+ * Všechny položky mají stejné datum (1. 1. 1980), takže stejné části dají stejné bajty. ZIP64 se nepodporuje,
+ * na sešit kalendáře stačí limity klasického formátu.
+ *
+ * @author gattaka
+ *
+ */
+public class ParallelZipWriter {
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	private static final short VERSION = 20;
+	/**
+	 * Názvy položek jsou v UTF-8
+	 */
+	private static final short FLAG_UTF8 = 0x0800;
+	private static final short STORED = 0;
+	private static final short DEFLATED = 8;
+	/**
+	 * 1. 1. 1980 ve formátu DOS
+	 */
+	private static final short DOS_DATE = (1 << 5) | 1;
+
+	private static final long MAX_SIZE = 0xFFFFFFFFL;
+	private static final int MAX_ENTRIES = 0xFFFF;
+
+	private final int level;
+	private final List<Entry> entries = new ArrayList<>();
+
+	private static final class Entry {
+
+		final byte[] name;
+		final byte[] data;
+		final boolean compress;
+		byte[] stored;
+		short method;
+		int crc;
+		long offset;
+
+		Entry(String name, byte[] data, boolean compress) {
+			this.name = name.getBytes(StandardCharsets.UTF_8);
+			this.data = data;
+			this.compress = compress;
+		}
+
+	}
+
+	public ParallelZipWriter() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param level
+	 *            úroveň komprese {@link Deflater}u
+	 */
+	public ParallelZipWriter(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * @param compress
+	 *            {@code false} pro data, která komprimovaná už jsou -- uloží se beze změny
+	 */
+	public void add(String name, byte[] data, boolean compress) {
+		if (entries.size() == MAX_ENTRIES)
+			throw new IllegalStateException("ZIP bez ZIP64 pojme nejvýš " + MAX_ENTRIES + " položek");
+		entries.add(new Entry(name, data, compress));
+	}
+
+	/**
+	 * Zkomprimuje položky paralelně a zapíše celý archiv. Proud nezavírá.
+	 *
+	 * @return počet zapsaných bajtů
+	 */
+	public long write(OutputStream outputStream) throws IOException {
+		entries.parallelStream().forEach(this::prepare);
+
+		long offset = 0;
+		ByteBuffer header = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+		for (Entry entry : entries) {
+			entry.offset = offset;
+			header.clear();
+			header.putInt(LOCAL_HEADER).putShort(VERSION).putShort(FLAG_UTF8).putShort(entry.method)
+					.putShort((short) 0).putShort(DOS_DATE).putInt(entry.crc).putInt(entry.stored.length)
+					.putInt(entry.data.length).putShort((short) entry.name.length).putShort((short) 0);
+			outputStream.write(header.array(), 0, header.position());
+			outputStream.write(entry.name);
+			outputStream.write(entry.stored);
+			offset += header.position() + entry.name.length + entry.stored.length;
+		}
+
+		long centralOffset = offset;
+		for (Entry entry : entries) {
+			header.clear();
+			header.putInt(CENTRAL_HEADER).putShort(VERSION).putShort(VERSION).putShort(FLAG_UTF8)
+					.putShort(entry.method).putShort((short) 0).putShort(DOS_DATE).putInt(entry.crc)
+					.putInt(entry.stored.length).putInt(entry.data.length).putShort((short) entry.name.length)
+					.putShort((short) 0).putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0)
+					.putInt((int) entry.offset);
+			outputStream.write(header.array(), 0, header.position());
+			outputStream.write(entry.name);
+			offset += header.position() + entry.name.length;
+		}
+		if (offset > MAX_SIZE)
+			throw new IllegalStateException("Archiv je pro ZIP bez ZIP64 příliš velký: " + offset + " B");
+
+		header.clear();
+		header.putInt(END_OF_CENTRAL_DIRECTORY).putShort((short) 0).putShort((short) 0)
+				.putShort((short) entries.size()).putShort((short) entries.size())
+				.putInt((int) (offset - centralOffset)).putInt((int) centralOffset).putShort((short) 0);
+		outputStream.write(header.array(), 0, header.position());
+		return offset + header.position();
+	}
+
+	private void prepare(Entry entry) {
+		CRC32 crc = new CRC32();
+		crc.update(entry.data);
+		entry.crc = (int) crc.getValue();
+		entry.method = STORED;
+		entry.stored = entry.data;
+		if (!entry.compress)
+			return;
+
+		byte[] deflated = deflate(entry.data);
+		// nestlačitelná data se nevyplatí rozbalovat
+		if (deflated.length < entry.data.length) {
+			entry.method = DEFLATED;
+			entry.stored = deflated;
+		}
+	}
+
+	private byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer = new byte[Math.max(64, data.length / 4)];
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == buffer.length)
+					buffer = Arrays.copyOf(buffer, buffer.length * 2);
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+			return Arrays.copyOf(buffer, length);
+		} finally {
+			deflater.end();
+		}
+	}
+
+}
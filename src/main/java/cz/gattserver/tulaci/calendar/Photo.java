@@ -0,0 +1,74 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Fotka připravená k vložení do listu -- hotové bajty a jejich typ pro {@link Workbook#addPicture(byte[], int)}.
+ * Bajty drží {@link StoredPicture}, na haldě, nebo odložené na disk; po vložení do sešitu se fotka zavře.
+ *
+ * @author gattaka
+ *
+ */
+public final class Photo implements Closeable {
+
+	private final String fileName;
+	private final StoredPicture picture;
+	private final int pictureType;
+
+	public Photo(String fileName, byte[] data, int pictureType) {
+		this(fileName, StoredPicture.onHeap(data), pictureType);
+	}
+
+	public Photo(String fileName, StoredPicture picture, int pictureType) {
+		this.fileName = fileName;
+		this.picture = picture;
+		this.pictureType = pictureType;
+	}
+
+	/**
+	 * Název souboru z {@code foto.txt}
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return bajty fotky; odložená fotka se čte z disku
+	 */
+	public byte[] getData() {
+		try {
+			return picture.load();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Fotku " + fileName + " se nepodařilo načíst z dočasného souboru", e);
+		}
+	}
+
+	public long getSize() {
+		return picture.getSize();
+	}
+
+	public int getPictureType() {
+		return pictureType;
+	}
+
+	/**
+	 * SHA-256 otisk bajtů, u nezpracovaných fotek se počítá až při prvním dotazu
+	 */
+	public String getHash() {
+		try {
+			return picture.getHash();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Fotku " + fileName + " se nepodařilo načíst z dočasného souboru", e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		picture.close();
+	}
+
+}
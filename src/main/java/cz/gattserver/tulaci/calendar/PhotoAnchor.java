@@ -0,0 +1,71 @@
+package cz.gattserver.tulaci.calendar;
+
+/**
+ * Kotva fotky nezávislá na formátu sešitu. Rohy jsou dané buňkou a posunem uvnitř ní jako zlomkem šířky sloupce a
+ * výšky řádku (0 až 1); na jednotky XLS nebo XLSX je převádí až {@link SheetSerializer}.
+ *
+ * @author gattaka
+ *
+ */
+public final class PhotoAnchor {
+
+	private final int col1;
+	private final double col1Offset;
+	private final int row1;
+	private final double row1Offset;
+	private final int col2;
+	private final double col2Offset;
+	private final int row2;
+	private final double row2Offset;
+
+	public PhotoAnchor(int col1, double col1Offset, int row1, double row1Offset, int col2, double col2Offset, int row2,
+			double row2Offset) {
+		this.col1 = col1;
+		this.col1Offset = col1Offset;
+		this.row1 = row1;
+		this.row1Offset = row1Offset;
+		this.col2 = col2;
+		this.col2Offset = col2Offset;
+		this.row2 = row2;
+		this.row2Offset = row2Offset;
+	}
+
+	public int getCol1() {
+		return col1;
+	}
+
+	public double getCol1Offset() {
+		return col1Offset;
+	}
+
+	public int getRow1() {
+		return row1;
+	}
+
+	public double getRow1Offset() {
+		return row1Offset;
+	}
+
+	public int getCol2() {
+		return col2;
+	}
+
+	public double getCol2Offset() {
+		return col2Offset;
+	}
+
+	public int getRow2() {
+		return row2;
+	}
+
+	public double getRow2Offset() {
+		return row2Offset;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%d+%.3f, %d+%.3f] - [%d+%.3f, %d+%.3f]", col1, col1Offset, row1, row1Offset, col2,
+				col2Offset, row2, row2Offset);
+	}
+
+}
@@ -0,0 +1,20 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Otisk obsahu fotky pro klíče cache. Implementace si otisky pamatují podle velikosti a času změny souboru, aby se
+ * nezměněná fotka nemusela znovu číst.
+ *
+ * @author gattaka
+ *
+ */
+public interface PhotoHasher {
+
+	/**
+	 * @return SHA-256 obsahu souboru v hex zápisu
+	 */
+	String photoHash(Path photoPath) throws IOException;
+
+}
@@ -0,0 +1,186 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+import cz.gattserver.tulaci.calendar.CalendarEvents.PhotoLoadEvent;
+
+/**
+ * Příprava fotek před stavbou listů. Všechny fotky z {@code foto.txt} se paralelně načtou a případně zpracují
+ * {@link PhotoProcessor}em, listy pak dostanou už hotové bajty. S nastaveným {@link PictureStorage} se hotové
+ * bajty ukládají do něj, takže při překročení rozpočtu haldy počkají na vložení do sešitu na disku.
+ *
+ * @author gattaka
+ *
+ */
+public class PhotoPipeline {
+
+	private final Path dataDir;
+	private final PhotoProcessor processor;
+	private final ProcessedImageCache cache;
+	private final IncrementalCache diskCache;
+	private PictureStorage storage;
+
+	/**
+	 * @param processor
+	 *            zpracování fotek; {@code null} = vložit originály beze změny
+	 * @param cache
+	 *            cache zpracovaných fotek; {@code null} = zpracovat vždy znovu
+	 */
+	public PhotoPipeline(Path dataDir, PhotoProcessor processor, ProcessedImageCache cache) {
+		this(dataDir, processor, cache, null);
+	}
+
+	/**
+	 * @param diskCache
+	 *            cache inkrementálního sestavení, ze které se berou otisky a zpracované fotky minulých běhů;
+	 *            {@code null} = bez ní
+	 */
+	public PhotoPipeline(Path dataDir, PhotoProcessor processor, ProcessedImageCache cache,
+			IncrementalCache diskCache) {
+		this.dataDir = dataDir;
+		this.processor = processor;
+		this.cache = cache;
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * @param storage
+	 *            úložiště pro hotové bajty; {@code null} = nechat vše na haldě
+	 */
+	public void setStorage(PictureStorage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * @param fotoFileLines
+	 *            řádky {@code foto.txt}, jeden na list
+	 * @return připravené fotky ve stejném pořadí jako listy, volající je musí zavřít
+	 */
+	public List<Photo> prepare(List<String> fotoFileLines) {
+		Photo[] photos = new Photo[fotoFileLines.size()];
+		try {
+			IntStream.range(0, photos.length).parallel()
+					.forEach(sheetNo -> photos[sheetNo] = prepare(fotoFileLines.get(sheetNo), sheetNo));
+		} catch (RuntimeException e) {
+			// už připravené fotky by jinak blokovaly rozpočet úložiště
+			for (Photo photo : photos)
+				closeQuietly(photo);
+			throw e;
+		}
+		return Arrays.asList(photos);
+	}
+
+	/**
+	 * Zavře fotky a uvolní jejich místo v úložišti
+	 */
+	public static void close(List<Photo> photos) {
+		if (photos != null)
+			for (Photo photo : photos)
+				closeQuietly(photo);
+	}
+
+	private static void closeQuietly(Photo photo) {
+		if (photo == null)
+			return;
+		try {
+			photo.close();
+		} catch (IOException e) {
+			// dočasný soubor po sobě uklidí PictureStorage#close
+		}
+	}
+
+	private Photo prepare(String fileLine, int sheetNo) {
+		PhotoLoadEvent event = new PhotoLoadEvent();
+		event.begin();
+		Photo photo = prepare(fileLine, PhotoSlot.forSheet(sheetNo));
+		event.end();
+		if (event.shouldCommit()) {
+			event.file = photo.getFileName();
+			event.sheetNo = sheetNo;
+			event.bytes = photo.getSize();
+			event.commit();
+		}
+		return photo;
+	}
+
+	private Photo prepare(String fileLine, PhotoSlot slot) {
+		String[] fileInfo = fileLine.split("\t");
+		if (fileInfo.length != 2)
+			writeErrorFoto(fileLine);
+
+		Path photoPath = dataDir.resolve(fileInfo[0]);
+		if (!Files.exists(photoPath))
+			throw new IllegalStateException("Soubor " + photoPath.toString() + " neexistuje");
+
+		try {
+			if (processor == null) {
+				ImageMetadata metadata = ImageMetadataIndex.getShared().get(photoPath);
+				if (metadata == null)
+					throw new IllegalStateException("Fotka " + photoPath + " není JPEG ani PNG");
+				return newPhoto(fileInfo[0], Files.readAllBytes(photoPath), metadata.getFormat().getPictureType());
+			}
+			return newPhoto(fileInfo[0], process(photoPath, slot), Workbook.PICTURE_TYPE_JPEG);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Fotku " + photoPath.toString() + " se nepodařilo zpracovat", e);
+		}
+	}
+
+	private Photo newPhoto(String fileName, byte[] data, int pictureType) throws IOException {
+		if (storage == null)
+			return new Photo(fileName, data, pictureType);
+		return new Photo(fileName, storage.store(data), pictureType);
+	}
+
+	/**
+	 * Hledá postupně v paměťové cache, v cache inkrementálního sestavení a teprve pak fotku načte a zpracuje.
+	 */
+	private byte[] process(Path photoPath, PhotoSlot slot) throws IOException {
+		if (cache == null && diskCache == null)
+			return processor.process(Files.readAllBytes(photoPath), slot);
+
+		byte[] data = null;
+		String sourceHash;
+		if (diskCache != null) {
+			sourceHash = diskCache.photoHash(photoPath);
+		} else {
+			data = Files.readAllBytes(photoPath);
+			sourceHash = ContentHash.sha256(data);
+		}
+
+		String key = ProcessedImageCache.key(sourceHash, processor, slot);
+		byte[] processed = cache == null ? null : cache.get(key);
+		if (processed == null && diskCache != null) {
+			processed = diskCache.getImage(key);
+			if (processed != null && cache != null)
+				cache.put(key, processed);
+		}
+		if (processed == null) {
+			if (data == null)
+				data = Files.readAllBytes(photoPath);
+			processed = processor.process(data, slot);
+			if (cache != null)
+				cache.put(key, processed);
+			if (diskCache != null)
+				diskCache.putImage(key, processed);
+		} else if (diskCache != null && !diskCache.hasImage(key)) {
+			// z paměti, ale ať ji příští běh najde i na disku
+			diskCache.putImage(key, processed);
+		}
+		return processed;
+	}
+
+	private static void writeErrorFoto(String errorLine) {
+		throw new IllegalStateException("Řádek fotky '" + errorLine + "' má nevyhovující formát\n"
+				+ "\tVyžaduji formát: -soubor.přípona-tabulátor-název akce-\n"
+				+ "\tNapříklad: foto1.jpg\tVýprava na Sněžku");
+	}
+
+}
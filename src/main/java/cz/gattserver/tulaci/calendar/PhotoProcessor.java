@@ -0,0 +1,127 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Zmenší fotku na rozlišení, které potřebuje její kotva při daném DPI, a znovu ji zakóduje jako JPEG v dané kvalitě.
+ * Fotky menší než cílová velikost se nezvětšují. Instance je neměnná a lze ji sdílet mezi vlákny.
+ *
+ * @author gattaka
+ *
+ */
+public class PhotoProcessor {
+
+	public static final int DEFAULT_DPI = 300;
+	public static final float DEFAULT_QUALITY = 0.85f;
+
+	private final int dpi;
+	private final float quality;
+
+	public PhotoProcessor() {
+		this(DEFAULT_DPI, DEFAULT_QUALITY);
+	}
+
+	public PhotoProcessor(int dpi, float quality) {
+		if (dpi < 1)
+			throw new IllegalArgumentException("DPI musí být kladné, je: " + dpi);
+		if (quality <= 0 || quality > 1)
+			throw new IllegalArgumentException("Kvalita musí být v rozsahu (0, 1], je: " + quality);
+		this.dpi = dpi;
+		this.quality = quality;
+	}
+
+	public int getDpi() {
+		return dpi;
+	}
+
+	public float getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @param data
+	 *            původní bajty fotky v libovolném formátu, který umí {@link ImageIO}
+	 * @param slot
+	 *            místo na listu, do kterého se fotka vloží
+	 * @return JPEG zmenšený na rozměr kotvy
+	 * @throws IOException
+	 *             pokud data nejsou čitelný obrázek
+	 */
+	public byte[] process(byte[] data, PhotoSlot slot) throws IOException {
+		BufferedImage source = ImageIO.read(new ByteArrayInputStream(data));
+		if (source == null)
+			throw new IOException("Nepodporovaný formát obrázku");
+
+		int targetWidth = Math.round(slot.getWidthPoints() / 72f * dpi);
+		int targetHeight = Math.round(slot.getHeightPoints() / 72f * dpi);
+
+		// kotva zachovává poměr stran, stačí tedy, aby se fotka do místa vešla; zvětšovat se nebude
+		double scale = Math.min(1.0, Math.min((double) targetWidth / source.getWidth(),
+				(double) targetHeight / source.getHeight()));
+		int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+		return encode(scale(source, width, height));
+	}
+
+	/**
+	 * Zmenšuje postupně po polovinách, aby bilineární filtr nevynechával pixely a nevznikal aliasing.
+	 */
+	private BufferedImage scale(BufferedImage source, int width, int height) {
+		BufferedImage current = source;
+		int currentWidth = source.getWidth();
+		int currentHeight = source.getHeight();
+		do {
+			currentWidth = Math.max(width, currentWidth / 2);
+			currentHeight = Math.max(height, currentHeight / 2);
+			current = draw(current, currentWidth, currentHeight);
+		} while (currentWidth != width || currentHeight != height);
+		return current;
+	}
+
+	private BufferedImage draw(BufferedImage source, int width, int height) {
+		// JPEG neumí alfa kanál, průhledná místa proto podložíme bílou
+		BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = target.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+		} finally {
+			g.dispose();
+		}
+		return target;
+	}
+
+	private byte[] encode(BufferedImage image) throws IOException {
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+		if (!writers.hasNext())
+			throw new IllegalStateException("JVM neobsahuje JPEG kodér");
+		ImageWriter writer = writers.next();
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ImageOutputStream ios = ImageIO.createImageOutputStream(bos)) {
+			writer.setOutput(ios);
+			ImageWriteParam param = writer.getDefaultWriteParam();
+			param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+			param.setCompressionQuality(quality);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.dispose();
+		}
+		return bos.toByteArray();
+	}
+
+}
@@ -0,0 +1,176 @@
+package cz.gattserver.tulaci.calendar;
+
+/**
+ * Místo pro fotku na listu -- rozsah buněk kotvy a z něj odvozená fyzická velikost. Fotka se do místa vkládá se
+ * zachovaným poměrem stran, viz {@link #fit(int, int)}.
+ *
+ * @author gattaka
+ *
+ */
+public enum PhotoSlot {
+
+	FRONT(0, 9, 0, 50), MONTH(0, 10, 1, 28), BACK(1, 8, 11, 30);
+
+	/**
+	 * Šířka sloupců 0-6, kterou nastavuje {@link CalendarBuilder}
+	 */
+	static final int DAY_COLUMN_WIDTH = 2400;
+
+	/**
+	 * Šířka sloupce se dny narozenin na měsíčních listech
+	 */
+	static final int BIRTHDAY_COLUMN_WIDTH = 1000;
+
+	/**
+	 * Výchozí šířka sloupce (8 znaků) v 1/256 znaku
+	 */
+	static final int DEFAULT_COLUMN_WIDTH = 8 * 256;
+
+	/**
+	 * Výchozí výška řádku v bodech
+	 */
+	static final float DEFAULT_ROW_HEIGHT_POINTS = 12.75f;
+
+	/**
+	 * Šířka znaku výchozího písma v pixelech při 96 DPI
+	 */
+	private static final float CHAR_WIDTH_PIXELS = 7f;
+
+	/**
+	 * Tolerance zaokrouhlení na hranici buňky
+	 */
+	private static final double EPSILON = 1e-6;
+
+	private final int col1;
+	private final int col2;
+	private final int row1;
+	private final int row2;
+
+	private PhotoSlot(int col1, int col2, int row1, int row2) {
+		this.col1 = col1;
+		this.col2 = col2;
+		this.row1 = row1;
+		this.row2 = row2;
+	}
+
+	public static PhotoSlot forSheet(int sheetNo) {
+		switch (sheetNo) {
+		case 0:
+			return FRONT;
+		case 13:
+			return BACK;
+		default:
+			return MONTH;
+		}
+	}
+
+	public int getCol1() {
+		return col1;
+	}
+
+	public int getCol2() {
+		return col2;
+	}
+
+	public int getRow1() {
+		return row1;
+	}
+
+	public int getRow2() {
+		return row2;
+	}
+
+	/**
+	 * Šířka sloupce listu v 1/256 znaku, tak jak ji nastavuje {@link CalendarBuilder}
+	 */
+	public int getColumnWidth(int col) {
+		if (col < 7)
+			return DAY_COLUMN_WIDTH;
+		if (col == 7 && this == MONTH)
+			return BIRTHDAY_COLUMN_WIDTH;
+		return DEFAULT_COLUMN_WIDTH;
+	}
+
+	public float getColumnWidthPoints(int col) {
+		return columnWidthPoints(getColumnWidth(col));
+	}
+
+	/**
+	 * @param width
+	 *            šířka sloupce v 1/256 znaku
+	 * @return šířka v bodech
+	 */
+	static float columnWidthPoints(int width) {
+		// 96 px = 72 bodů
+		return width / 256f * CHAR_WIDTH_PIXELS * 72f / 96f;
+	}
+
+	public float getWidthPoints() {
+		float points = 0;
+		for (int c = col1; c < col2; c++)
+			points += getColumnWidthPoints(c);
+		return points;
+	}
+
+	public float getHeightPoints() {
+		return (row2 - row1) * DEFAULT_ROW_HEIGHT_POINTS;
+	}
+
+	/**
+	 * @return kotva přes celé místo
+	 */
+	public PhotoAnchor full() {
+		return new PhotoAnchor(col1, 0, row1, 0, col2, 0, row2, 0);
+	}
+
+	/**
+	 * Největší obdélník s poměrem stran obrázku, který se do místa vejde, vystředěný
+	 */
+	public PhotoAnchor fit(int imageWidth, int imageHeight) {
+		double slotWidth = getWidthPoints();
+		double slotHeight = getHeightPoints();
+		double scale = Math.min(slotWidth / imageWidth, slotHeight / imageHeight);
+		double left = (slotWidth - imageWidth * scale) / 2;
+		double top = (slotHeight - imageHeight * scale) / 2;
+
+		double right = slotWidth - left;
+		double bottom = slotHeight - top;
+		int startCol = columnAt(left);
+		int endCol = columnAt(right);
+		int startRow = rowAt(top);
+		int endRow = rowAt(bottom);
+		return new PhotoAnchor(startCol, columnOffset(startCol, left), row1 + startRow,
+				Math.max(0, top / DEFAULT_ROW_HEIGHT_POINTS - startRow), endCol, columnOffset(endCol, right),
+				row1 + endRow, Math.max(0, bottom / DEFAULT_ROW_HEIGHT_POINTS - endRow));
+	}
+
+	/**
+	 * @return sloupec, do kterého padne vzdálenost od levého okraje místa (na pravém okraji {@link #getCol2()})
+	 */
+	private int columnAt(double points) {
+		int col = col1;
+		double rest = points;
+		while (col < col2 && rest >= getColumnWidthPoints(col) - EPSILON) {
+			rest -= getColumnWidthPoints(col);
+			col++;
+		}
+		return col;
+	}
+
+	/**
+	 * @return posun uvnitř sloupce jako zlomek jeho šířky
+	 */
+	private double columnOffset(int col, double points) {
+		if (col >= col2)
+			return 0;
+		double start = 0;
+		for (int c = col1; c < col; c++)
+			start += getColumnWidthPoints(c);
+		return Math.max(0, (points - start) / getColumnWidthPoints(col));
+	}
+
+	private static int rowAt(double points) {
+		return (int) Math.floor(points / DEFAULT_ROW_HEIGHT_POINTS + EPSILON);
+	}
+
+}
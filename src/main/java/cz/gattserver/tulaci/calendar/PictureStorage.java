@@ -0,0 +1,142 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Úložiště připravených fotek s rozpočtem haldy. Dokud se fotky vejdou do rozpočtu, zůstávají na haldě; další se
+ * zapíšou do dočasného souboru a načtou se až ve chvíli, kdy je {@link SheetSerializer} vkládá do sešitu. Dávka
+ * se stovkami velkých fotek tak nedrží všechny připravené fotky najednou v paměti.
+ * <p>
+ * Rozpočet je společný pro všechna sestavení, která úložiště sdílí. Každá {@link StoredPicture} se musí zavřít,
+ * jinak její místo zůstane obsazené.
+ *
+ * @author gattaka
+ *
+ */
+public class PictureStorage implements Closeable {
+
+	public static final long DEFAULT_HEAP_BUDGET = 128L * 1024 * 1024;
+
+	private static final PictureStorage SHARED = new PictureStorage(DEFAULT_HEAP_BUDGET);
+
+	private volatile long heapBudget;
+	private final AtomicLong heapBytes = new AtomicLong();
+	private final AtomicLong spilledBytes = new AtomicLong();
+	private final AtomicLong spilledTotal = new AtomicLong();
+	private Path spillDir;
+
+	public PictureStorage(long heapBudget) {
+		setHeapBudget(heapBudget);
+	}
+
+	/**
+	 * Úložiště společné pro celý proces
+	 */
+	public static PictureStorage getShared() {
+		return SHARED;
+	}
+
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+
+	/**
+	 * @param heapBudget
+	 *            kolik bajtů fotek smí být najednou na haldě; 0 = všechny fotky na disk
+	 */
+	public void setHeapBudget(long heapBudget) {
+		if (heapBudget < 0)
+			throw new IllegalArgumentException("Rozpočet haldy nesmí být záporný, je: " + heapBudget);
+		this.heapBudget = heapBudget;
+	}
+
+	/**
+	 * Uloží bajty na haldu, nebo -- pokud by rozpočet nestačil -- do dočasného souboru
+	 */
+	public StoredPicture store(byte[] data) throws IOException {
+		String hash = ContentHash.sha256(data);
+		if (reserve(data.length))
+			return new StoredPicture(this, data, null, data.length, hash);
+
+		Path file = Files.createTempFile(getSpillDir(), "foto", ".img");
+		Files.write(file, data);
+		spilledBytes.addAndGet(data.length);
+		spilledTotal.incrementAndGet();
+		return new StoredPicture(this, null, file, data.length, hash);
+	}
+
+	private boolean reserve(long size) {
+		while (true) {
+			long current = heapBytes.get();
+			if (current + size > heapBudget)
+				return false;
+			if (heapBytes.compareAndSet(current, current + size))
+				return true;
+		}
+	}
+
+	void release(StoredPicture picture) throws IOException {
+		if (picture.isSpilled()) {
+			Files.deleteIfExists(picture.getFile());
+			spilledBytes.addAndGet(-picture.getSize());
+		} else {
+			heapBytes.addAndGet(-picture.getSize());
+		}
+	}
+
+	private synchronized Path getSpillDir() throws IOException {
+		if (spillDir == null) {
+			spillDir = Files.createTempDirectory("tulaci-fotky");
+			spillDir.toFile().deleteOnExit();
+		}
+		return spillDir;
+	}
+
+	/**
+	 * @return bajty fotek, které jsou právě na haldě
+	 */
+	public long getHeapBytes() {
+		return heapBytes.get();
+	}
+
+	/**
+	 * @return bajty fotek, které jsou právě v dočasných souborech
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
+	/**
+	 * @return kolik fotek se od startu odložilo na disk
+	 */
+	public long getSpilledTotal() {
+		return spilledTotal.get();
+	}
+
+	/**
+	 * Smaže dočasné soubory, které po sobě nezavřené obrázky nechaly
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (spillDir == null)
+			return;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(spillDir)) {
+			for (Path file : files)
+				Files.deleteIfExists(file);
+		}
+		Files.deleteIfExists(spillDir);
+		spillDir = null;
+	}
+
+	@Override
+	public String toString() {
+		return "úložiště fotek: na haldě " + getHeapBytes() / 1024 + " / " + heapBudget / 1024
+				+ " kB, na disku " + getSpilledBytes() / 1024 + " kB, odloženo celkem: " + getSpilledTotal();
+	}
+
+}
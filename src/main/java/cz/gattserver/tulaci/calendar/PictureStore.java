@@ -0,0 +1,39 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Obrázky jednoho sešitu adresované obsahem. Stejné bajty se do sešitu vloží jen jednou a další listy dostanou index
+ * už vloženého obrázku.
+ *
+ * @author gattaka
+ *
+ */
+public class PictureStore {
+
+	private final Workbook workbook;
+	private final Map<String, Integer> indexes = new HashMap<>();
+
+	public PictureStore(Workbook workbook) {
+		this.workbook = workbook;
+	}
+
+	/**
+	 * @return index obrázku v sešitu pro {@code Drawing#createPicture}
+	 */
+	public int addPicture(Photo photo) {
+		return indexes.computeIfAbsent(photo.getHash(),
+				hash -> workbook.addPicture(photo.getData(), photo.getPictureType()));
+	}
+
+	/**
+	 * @return počet různých obrázků vložených do sešitu
+	 */
+	public int getPictureCount() {
+		return indexes.size();
+	}
+
+}
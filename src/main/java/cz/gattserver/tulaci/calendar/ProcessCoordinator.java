@@ -0,0 +1,128 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import cz.gattserver.tulaci.calendar.WorkQueue.Entry;
+
+/**
+ * Rozdělí dávku mezi několik JVM na jednom stroji. Úlohy zařadí do {@link WorkQueue} a spustí daný počet procesů
+ * {@link QueueWorker} ({@code CliMain --worker}), každý s vlastní haldou, takže pauzy GC jednoho sestavení
+ * nezdržují ostatní. Worker, který skončí dřív, než je fronta hotová, spadl -- jeho úlohy převezmou ostatní a
+ * koordinátor na jeho místo spustí nový, nejvýš {@link WorkQueue#MAX_ATTEMPTS}krát na každé místo.
+ * <p>
+ * Výstup workerů jde do {@code logs/worker-<n>.log} v adresáři fronty. Workery dostanou stejné volby {@code -X}
+ * a {@code -D} JVM jako koordinátor.
+ * <p>
+ * Adresář fronty jde použít opakovaně; souhrn a výsledek běhu se ale týkají jen úloh zařazených tímto během, hotové
+ * a chybné úlohy dřívějších běhů se nepočítají.
+ *
+ * @author gattaka
+ *
+ */
+public class ProcessCoordinator {
+
+	private static final long POLL_INTERVAL_MILLIS = 500;
+
+	private final int processes;
+
+	public ProcessCoordinator(int processes) {
+		if (processes < 1)
+			throw new IllegalArgumentException("Počet procesů musí být kladný, je: " + processes);
+		this.processes = processes;
+	}
+
+	/**
+	 * Zařadí úlohy, nechá je zpracovat workery a vypíše souhrn
+	 *
+	 * @return {@code true}, pokud fronta doběhla a žádná z úloh {@code jobs} neskončila chybou
+	 */
+	public boolean run(WorkQueue queue, List<BatchJob> jobs) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		Set<String> ids = new HashSet<>(queue.enqueue(jobs));
+		Path logDir = queue.getDir().resolve("logs");
+		Files.createDirectories(logDir);
+
+		Process[] workers = new Process[processes];
+		int[] restarts = new int[processes];
+		for (int slot = 0; slot < processes; slot++)
+			workers[slot] = startWorker(queue, logDir, slot);
+
+		while (!queue.isFinished()) {
+			boolean anyAlive = false;
+			for (int slot = 0; slot < processes; slot++) {
+				if (!workers[slot].isAlive() && !queue.isFinished() && restarts[slot] < WorkQueue.MAX_ATTEMPTS) {
+					restarts[slot]++;
+					System.out.println("Worker " + (slot + 1) + " skončil s kódem " + workers[slot].exitValue()
+							+ ", spouštím nový");
+					workers[slot] = startWorker(queue, logDir, slot);
+				}
+				anyAlive |= workers[slot].isAlive();
+			}
+			if (!anyAlive)
+				break;
+			Thread.sleep(POLL_INTERVAL_MILLIS);
+		}
+		for (Process worker : workers)
+			worker.waitFor();
+
+		boolean finished = queue.isFinished();
+		List<Entry> done = ownEntries(queue.getDone(), ids);
+		List<Entry> failed = ownEntries(queue.getFailed(), ids);
+		printSummary(done, failed, System.nanoTime() - start);
+		if (!finished)
+			System.out.println("Workery opakovaně padaly, fronta není hotová: " + queue);
+		return finished && failed.isEmpty();
+	}
+
+	private Process startWorker(WorkQueue queue, Path logDir, int slot) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments())
+			if (argument.startsWith("-X") || argument.startsWith("-D"))
+				command.add(argument);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(CliMain.class.getName());
+		command.add("--worker");
+		command.add(queue.getDir().toString());
+		Path log = logDir.resolve("worker-" + (slot + 1) + ".log");
+		return new ProcessBuilder(command).redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile())).start();
+	}
+
+	/**
+	 * @return jen úlohy tohoto běhu
+	 */
+	private static List<Entry> ownEntries(List<Entry> entries, Set<String> ids) {
+		return entries.stream().filter(entry -> ids.contains(entry.getId())).collect(Collectors.toList());
+	}
+
+	private void printSummary(List<Entry> done, List<Entry> failed, long totalNanos) {
+		long sumMillis = 0;
+		System.out.println("Souhrn dávky:");
+		for (Entry entry : done) {
+			sumMillis += entry.getDurationMillis();
+			System.out.println("\t" + entry.getDurationMillis() + " ms\t" + entry.getJob());
+		}
+		for (Entry entry : failed) {
+			sumMillis += entry.getDurationMillis();
+			System.out.println("\t" + entry.getDurationMillis() + " ms\t" + entry.getJob() + "\tCHYBA: "
+					+ entry.getError());
+		}
+		long totalMillis = totalNanos / 1_000_000;
+		System.out.println("Úloh: " + (done.size() + failed.size()) + ", chyb: " + failed.size() + ", procesů: "
+				+ processes);
+		System.out.println("Celkem: " + totalMillis + " ms, součet úloh: " + sumMillis + " ms, zrychlení: "
+				+ String.format("%.2f", totalMillis == 0 ? 1.0 : (double) sumMillis / totalMillis) + "x");
+	}
+
+}
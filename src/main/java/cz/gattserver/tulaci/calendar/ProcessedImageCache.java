@@ -0,0 +1,38 @@
+package cz.gattserver.tulaci.calendar;
+
+/**
+ * Cache zpracovaných fotek sdílená všemi úlohami v procesu. Klíčem je otisk původních bajtů spolu s parametry
+ * zpracování, takže stejná titulní fotka se pro další oddíl už znovu nedekóduje. Velikost je omezena součtem bajtů,
+ * při překročení se vyhazují nejdéle nepoužité položky (LRU).
+ *
+ * @author gattaka
+ *
+ */
+public class ProcessedImageCache extends LruByteCache {
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private static final ProcessedImageCache SHARED = new ProcessedImageCache(DEFAULT_MAX_BYTES);
+
+	public ProcessedImageCache(long maxBytes) {
+		super("cache fotek", maxBytes);
+	}
+
+	/**
+	 * Cache společná pro celý proces
+	 */
+	public static ProcessedImageCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Verze postupu zpracování, změna zneplatní i fotky uložené v {@link IncrementalCache}
+	 */
+	private static final int PROCESSING_VERSION = 2;
+
+	public static String key(String sourceHash, PhotoProcessor processor, PhotoSlot slot) {
+		return sourceHash + "|" + processor.getDpi() + "|" + processor.getQuality() + "|" + slot + "|v"
+				+ PROCESSING_VERSION;
+	}
+
+}
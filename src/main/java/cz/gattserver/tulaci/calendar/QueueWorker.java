@@ -0,0 +1,95 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import cz.gattserver.tulaci.calendar.WorkQueue.Entry;
+
+/**
+ * Worker dávky v samostatném procesu. Bere si úlohy ze sdílené {@link WorkQueue} jednu po druhé, dokud ve frontě
+ * nějaká čeká nebo běží u jiného workeru (ten může umřít a jeho úlohy se vrátí do fronty). Po celou dobu běhu
+ * obnovuje svůj heartbeat z vlastního vlákna, takže ho neblokuje ani dlouhé sestavení.
+ *
+ * @author gattaka
+ *
+ */
+public class QueueWorker {
+
+	public static final long HEARTBEAT_INTERVAL_MILLIS = 3_000;
+	private static final long POLL_INTERVAL_MILLIS = 1_000;
+
+	private final WorkQueue queue;
+	private final String workerId = WorkQueue.newWorkerId();
+
+	public QueueWorker(WorkQueue queue) {
+		if (queue.getHeartbeatTimeoutMillis() <= 2 * HEARTBEAT_INTERVAL_MILLIS)
+			throw new IllegalArgumentException("Timeout heartbeatu musí být delší než dva jeho intervaly");
+		this.queue = queue;
+	}
+
+	public String getWorkerId() {
+		return workerId;
+	}
+
+	/**
+	 * Zpracovává úlohy, dokud není fronta hotová
+	 *
+	 * @return počet úloh tohoto workeru, které skončily chybou
+	 */
+	public int run() throws IOException, InterruptedException {
+		queue.heartbeat(workerId);
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "kalendar-heartbeat");
+			thread.setDaemon(true);
+			return thread;
+		});
+		heartbeat.scheduleAtFixedRate(() -> {
+			try {
+				queue.heartbeat(workerId);
+			} catch (IOException e) {
+				System.err.println("Heartbeat workeru " + workerId + " selhal: " + e.getMessage());
+			}
+		}, HEARTBEAT_INTERVAL_MILLIS, HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+		System.out.println("Worker " + workerId + " čte frontu: \t" + queue.getDir());
+		int processed = 0;
+		int failed = 0;
+		try {
+			while (true) {
+				Entry entry = queue.claim(workerId);
+				if (entry == null) {
+					if (queue.isFinished())
+						break;
+					Thread.sleep(POLL_INTERVAL_MILLIS);
+					continue;
+				}
+
+				System.out.println("Worker " + workerId + " zpracovává úlohu: \t" + entry + " (pokus "
+						+ entry.getAttempts() + ")");
+				long start = System.nanoTime();
+				Exception error = null;
+				try {
+					entry.getJob().createBuilder().build();
+				} catch (Exception e) {
+					error = e;
+					System.err.println("Úloha " + entry + " selhala: " + e.getMessage());
+				}
+				if (queue.complete(workerId, entry, (System.nanoTime() - start) / 1_000_000, error)) {
+					processed++;
+					if (error != null)
+						failed++;
+				} else {
+					System.out.println("Úlohu " + entry + " mezitím převzal jiný worker");
+				}
+			}
+		} finally {
+			heartbeat.shutdownNow();
+			queue.retire(workerId);
+		}
+		System.out.println("Worker " + workerId + " končí, úloh: " + processed + ", chyb: " + failed);
+		return failed;
+	}
+
+}
@@ -0,0 +1,250 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import org.apache.poi.hssf.util.HSSFColor.HSSFColorPredefined;
+
+/**
+ * Neměnná referenční data sdílená všemi sestaveními procesu -- tabulky svátků, názvy listů a měsíců a texty
+ * posledního listu. Dávka ani server je tak nenačítají a neskládají pro každou úlohu znovu a paměť nepřibývá s počtem
+ * oddílů.
+ * <p>
+ * Tabulky svátků se drží podle SHA-256 obsahu souboru: oddíly se stejnými svátky (třeba každý s vlastní kopií
+ * {@code svatky.txt}) sdílí jednu tabulku. Změněný soubor se pozná podle velikosti a času změny a načte se znovu.
+ * Čtení jde přes {@link ConcurrentHashMap} bez zámků, vrácená data jsou neměnná.
+ *
+ * @author gattaka
+ *
+ */
+public class ReferenceDataRegistry {
+
+	public static final int SHEET_COUNT = 14;
+
+	private static final List<String> SHEET_NAMES = Collections.unmodifiableList(Arrays.asList("První list",
+			"Leden", "Únor", "Březen", "Duben", "Květen", "Červen", "Červenec", "Srpen", "Září", "Říjen", "Listopad",
+			"Prosinec", "Poslední list"));
+
+	private static final List<String> MONTH_TITLES = Collections.unmodifiableList(SHEET_NAMES.subList(1, 13)
+			.stream().map(name -> name.toUpperCase(new Locale("cs"))).collect(Collectors.toList()));
+
+	private static final ReferenceDataRegistry SHARED = new ReferenceDataRegistry();
+
+	private final ConcurrentMap<Path, Source> sources = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, NameDayTable> nameDayTables = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Integer, List<TextBlock>> backPages = new ConcurrentHashMap<>();
+
+	/**
+	 * Stav souboru svátků při posledním čtení
+	 */
+	private static final class Source {
+
+		final String stat;
+		final String hash;
+
+		Source(String stat, String hash) {
+			this.stat = stat;
+			this.hash = hash;
+		}
+
+	}
+
+	/**
+	 * Text přes celou šířku listu, sloučený přes {@code rows} řádků od řádku {@code line}
+	 */
+	public static final class TextBlock {
+
+		private final int line;
+		private final int rows;
+		private final StyleKey style;
+		private final Object value;
+
+		TextBlock(int line, int rows, StyleKey style, Object value) {
+			this.line = line;
+			this.rows = rows;
+			this.style = style;
+			this.value = value;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public int getRows() {
+			return rows;
+		}
+
+		public StyleKey getStyle() {
+			return style;
+		}
+
+		/**
+		 * @return {@link String}, nebo {@link Number}
+		 */
+		public Object getValue() {
+			return value;
+		}
+
+	}
+
+	/**
+	 * Registr společný pro celý proces
+	 */
+	public static ReferenceDataRegistry getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @return název listu, u měsíců český název měsíce
+	 */
+	public static String getSheetName(int sheetNo) {
+		return SHEET_NAMES.get(sheetNo);
+	}
+
+	/**
+	 * @param month
+	 *            měsíc 1 až 12
+	 * @return název měsíce velkými písmeny do záhlaví listu
+	 */
+	public static String getMonthTitle(int month) {
+		return MONTH_TITLES.get(month - 1);
+	}
+
+	/**
+	 * Vrátí tabulku svátků ze souboru. Nezměněný soubor se nečte, soubor se stejným obsahem jako už načtený se
+	 * neparsuje.
+	 *
+	 * @throws IllegalStateException
+	 *             pokud má některý řádek špatný formát
+	 */
+	public NameDayTable getNameDays(Path file) throws IOException {
+		Path key = file.toAbsolutePath().normalize();
+		BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+		String stat = attrs.size() + "|" + attrs.lastModifiedTime().toMillis();
+		Source source = sources.get(key);
+		if (source != null && source.stat.equals(stat)) {
+			NameDayTable table = nameDayTables.get(source.hash);
+			if (table != null)
+				return table;
+		}
+
+		byte[] data = Files.readAllBytes(key);
+		String hash = ContentHash.sha256(data);
+		NameDayTable table;
+		try {
+			table = nameDayTables.computeIfAbsent(hash, h -> NameDayTable.parse(lines(data)));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		Source previous = sources.put(key, new Source(stat, hash));
+		if (previous != null && !previous.hash.equals(hash))
+			releaseNameDays(previous.hash);
+		return table;
+	}
+
+	/**
+	 * Zahodí tabulku, na kterou už neodkazuje žádný soubor
+	 */
+	private void releaseNameDays(String hash) {
+		for (Source source : sources.values())
+			if (source.hash.equals(hash))
+				return;
+		nameDayTables.remove(hash);
+	}
+
+	/**
+	 * Řádky jako {@link Files#readAllLines(Path)}, neplatné UTF-8 je chyba
+	 */
+	private static List<String> lines(byte[] data) {
+		try (BufferedReader reader = new BufferedReader(new StringReader(StandardCharsets.UTF_8.newDecoder()
+				.decode(ByteBuffer.wrap(data)).toString()))) {
+			return reader.lines().collect(Collectors.toList());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return texty posledního listu pro daný rok, v pořadí shora dolů
+	 */
+	public List<TextBlock> getBackPage(int year) {
+		return backPages.computeIfAbsent(year, ReferenceDataRegistry::createBackPage);
+	}
+
+	private static List<TextBlock> createBackPage(int year) {
+		List<TextBlock> blocks = new ArrayList<>();
+		int line = 0;
+
+		StyleKey style = StyleKey.centered(38, HSSFColorPredefined.BROWN.getIndex());
+		line = add(blocks, line, 3, style, "Tulácký kalendář");
+		line = add(blocks, line, 3, style, year);
+		line++;
+
+		style = StyleKey.centered(22, HSSFColorPredefined.DARK_GREEN.getIndex());
+		line = add(blocks, line, 1, style, "Aktivity našeho oddílu jsou podporovány");
+		line = add(blocks, line, 1, style, "mladými ochránci přírody z prostředků");
+		line = add(blocks, line, 1, style, "MŠMT a MHMP.");
+		line++;
+
+		// místo pro fotku, viz PhotoSlot#forSheet
+		line += 20;
+
+		style = StyleKey.centered(12, HSSFColorPredefined.DARK_GREEN.getIndex());
+		line = add(blocks, line, 1, style, "vydáno jako 96. publikace oddílového nakladatelství NAKOLENĚ");
+		line = add(blocks, line, 1, style, "neprodejný materiál pro členy a příznivce oddílu TULÁCI");
+		line = add(blocks, line, 1, style, "prosinec " + (year - 1) + ", vydání prvé, náklad závratný (25 ks)");
+		line++;
+
+		line = add(blocks, line, 1, style,
+				"Všechny fotografie pochází z fotoaparátů členů oddílu, jakákoliv podobnost");
+		line = add(blocks, line, 1, style, " s fotografiemi jiných autorů je čistě náhodná. ");
+
+		style = StyleKey.centered(12, HSSFColorPredefined.DARK_RED.getIndex());
+		line = add(blocks, line, 1, style, "Neneseme odpovědnost za pohoršení při prohlížení kalendáře.");
+		line++;
+
+		style = StyleKey.centered(15, HSSFColorPredefined.BLACK.getIndex());
+		line = add(blocks, line, 1, style, "Kontakt na oddíl (působící v Praze 10)");
+		line = add(blocks, line, 1, style, "Klára Adámková, tel.: 728 734 009, email: oddil@tulaci.eu");
+		line++;
+
+		style = StyleKey.centered(15, HSSFColorPredefined.DARK_RED.getIndex());
+		add(blocks, line, 1, style, "Vše o nás najdete na http://oddil.tulaci.eu");
+
+		return Collections.unmodifiableList(blocks);
+	}
+
+	private static int add(List<TextBlock> blocks, int line, int rows, StyleKey style, Object value) {
+		blocks.add(new TextBlock(line, rows, style, value));
+		return line + rows;
+	}
+
+	/**
+	 * @return počet různých tabulek svátků v paměti
+	 */
+	public int getNameDayTableCount() {
+		return nameDayTables.size();
+	}
+
+	@Override
+	public String toString() {
+		return "referenční data: tabulek svátků " + nameDayTables.size() + " (souborů " + sources.size()
+				+ "), posledních listů " + backPages.size();
+	}
+
+}
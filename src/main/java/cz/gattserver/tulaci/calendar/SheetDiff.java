@@ -0,0 +1,164 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.poi.EncryptedDocumentException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Picture;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Shape;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Podrobné porovnání vybraných listů dvou sešitů po buňkách -- hodnota a styl každé buňky, sloučené oblasti a
+ * fotky s kotvami. Je pomalé (oba sešity se celé načtou přes POI), volá se proto jen pro listy, u kterých
+ * {@link ContentManifest} našel rozdílný otisk.
+ *
+ * @author gattaka
+ *
+ */
+public class SheetDiff {
+
+	/**
+	 * Kolik rozdílů jednoho listu se nejvýš vypíše, zbytek se jen sečte
+	 */
+	public static final int MAX_DIFFERENCES_PER_SHEET = 50;
+
+	private SheetDiff() {
+	}
+
+	/**
+	 * @return popisy rozdílů ve tvaru {@code list!buňka: předtím -> teď}, prázdný seznam pokud se listy shodují
+	 */
+	public static List<String> diff(Path previousWorkbook, Path currentWorkbook, List<String> sheetNames)
+			throws IOException {
+		try (Workbook previous = open(previousWorkbook); Workbook current = open(currentWorkbook)) {
+			List<String> differences = new ArrayList<>();
+			for (String sheetName : sheetNames) {
+				List<String> sheetDifferences = diff(previous.getSheet(sheetName), current.getSheet(sheetName));
+				int count = sheetDifferences.size();
+				for (String difference : sheetDifferences.subList(0, Math.min(count, MAX_DIFFERENCES_PER_SHEET)))
+					differences.add(sheetName + "!" + difference);
+				if (count > MAX_DIFFERENCES_PER_SHEET)
+					differences.add(sheetName + ": ... a dalších " + (count - MAX_DIFFERENCES_PER_SHEET) + " rozdílů");
+			}
+			return differences;
+		}
+	}
+
+	private static Workbook open(Path file) throws IOException {
+		try {
+			return WorkbookFactory.create(file.toFile(), null, true);
+		} catch (InvalidFormatException | EncryptedDocumentException e) {
+			throw new IllegalStateException("Sešit " + file + " nejde přečíst", e);
+		}
+	}
+
+	private static List<String> diff(Sheet previous, Sheet current) {
+		List<String> differences = new ArrayList<>();
+		if (previous == null || current == null) {
+			differences.add(previous == null ? "list předtím chyběl" : "list chybí");
+			return differences;
+		}
+
+		Map<Long, String> previousCells = describeCells(previous);
+		Map<Long, String> currentCells = describeCells(current);
+		Set<Long> positions = new TreeSet<>(previousCells.keySet());
+		positions.addAll(currentCells.keySet());
+		for (Long position : positions) {
+			String before = previousCells.get(position);
+			String after = currentCells.get(position);
+			if (!Objects.equals(before, after))
+				differences.add(Region.cellName((int) (position >> 32), position.intValue()) + ": "
+						+ (before == null ? "(prázdná)" : before) + " -> " + (after == null ? "(prázdná)" : after));
+		}
+
+		compareSets(differences, "oblast", describeRegions(previous), describeRegions(current));
+		compareSets(differences, "fotka", describePictures(previous), describePictures(current));
+		return differences;
+	}
+
+	private static void compareSets(List<String> differences, String label, Set<String> previous,
+			Set<String> current) {
+		for (String item : previous)
+			if (!current.contains(item))
+				differences.add(label + " " + item + ": odebrána");
+		for (String item : current)
+			if (!previous.contains(item))
+				differences.add(label + " " + item + ": přidána");
+	}
+
+	/**
+	 * Popisy buněk podle pozice (řádek v horních 32 bitech, sloupec v dolních), tedy po řádcích a sloupcích
+	 */
+	private static Map<Long, String> describeCells(Sheet sheet) {
+		Map<Long, String> cells = new TreeMap<>();
+		Workbook workbook = sheet.getWorkbook();
+		for (Row row : sheet) {
+			for (Cell cell : row) {
+				String value;
+				if (cell.getCellTypeEnum() == CellType.NUMERIC)
+					value = NumberToTextConverter.toText(cell.getNumericCellValue());
+				else if (cell.getCellTypeEnum() == CellType.STRING)
+					value = "'" + cell.getStringCellValue() + "'";
+				else if (cell.getCellTypeEnum() == CellType.BLANK)
+					value = "''";
+				else
+					value = cell.toString();
+				CellStyle style = cell.getCellStyle();
+				Font font = workbook.getFontAt(style.getFontIndex());
+				cells.put((long) cell.getRowIndex() << 32 | cell.getColumnIndex(),
+						value + " [" + font.getFontName() + " " + font.getFontHeightInPoints()
+								+ (font.getBold() ? " tučné" : "") + ", barva " + font.getColor() + ", "
+								+ style.getAlignmentEnum() + "/" + style.getVerticalAlignmentEnum() + "]");
+			}
+		}
+		return cells;
+	}
+
+	private static Set<String> describeRegions(Sheet sheet) {
+		Set<String> regions = new TreeSet<>();
+		for (CellRangeAddress region : sheet.getMergedRegions())
+			regions.add(region.formatAsString());
+		return regions;
+	}
+
+	private static Set<String> describePictures(Sheet sheet) {
+		Set<String> pictures = new TreeSet<>();
+		Drawing<?> drawing = sheet.getDrawingPatriarch();
+		if (drawing == null)
+			return pictures;
+		for (Shape shape : drawing) {
+			if (!(shape instanceof Picture))
+				continue;
+			Picture picture = (Picture) shape;
+			ClientAnchor anchor = picture.getClientAnchor();
+			pictures.add(ContentHash.sha256(picture.getPictureData().getData()).substring(0, 12) + " ["
+					+ anchor.getCol1() + "+" + anchor.getDx1() + ", " + anchor.getRow1() + "+" + anchor.getDy1()
+					+ "] - [" + anchor.getCol2() + "+" + anchor.getDx2() + ", " + anchor.getRow2() + "+"
+					+ anchor.getDy2() + "]");
+		}
+		return pictures;
+	}
+
+}
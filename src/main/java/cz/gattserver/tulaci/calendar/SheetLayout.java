@@ -0,0 +1,256 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Neměnný model jednoho listu -- buňky s hodnotami a klíči stylů, sloučené oblasti, šířky sloupců a umístění
+ * fotky. Nezávisí na POI, takže se dá počítat paralelně pro všechny listy a sešit z něj pak jednovláknově postaví
+ * {@link SheetSerializer}.
+ *
+ * @author gattaka
+ *
+ */
+public final class SheetLayout {
+
+	private final String name;
+	private final int[] columnWidths;
+	private final List<CellModel> cells;
+	private final List<Region> mergedRegions;
+	private final PhotoSlot photoSlot;
+	private final PhotoAnchor photoAnchor;
+
+	private SheetLayout(Builder builder) {
+		this.name = builder.name;
+		this.columnWidths = Arrays.copyOf(builder.columnWidths, builder.columnWidths.length);
+		this.cells = Collections.unmodifiableList(new ArrayList<>(builder.cells));
+		this.mergedRegions = builder.mergedRegions.validate(name);
+		this.photoSlot = builder.photoSlot;
+		this.photoAnchor = builder.photoAnchor;
+	}
+
+	/**
+	 * Buňka listu. Hodnota je text, číslo, nebo {@code null} pro prázdnou buňku, která má jen styl.
+	 */
+	public static final class CellModel {
+
+		private final int row;
+		private final int column;
+		private final Object value;
+		private final StyleKey style;
+
+		CellModel(int row, int column, Object value, StyleKey style) {
+			this.row = row;
+			this.column = column;
+			this.value = value;
+			this.style = style;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		/**
+		 * @return {@link String}, {@link Number}, nebo {@code null}
+		 */
+		public Object getValue() {
+			return value;
+		}
+
+		public StyleKey getStyle() {
+			return style;
+		}
+
+		@Override
+		public String toString() {
+			return Region.cellName(row, column) + "=" + value;
+		}
+
+	}
+
+	/**
+	 * Sloučená oblast, meze včetně
+	 */
+	public static final class Region {
+
+		private final int firstRow;
+		private final int lastRow;
+		private final int firstColumn;
+		private final int lastColumn;
+
+		Region(int firstRow, int lastRow, int firstColumn, int lastColumn) {
+			if (firstRow > lastRow || firstColumn > lastColumn)
+				throw new IllegalArgumentException("Neplatná oblast: " + cellName(firstRow, firstColumn) + ":"
+						+ cellName(lastRow, lastColumn));
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.firstColumn = firstColumn;
+			this.lastColumn = lastColumn;
+		}
+
+		public int getFirstRow() {
+			return firstRow;
+		}
+
+		public int getLastRow() {
+			return lastRow;
+		}
+
+		public int getFirstColumn() {
+			return firstColumn;
+		}
+
+		public int getLastColumn() {
+			return lastColumn;
+		}
+
+		/**
+		 * @return název buňky ve tvaru Excelu, např. {@code H30}
+		 */
+		static String cellName(int row, int column) {
+			StringBuilder sb = new StringBuilder();
+			for (int c = column + 1; c > 0; c = (c - 1) / 26)
+				sb.insert(0, (char) ('A' + (c - 1) % 26));
+			return sb.append(row + 1).toString();
+		}
+
+		@Override
+		public String toString() {
+			return cellName(firstRow, firstColumn) + ":" + cellName(lastRow, lastColumn);
+		}
+
+	}
+
+	/**
+	 * Skládá model listu. Není vláknově bezpečný, každý list má vlastní.
+	 */
+	public static final class Builder {
+
+		private final String name;
+		private int[] columnWidths = new int[0];
+		private final List<CellModel> cells = new ArrayList<>();
+		private final MergedRegionCollector mergedRegions = new MergedRegionCollector();
+		private PhotoSlot photoSlot;
+		private PhotoAnchor photoAnchor;
+
+		public Builder(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @param width
+		 *            šířka v 1/256 znaku, jako u {@code Sheet#setColumnWidth}
+		 */
+		public Builder columnWidth(int column, int width) {
+			if (column >= columnWidths.length)
+				columnWidths = Arrays.copyOf(columnWidths, column + 1);
+			columnWidths[column] = width;
+			return this;
+		}
+
+		public Builder cell(int row, int column, Object value, StyleKey style) {
+			if (value != null && !(value instanceof String) && !(value instanceof Number))
+				throw new IllegalArgumentException("Nepodporovaná hodnota buňky: " + value.getClass().getName());
+			cells.add(new CellModel(row, column, value, style));
+			return this;
+		}
+
+		public Builder merge(int firstRow, int lastRow, int firstColumn, int lastColumn) {
+			mergedRegions.add(new Region(firstRow, lastRow, firstColumn, lastColumn));
+			return this;
+		}
+
+		/**
+		 * @param anchor
+		 *            umístění fotky v rámci místa, viz {@link PhotoSlot#fit(int, int)}
+		 */
+		public Builder photo(PhotoSlot slot, PhotoAnchor anchor) {
+			this.photoSlot = slot;
+			this.photoAnchor = anchor;
+			return this;
+		}
+
+		/**
+		 * @throws IllegalStateException
+		 *             pokud se sloučené oblasti překrývají
+		 */
+		public SheetLayout build() {
+			return new SheetLayout(this);
+		}
+
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return počet sloupců s nastavenou šířkou (od nultého)
+	 */
+	public int getColumnCount() {
+		return columnWidths.length;
+	}
+
+	/**
+	 * @return šířka sloupce, nebo 0, pokud se nemění
+	 */
+	public int getColumnWidth(int column) {
+		return column < columnWidths.length ? columnWidths[column] : 0;
+	}
+
+	/**
+	 * @return buňky v pořadí, v jakém se mají vytvořit
+	 */
+	public List<CellModel> getCells() {
+		return cells;
+	}
+
+	/**
+	 * Buňky po řádcích a sloupcích. Pokud model buňku vytvoří dvakrát, platí poslední, stejně jako u
+	 * {@code Row#createCell}.
+	 */
+	public List<CellModel> getSortedCells() {
+		List<CellModel> sorted = new ArrayList<>(cells);
+		// řazení je stabilní, pozdější buňka na stejném místě zůstane za dřívější
+		sorted.sort(Comparator.comparingInt(CellModel::getRow).thenComparingInt(CellModel::getColumn));
+		List<CellModel> result = new ArrayList<>(sorted.size());
+		for (CellModel cell : sorted) {
+			int last = result.size() - 1;
+			if (last >= 0 && result.get(last).getRow() == cell.getRow()
+					&& result.get(last).getColumn() == cell.getColumn())
+				result.set(last, cell);
+			else
+				result.add(cell);
+		}
+		return result;
+	}
+
+	/**
+	 * @return sloučené oblasti, navzájem se nepřekrývají
+	 */
+	public List<Region> getMergedRegions() {
+		return mergedRegions;
+	}
+
+	/**
+	 * @return místo pro fotku, nebo {@code null}, pokud list fotku nemá
+	 */
+	public PhotoSlot getPhotoSlot() {
+		return photoSlot;
+	}
+
+	/**
+	 * @return kotva fotky, nebo {@code null}, pokud list fotku nemá
+	 */
+	public PhotoAnchor getPhotoAnchor() {
+		return photoAnchor;
+	}
+
+}
@@ -0,0 +1,146 @@
+package cz.gattserver.tulaci.calendar;
+
+import org.apache.poi.hssf.usermodel.HSSFClientAnchor;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Drawing;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.Units;
+
+import cz.gattserver.tulaci.calendar.CalendarEvents.PhotoEmbedEvent;
+import cz.gattserver.tulaci.calendar.CalendarEvents.SheetBuildEvent;
+import cz.gattserver.tulaci.calendar.SheetLayout.CellModel;
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Převádí hotové {@link SheetLayout} na objekty POI. POI není vláknově bezpečné, serializér se proto volá z jednoho
+ * vlákna; veškeré rozhodování o obsahu listu proběhlo už při stavbě modelu.
+ *
+ * @author gattaka
+ *
+ */
+public class SheetSerializer {
+
+	private static final int HSSF_DX_MAX = 1023;
+	private static final int HSSF_DY_MAX = 255;
+
+	private final Workbook workbook;
+	private final StyleRegistry styles;
+	private final PictureStore pictures;
+
+	public SheetSerializer(Workbook workbook) {
+		this.workbook = workbook;
+		this.styles = new StyleRegistry(workbook);
+		this.pictures = new PictureStore(workbook);
+	}
+
+	public StyleRegistry getStyles() {
+		return styles;
+	}
+
+	public PictureStore getPictures() {
+		return pictures;
+	}
+
+	/**
+	 * Vytvoří list podle modelu
+	 *
+	 * @param photo
+	 *            fotka listu, použije se jen pokud model určuje její umístění
+	 */
+	public Sheet write(SheetLayout layout, Photo photo) {
+		SheetBuildEvent event = new SheetBuildEvent();
+		event.begin();
+		Sheet sheet = workbook.createSheet(layout.getName());
+		// SXSSF má jinak výchozích 15 bodů, rozvržení fotky počítá s výškou řádku z XLS
+		sheet.setDefaultRowHeightInPoints(PhotoSlot.DEFAULT_ROW_HEIGHT_POINTS);
+
+		for (int c = 0; c < layout.getColumnCount(); c++)
+			if (layout.getColumnWidth(c) > 0)
+				sheet.setColumnWidth(c, layout.getColumnWidth(c));
+
+		for (CellModel model : layout.getCells()) {
+			Row row = sheet.getRow(model.getRow());
+			if (row == null)
+				row = sheet.createRow(model.getRow());
+			Cell cell = row.createCell(model.getColumn());
+			Object value = model.getValue();
+			if (value instanceof Number)
+				cell.setCellValue(((Number) value).doubleValue());
+			else
+				cell.setCellValue((String) value);
+			cell.setCellStyle(styles.getStyle(model.getStyle()));
+		}
+
+		// překryvy zkontroloval už model, kontrola POI by byla kvadratická
+		for (Region region : layout.getMergedRegions())
+			sheet.addMergedRegionUnsafe(new CellRangeAddress(region.getFirstRow(), region.getLastRow(),
+					region.getFirstColumn(), region.getLastColumn()));
+
+		if (layout.getPhotoAnchor() != null)
+			addPhoto(sheet, layout.getPhotoAnchor(), photo);
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.sheet = layout.getName();
+			event.cells = layout.getCells().size();
+			event.styles = workbook.getNumCellStyles();
+			event.mergedRegions = layout.getMergedRegions().size();
+			event.commit();
+		}
+		return sheet;
+	}
+
+	public void addPhoto(Sheet sheet, PhotoAnchor photoAnchor, Photo photo) {
+		PhotoEmbedEvent event = new PhotoEmbedEvent();
+		event.begin();
+
+		Drawing<?> drawing = sheet.createDrawingPatriarch();
+		ClientAnchor anchor = workbook.getCreationHelper().createClientAnchor();
+		anchor.setAnchorType(ClientAnchor.AnchorType.MOVE_AND_RESIZE);
+
+		int pictureIndex = pictures.addPicture(photo);
+
+		anchor.setCol1(photoAnchor.getCol1());
+		anchor.setCol2(photoAnchor.getCol2());
+		anchor.setRow1(photoAnchor.getRow1());
+		anchor.setRow2(photoAnchor.getRow2());
+		if (anchor instanceof HSSFClientAnchor) {
+			// XLS: posun v 1/1024 šířky sloupce a 1/256 výšky řádku
+			anchor.setDx1(scale(photoAnchor.getCol1Offset(), HSSF_DX_MAX));
+			anchor.setDx2(scale(photoAnchor.getCol2Offset(), HSSF_DX_MAX));
+			anchor.setDy1(scale(photoAnchor.getRow1Offset(), HSSF_DY_MAX));
+			anchor.setDy2(scale(photoAnchor.getRow2Offset(), HSSF_DY_MAX));
+		} else {
+			// XLSX: posun v EMU
+			float rowHeight = sheet.getDefaultRowHeightInPoints() * Units.EMU_PER_POINT;
+			anchor.setDx1(scale(photoAnchor.getCol1Offset(), columnWidthEmu(sheet, photoAnchor.getCol1())));
+			anchor.setDx2(scale(photoAnchor.getCol2Offset(), columnWidthEmu(sheet, photoAnchor.getCol2())));
+			anchor.setDy1(scale(photoAnchor.getRow1Offset(), rowHeight));
+			anchor.setDy2(scale(photoAnchor.getRow2Offset(), rowHeight));
+		}
+		drawing.createPicture(anchor, pictureIndex);
+
+		event.end();
+		if (event.shouldCommit()) {
+			event.file = photo.getFileName();
+			event.sheet = sheet.getSheetName();
+			event.bytes = photo.getSize();
+			event.pictureIndex = pictureIndex;
+			event.commit();
+		}
+	}
+
+	private static float columnWidthEmu(Sheet sheet, int col) {
+		// stejný přepočet jako při umístění fotky v PhotoSlot
+		return PhotoSlot.columnWidthPoints(sheet.getColumnWidth(col)) * Units.EMU_PER_POINT;
+	}
+
+	private static int scale(double offset, float unit) {
+		return (int) Math.round(offset * unit);
+	}
+
+}
@@ -0,0 +1,84 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bajty jednoho obrázku uložené {@link PictureStorage} -- buď na haldě, nebo v dočasném souboru, ze kterého se
+ * načtou až při vkládání do sešitu. Po {@link #close()} uvolní místo v rozpočtu haldy, případně smaže soubor.
+ *
+ * @author gattaka
+ *
+ */
+public final class StoredPicture implements Closeable {
+
+	private final PictureStorage storage;
+	private final Path file;
+	private final long size;
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private volatile byte[] data;
+	private volatile String hash;
+
+	StoredPicture(PictureStorage storage, byte[] data, Path file, long size, String hash) {
+		this.storage = storage;
+		this.data = data;
+		this.file = file;
+		this.size = size;
+		this.hash = hash;
+	}
+
+	/**
+	 * Obrázek na haldě mimo jakýkoliv rozpočet
+	 */
+	public static StoredPicture onHeap(byte[] data) {
+		return new StoredPicture(null, data, null, data.length, null);
+	}
+
+	/**
+	 * @return bajty obrázku; u odloženého obrázku se čtou ze souboru při každém volání
+	 */
+	public byte[] load() throws IOException {
+		if (closed.get())
+			throw new IllegalStateException("Obrázek už byl uvolněn");
+		byte[] bytes = data;
+		return bytes != null ? bytes : Files.readAllBytes(file);
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return SHA-256 otisk bajtů
+	 */
+	public String getHash() throws IOException {
+		String h = hash;
+		if (h == null)
+			hash = h = ContentHash.sha256(load());
+		return h;
+	}
+
+	/**
+	 * @return {@code true}, pokud jsou bajty v dočasném souboru
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed.compareAndSet(false, true))
+			return;
+		data = null;
+		if (storage != null)
+			storage.release(this);
+	}
+
+}
@@ -0,0 +1,79 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Zápis do proudu, který patří volajícímu. Sink ho nezavírá, při {@link #commit()} jen dopíše buffer.
+ * Co už odešlo, při chybě vrátit nejde, {@link #abort()} proto jen zahodí obsah bufferu.
+ *
+ * @author gattaka
+ *
+ */
+public class StreamOutputSink implements OutputSink {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final OutputStream target;
+	private final String description;
+	private OutputStream outputStream;
+
+	public StreamOutputSink(OutputStream outputStream) {
+		this(outputStream, "proud");
+	}
+
+	/**
+	 * @param description
+	 *            popis cíle pro výpisy a události JFR
+	 */
+	public StreamOutputSink(OutputStream outputStream, String description) {
+		this.target = outputStream;
+		this.description = description;
+	}
+
+	@Override
+	public OutputStream open() throws IOException {
+		if (outputStream != null)
+			throw new IllegalStateException("Výstup už byl otevřen");
+		outputStream = buffered(target);
+		return outputStream;
+	}
+
+	/**
+	 * Buffer před cílem, jehož {@code close()} jen dopíše data. POI i zip zapisují po malých kouscích, cíl by jinak
+	 * dostal zápis na každý z nich; {@code SXSSFWorkbook} navíc proud po zápisu zavírá, cíl ale patří sinku.
+	 */
+	private static OutputStream buffered(OutputStream target) {
+		return new BufferedOutputStream(new FilterOutputStream(target) {
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void close() throws IOException {
+				flush();
+			}
+
+		}, BUFFER_SIZE);
+	}
+
+	@Override
+	public void commit() throws IOException {
+		outputStream.flush();
+	}
+
+	@Override
+	public void abort() {
+		outputStream = null;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+}
@@ -0,0 +1,110 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.Objects;
+
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+
+/**
+ * Úplný vizuální popis stylu buňky (písmo, velikost, barva, tučnost, zarovnání). Slouží jako klíč do
+ * {@link StyleRegistry}, takže stejná kombinace vznikne v sešitu jen jednou.
+ *
+ * @author gattaka
+ *
+ */
+public final class StyleKey {
+
+	public static final String DEFAULT_FONT_NAME = "Castanet CE";
+
+	private final String fontName;
+	private final short fontHeightInPoints;
+	private final short color;
+	private final boolean bold;
+	private final HorizontalAlignment alignment;
+	private final VerticalAlignment verticalAlignment;
+
+	public StyleKey(String fontName, short fontHeightInPoints, short color, boolean bold,
+			HorizontalAlignment alignment, VerticalAlignment verticalAlignment) {
+		this.fontName = Objects.requireNonNull(fontName);
+		this.fontHeightInPoints = fontHeightInPoints;
+		this.color = color;
+		this.bold = bold;
+		this.alignment = Objects.requireNonNull(alignment);
+		this.verticalAlignment = Objects.requireNonNull(verticalAlignment);
+	}
+
+	/**
+	 * Nejčastější případ -- výchozí písmo, bez tučnosti.
+	 */
+	public static StyleKey of(int fontHeightInPoints, short color, HorizontalAlignment alignment,
+			VerticalAlignment verticalAlignment) {
+		return new StyleKey(DEFAULT_FONT_NAME, (short) fontHeightInPoints, color, false, alignment,
+				verticalAlignment);
+	}
+
+	/**
+	 * Výchozí písmo a barva, vycentrováno v obou osách.
+	 */
+	public static StyleKey centered(int fontHeightInPoints, short color) {
+		return of(fontHeightInPoints, color, HorizontalAlignment.CENTER, VerticalAlignment.CENTER);
+	}
+
+	public static StyleKey centered(int fontHeightInPoints) {
+		return centered(fontHeightInPoints, Font.COLOR_NORMAL);
+	}
+
+	public String getFontName() {
+		return fontName;
+	}
+
+	public short getFontHeightInPoints() {
+		return fontHeightInPoints;
+	}
+
+	public short getColor() {
+		return color;
+	}
+
+	public boolean isBold() {
+		return bold;
+	}
+
+	public HorizontalAlignment getAlignment() {
+		return alignment;
+	}
+
+	public VerticalAlignment getVerticalAlignment() {
+		return verticalAlignment;
+	}
+
+	/**
+	 * Klíč samotného písma -- styly lišící se jen zarovnáním sdílí jeden font.
+	 */
+	String fontKey() {
+		return fontName + "|" + fontHeightInPoints + "|" + color + "|" + bold;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof StyleKey))
+			return false;
+		StyleKey other = (StyleKey) obj;
+		return fontHeightInPoints == other.fontHeightInPoints && color == other.color && bold == other.bold
+				&& fontName.equals(other.fontName) && alignment == other.alignment
+				&& verticalAlignment == other.verticalAlignment;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(fontName, fontHeightInPoints, color, bold, alignment, verticalAlignment);
+	}
+
+	@Override
+	public String toString() {
+		return fontKey() + "|" + alignment + "|" + verticalAlignment;
+	}
+
+}
@@ -0,0 +1,67 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Workbook;
+
+/**
+ * Registr stylů a písem jednoho sešitu. Každá kombinace {@link StyleKey} se v sešitu vytvoří jen jednou a dál se
+ * sdílí, jinak by každý den v měsíci přidal vlastní styl i font a sešit by se rychle blížil limitu 4000 stylů XLS.
+ *
+ * @author gattaka
+ *
+ */
+public class StyleRegistry {
+
+	private final Workbook workbook;
+	private final Map<StyleKey, CellStyle> styles = new HashMap<>();
+	private final Map<String, Font> fonts = new HashMap<>();
+
+	public StyleRegistry(Workbook workbook) {
+		this.workbook = workbook;
+	}
+
+	public CellStyle getStyle(StyleKey key) {
+		CellStyle style = styles.get(key);
+		if (style == null) {
+			style = workbook.createCellStyle();
+			style.setFont(getFont(key));
+			style.setAlignment(key.getAlignment());
+			style.setVerticalAlignment(key.getVerticalAlignment());
+			styles.put(key, style);
+		}
+		return style;
+	}
+
+	private Font getFont(StyleKey key) {
+		String fontKey = key.fontKey();
+		Font font = fonts.get(fontKey);
+		if (font == null) {
+			font = workbook.createFont();
+			font.setFontName(key.getFontName());
+			font.setBold(key.isBold());
+			font.setFontHeightInPoints(key.getFontHeightInPoints());
+			font.setColor(key.getColor());
+			fonts.put(fontKey, font);
+		}
+		return font;
+	}
+
+	/**
+	 * @return počet stylů vytvořených přes registr
+	 */
+	public int getStyleCount() {
+		return styles.size();
+	}
+
+	/**
+	 * @return počet písem vytvořených přes registr
+	 */
+	public int getFontCount() {
+		return fonts.size();
+	}
+
+}
@@ -0,0 +1,392 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Fronta úloh dávky v adresáři na disku, sdílená více procesy na jednom stroji. Úloha je soubor, který se podle
+ * stavu přesouvá mezi podadresáři {@code pending}, {@code claimed}, {@code done} a {@code failed}; přesuny
+ * i čtení stavu jdou pod výhradním zámkem {@link FileChannel#lock()} souboru {@code queue.lock}.
+ * <p>
+ * Worker si úlohu přivlastní přesunem do {@code claimed} se svým identifikátorem v názvu a dokud žije, obnovuje čas
+ * změny svého souboru v {@code workers}. Úlohy workeru, jehož proces skončil nebo jehož heartbeat je starší než
+ * {@link #getHeartbeatTimeoutMillis()}, vrátí do {@code pending} kterýkoliv jiný worker při dalším
+ * {@link #claim(String)}. Úloha, kterou worker opakovaně nedokončí (třeba kvůli pádu JVM), skončí po
+ * {@link #MAX_ATTEMPTS} pokusech jako chybná.
+ *
+ * @author gattaka
+ *
+ */
+public final class WorkQueue {
+
+	public static final int MAX_ATTEMPTS = 3;
+	public static final long DEFAULT_HEARTBEAT_TIMEOUT_MILLIS = 15_000;
+
+	private static final String LOCK_FILE = "queue.lock";
+	private static final String PENDING = "pending";
+	private static final String CLAIMED = "claimed";
+	private static final String DONE = "done";
+	private static final String FAILED = "failed";
+	private static final String WORKERS = "workers";
+	private static final String JOB_SUFFIX = ".job";
+	private static final String HEARTBEAT_SUFFIX = ".heartbeat";
+	/**
+	 * Odděluje číslo úlohy od identifikátoru workeru v {@code claimed}
+	 */
+	private static final char OWNER_SEPARATOR = '@';
+
+	/**
+	 * Zámek souboru drží celé JVM, vlákna jednoho procesu se proto musí vystřídat ještě před ním
+	 */
+	private static final Object PROCESS_LOCK = new Object();
+
+	private final Path dir;
+	private final long heartbeatTimeoutMillis;
+
+	/**
+	 * Úloha ve frontě se stavem z jejího souboru
+	 */
+	public static final class Entry {
+
+		private final String id;
+		private final BatchJob job;
+		private final int attempts;
+		private final long durationMillis;
+		private final String error;
+
+		Entry(String id, BatchJob job, int attempts, long durationMillis, String error) {
+			this.id = id;
+			this.job = job;
+			this.attempts = attempts;
+			this.durationMillis = durationMillis;
+			this.error = error;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public BatchJob getJob() {
+			return job;
+		}
+
+		/**
+		 * @return kolikrát si úlohu některý worker přivlastnil
+		 */
+		public int getAttempts() {
+			return attempts;
+		}
+
+		public long getDurationMillis() {
+			return durationMillis;
+		}
+
+		/**
+		 * @return popis chyby, nebo {@code null}, pokud úloha nespadla
+		 */
+		public String getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			return id + " " + job;
+		}
+
+	}
+
+	public WorkQueue(Path dir) throws IOException {
+		this(dir, DEFAULT_HEARTBEAT_TIMEOUT_MILLIS);
+	}
+
+	public WorkQueue(Path dir, long heartbeatTimeoutMillis) throws IOException {
+		this.dir = dir.toAbsolutePath();
+		this.heartbeatTimeoutMillis = heartbeatTimeoutMillis;
+		for (String state : new String[] { PENDING, CLAIMED, DONE, FAILED, WORKERS })
+			Files.createDirectories(this.dir.resolve(state));
+	}
+
+	public Path getDir() {
+		return dir;
+	}
+
+	public long getHeartbeatTimeoutMillis() {
+		return heartbeatTimeoutMillis;
+	}
+
+	@FunctionalInterface
+	private interface LockedAction<T> {
+
+		T run() throws IOException;
+
+	}
+
+	private <T> T locked(LockedAction<T> action) throws IOException {
+		synchronized (PROCESS_LOCK) {
+			try (FileChannel channel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE)) {
+				FileLock lock = channel.lock();
+				try {
+					return action.run();
+				} finally {
+					lock.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Přidá úlohy na konec fronty
+	 *
+	 * @return identifikátory přidaných úloh ve stejném pořadí jako {@code jobs}
+	 */
+	public List<String> enqueue(List<BatchJob> jobs) throws IOException {
+		return locked(() -> {
+			int next = 0;
+			for (String state : new String[] { PENDING, CLAIMED, DONE, FAILED })
+				for (Path file : list(state))
+					next = Math.max(next, Integer.parseInt(jobId(file)) + 1);
+			List<String> ids = new ArrayList<>();
+			for (BatchJob job : jobs) {
+				String id = String.format("%06d", next++);
+				write(dir.resolve(PENDING).resolve(id + JOB_SUFFIX), new Entry(null, job, 0, 0, null));
+				ids.add(id);
+			}
+			return ids;
+		});
+	}
+
+	/**
+	 * Přivlastní si nejstarší čekající úlohu. Předtím vrátí do fronty úlohy mrtvých workerů.
+	 *
+	 * @return úloha, nebo {@code null}, pokud žádná nečeká
+	 */
+	public Entry claim(String workerId) throws IOException {
+		return locked(() -> {
+			reclaimDead();
+			List<Path> pending = list(PENDING);
+			if (pending.isEmpty())
+				return null;
+			Path file = pending.get(0);
+			String id = jobId(file);
+			Entry entry = read(id, file);
+			Path claimed = dir.resolve(CLAIMED).resolve(id + OWNER_SEPARATOR + workerId + JOB_SUFFIX);
+			entry = new Entry(id, entry.job, entry.attempts + 1, 0, null);
+			write(claimed, entry);
+			Files.delete(file);
+			return entry;
+		});
+	}
+
+	/**
+	 * Zapíše výsledek úlohy. Pokud ji mezitím převzal jiný worker (tento byl považován za mrtvý), nedělá nic.
+	 *
+	 * @param error
+	 *            chyba úlohy, nebo {@code null}
+	 * @return {@code false}, pokud úloha už tomuto workeru nepatřila
+	 */
+	public boolean complete(String workerId, Entry entry, long durationMillis, Exception error) throws IOException {
+		return locked(() -> {
+			Path claimed = dir.resolve(CLAIMED).resolve(entry.id + OWNER_SEPARATOR + workerId + JOB_SUFFIX);
+			if (!Files.exists(claimed))
+				return false;
+			String message = error == null ? null
+					: error.getMessage() == null ? error.getClass().getName() : error.getMessage();
+			write(dir.resolve(error == null ? DONE : FAILED).resolve(entry.id + JOB_SUFFIX),
+					new Entry(entry.id, entry.job, entry.attempts, durationMillis, message));
+			Files.delete(claimed);
+			return true;
+		});
+	}
+
+	/**
+	 * Obnoví heartbeat workeru, volá se pravidelně po celou dobu jeho běhu
+	 */
+	public void heartbeat(String workerId) throws IOException {
+		Path file = dir.resolve(WORKERS).resolve(workerId + HEARTBEAT_SUFFIX);
+		if (!Files.exists(file))
+			Files.createFile(file);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	/**
+	 * Odhlásí workera, který končí; jeho nedokončené úlohy se vrátí do fronty
+	 */
+	public void retire(String workerId) throws IOException {
+		Files.deleteIfExists(dir.resolve(WORKERS).resolve(workerId + HEARTBEAT_SUFFIX));
+		locked(() -> {
+			reclaimDead();
+			return null;
+		});
+	}
+
+	/**
+	 * Vrátí do fronty úlohy workerů, kteří už neběží. Volá se pod zámkem.
+	 */
+	private void reclaimDead() throws IOException {
+		long now = System.currentTimeMillis();
+		for (Path file : list(CLAIMED)) {
+			String name = file.getFileName().toString();
+			String workerId = name.substring(name.indexOf(OWNER_SEPARATOR) + 1, name.length() - JOB_SUFFIX.length());
+			if (isAlive(workerId, now))
+				continue;
+			String id = jobId(file);
+			Entry entry = read(id, file);
+			System.out.println("Worker " + workerId + " neběží, úloha " + entry + " se vrací do fronty");
+			if (entry.attempts >= MAX_ATTEMPTS)
+				write(dir.resolve(FAILED).resolve(id + JOB_SUFFIX), new Entry(id, entry.job, entry.attempts, 0,
+						"Worker úlohu " + entry.attempts + "x nedokončil"));
+			else
+				write(dir.resolve(PENDING).resolve(id + JOB_SUFFIX), entry);
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * Worker žije, pokud má čerstvý heartbeat a (na stejném stroji) běží jeho proces
+	 */
+	private boolean isAlive(String workerId, long now) throws IOException {
+		Path heartbeat = dir.resolve(WORKERS).resolve(workerId + HEARTBEAT_SUFFIX);
+		FileTime modified;
+		try {
+			modified = Files.getLastModifiedTime(heartbeat);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		if (now - modified.toMillis() > heartbeatTimeoutMillis)
+			return false;
+		Optional<ProcessHandle> process = ProcessHandle.of(pid(workerId));
+		return process.isPresent() && process.get().isAlive();
+	}
+
+	/**
+	 * Identifikátor workeru pro aktuální proces -- PID a náhodná přípona proti opakovanému použití PID
+	 */
+	public static String newWorkerId() {
+		return ProcessHandle.current().pid() + "-"
+				+ Integer.toHexString(ThreadLocalRandom.current().nextInt(0x1000000));
+	}
+
+	private static long pid(String workerId) {
+		int dash = workerId.indexOf('-');
+		try {
+			return Long.parseLong(dash < 0 ? workerId : workerId.substring(0, dash));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return {@code true}, pokud žádná úloha nečeká ani neběží
+	 */
+	public boolean isFinished() throws IOException {
+		return locked(() -> list(PENDING).isEmpty() && list(CLAIMED).isEmpty());
+	}
+
+	public List<Entry> getDone() throws IOException {
+		return entries(DONE);
+	}
+
+	public List<Entry> getFailed() throws IOException {
+		return entries(FAILED);
+	}
+
+	private List<Entry> entries(String state) throws IOException {
+		return locked(() -> {
+			List<Entry> entries = new ArrayList<>();
+			for (Path file : list(state))
+				entries.add(read(jobId(file), file));
+			return entries;
+		});
+	}
+
+	/**
+	 * @return soubory úloh ve stavu seřazené podle čísla úlohy
+	 */
+	private List<Path> list(String state) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.resolve(state), "*" + JOB_SUFFIX)) {
+			for (Path file : stream)
+				files.add(file);
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private static String jobId(Path file) {
+		String name = file.getFileName().toString();
+		int end = name.indexOf(OWNER_SEPARATOR);
+		return name.substring(0, end < 0 ? name.length() - JOB_SUFFIX.length() : end);
+	}
+
+	/**
+	 * Soubor úlohy: řádek úlohy ve formátu {@link BatchJob#format()}, pak řádky {@code klíč -tabulátor- hodnota}
+	 */
+	private static void write(Path file, Entry entry) throws IOException {
+		StringBuilder sb = new StringBuilder(entry.job.format()).append('\n');
+		sb.append("pokusy\t").append(entry.attempts).append('\n');
+		if (entry.durationMillis > 0)
+			sb.append("doba\t").append(entry.durationMillis).append('\n');
+		if (entry.error != null)
+			sb.append("chyba\t").append(entry.error.replace('\n', ' ')).append('\n');
+		// zapisuje se vedle a přesouvá, soubor s příponou .job je vždy celý
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static Entry read(String id, Path file) throws IOException {
+		List<String> lines = Files.readAllLines(file);
+		if (lines.isEmpty())
+			throw new IllegalStateException("Prázdný soubor úlohy: " + file);
+		BatchJob job = BatchJob.parse(lines.get(0), file.getParent());
+		int attempts = 0;
+		long durationMillis = 0;
+		String error = null;
+		for (String line : lines.subList(1, lines.size())) {
+			int tab = line.indexOf('\t');
+			if (tab < 0)
+				continue;
+			String value = line.substring(tab + 1);
+			switch (line.substring(0, tab)) {
+			case "pokusy":
+				attempts = Integer.parseInt(value);
+				break;
+			case "doba":
+				durationMillis = Long.parseLong(value);
+				break;
+			case "chyba":
+				error = value;
+				break;
+			default:
+				break;
+			}
+		}
+		return new Entry(id, job, attempts, durationMillis, error);
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return locked(() -> "fronta " + dir + ": čeká " + list(PENDING).size() + ", běží "
+					+ list(CLAIMED).size() + ", hotovo " + list(DONE).size() + ", chyb " + list(FAILED).size());
+		} catch (IOException e) {
+			return "fronta " + dir + ": " + e.getMessage();
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cz.gattserver.tulaci.calendar.BatchRunner.BatchResult;
+
+/**
+ * Dávka kalendářů v jednom JVM
+ *
+ * @author gattaka
+ *
+ */
+public class BatchRunnerTest {
+
+	private Path dataDir;
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+		dir = Files.createTempDirectory("tulaci-davka");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+		TestInputs.delete(dir);
+	}
+
+	@Test
+	public void readsJobsRelativeToList() throws Exception {
+		Path list = dir.resolve("ulohy.txt");
+		Files.write(list, ("# oddíly\n2019\tdata\tvystup/k2019.xls\n\n2020\t" + dataDir + "\tk2020.xlsx\n")
+				.getBytes(StandardCharsets.UTF_8));
+
+		List<BatchJob> jobs = BatchJob.readJobs(list);
+		assertEquals(2, jobs.size());
+		assertEquals(2019, jobs.get(0).getYear());
+		assertEquals(dir.resolve("data"), jobs.get(0).getInputDir());
+		assertEquals(dir.resolve("vystup").resolve("k2019.xls"), jobs.get(0).getOutput());
+		assertEquals(OutputFormat.XLS, jobs.get(0).getOutputFormat());
+		assertEquals(dataDir, jobs.get(1).getInputDir());
+		assertEquals(OutputFormat.XLSX, jobs.get(1).getOutputFormat());
+		// zápis do fronty workerů se přečte zpět stejně
+		assertEquals(jobs.get(1).format(), BatchJob.parse(jobs.get(1).format(), dir).format());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsMalformedLine() {
+		BatchJob.parse("2019 data vystup.xls", dir);
+	}
+
+	@Test
+	public void runsJobsInParallelAndKeepsGoingAfterFailure() throws Exception {
+		List<BatchJob> jobs = Arrays.asList(new BatchJob(2019, dataDir, dir.resolve("k2019.xls")),
+				new BatchJob(2020, dir.resolve("neexistuje"), dir.resolve("chyba.xls")),
+				new BatchJob(2020, dataDir, dir.resolve("k2020.xlsx")));
+
+		List<BatchResult> results = new BatchRunner(2).run(jobs);
+
+		assertEquals(3, results.size());
+		for (int i = 0; i < jobs.size(); i++)
+			assertEquals(jobs.get(i), results.get(i).getJob());
+		assertTrue(results.get(0).isSuccess());
+		assertFalse(results.get(1).isSuccess());
+		assertTrue(results.get(2).isSuccess());
+		assertFalse(Files.exists(dir.resolve("chyba.xls")));
+
+		// souběžné sestavení dá stejný sešit jako samostatné
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setYearOverride(2019);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		builder.build(expected);
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(dir.resolve("k2019.xls")));
+		try (Workbook workbook = WorkbookFactory.create(dir.resolve("k2020.xlsx").toFile())) {
+			assertEquals(14, workbook.getNumberOfSheets());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsZeroThreads() {
+		new BatchRunner(0);
+	}
+
+}
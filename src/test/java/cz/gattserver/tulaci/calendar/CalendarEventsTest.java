@@ -0,0 +1,107 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Události JFR jednotlivých fází generování
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarEventsTest {
+
+	private static final String PREFIX = "cz.gattserver.tulaci.calendar.";
+
+	private Path dataDir;
+	private Path output;
+	private Path recordingFile;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+		output = dataDir.resolve("vystup").resolve("kalendar.xls");
+		recordingFile = dataDir.resolve("zaznam.jfr");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	private Map<String, List<RecordedEvent>> record(CalendarBuilder builder) throws Exception {
+		try (Recording recording = new Recording()) {
+			for (String name : new String[] { "InputFile", "PhotoLoad", "PhotoEmbed", "SheetLayout", "SheetBuild",
+					"WorkbookWrite" })
+				recording.enable(PREFIX + name).withThreshold(Duration.ZERO);
+			recording.start();
+			builder.build();
+			recording.stop();
+			recording.dump(recordingFile);
+		}
+		Map<String, List<RecordedEvent>> events = new HashMap<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+			String name = event.getEventType().getName();
+			if (name.startsWith(PREFIX))
+				events.computeIfAbsent(name.substring(PREFIX.length()), n -> new ArrayList<>()).add(event);
+		}
+		return events;
+	}
+
+	private static List<RecordedEvent> of(Map<String, List<RecordedEvent>> events, String name) {
+		return events.getOrDefault(name, new ArrayList<>());
+	}
+
+	@Test
+	public void buildEmitsEventForEachPhase() throws Exception {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setOutputFile(output);
+		Map<String, List<RecordedEvent>> events = record(builder);
+
+		Set<String> kinds = new HashSet<>();
+		for (RecordedEvent event : of(events, "InputFile")) {
+			kinds.add(event.getString("kind"));
+			assertTrue(event.getInt("lines") >= 0);
+		}
+		assertEquals(6, kinds.size());
+		assertTrue(kinds.contains("fotky"));
+
+		List<RecordedEvent> photoLoads = of(events, "PhotoLoad");
+		assertEquals(ReferenceDataRegistry.SHEET_COUNT, photoLoads.size());
+		Set<Integer> sheets = new HashSet<>();
+		for (RecordedEvent event : photoLoads) {
+			sheets.add(event.getInt("sheetNo"));
+			assertTrue(event.getLong("bytes") > 0);
+		}
+		assertEquals(ReferenceDataRegistry.SHEET_COUNT, sheets.size());
+
+		assertEquals(ReferenceDataRegistry.SHEET_COUNT, of(events, "SheetLayout").size());
+		assertEquals(ReferenceDataRegistry.SHEET_COUNT, of(events, "SheetBuild").size());
+		assertEquals(ReferenceDataRegistry.SHEET_COUNT, of(events, "PhotoEmbed").size());
+
+		List<RecordedEvent> writes = of(events, "WorkbookWrite");
+		assertEquals(1, writes.size());
+		assertEquals(OutputFormat.XLS.name(), writes.get(0).getString("format"));
+		assertEquals(Files.size(output), writes.get(0).getLong("bytes"));
+	}
+
+}
@@ -0,0 +1,68 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+import org.junit.Test;
+
+/**
+ * Mřížka měsíce proti {@link LocalDate}
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarGridTest {
+
+	@Test
+	public void matchesJavaTimeFrom1600To2600() {
+		for (int year = 1600; year <= 2600; year++) {
+			for (int month = 1; month <= 12; month++) {
+				CalendarGrid grid = CalendarGrid.of(year, month);
+				YearMonth yearMonth = YearMonth.of(year, month);
+				assertEquals(yearMonth.toString(), yearMonth.lengthOfMonth(), grid.getDayCount());
+
+				int lastRow = 0;
+				for (int day = 1; day <= grid.getDayCount(); day++) {
+					LocalDate date = yearMonth.atDay(day);
+					String label = date.toString();
+					DayOfWeek dayOfWeek = date.getDayOfWeek();
+					assertEquals(label, dayOfWeek.getValue() - 1, grid.getWeekday(day));
+					assertEquals(label, dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY,
+							grid.isWeekend(day));
+					// pořadí dne počítá s 29. 2. jen v přestupném roce
+					assertEquals(label, date.getDayOfYear(), grid.getDayOfYear(day));
+					assertEquals(label, day, grid.getDay(grid.getWeekRow(day), grid.getWeekday(day)));
+					lastRow = grid.getWeekRow(day);
+				}
+				assertEquals(yearMonth.toString(), lastRow + 1, grid.getWeekCount());
+			}
+		}
+	}
+
+	@Test
+	public void cellsOutsideMonthAreEmpty() {
+		// březen 2019 začíná v pátek
+		CalendarGrid grid = CalendarGrid.of(2019, 3);
+		assertEquals(0, grid.getDay(0, 0));
+		assertEquals(0, grid.getDay(0, 3));
+		assertEquals(1, grid.getDay(0, 4));
+		assertEquals(31, grid.getDay(4, 6));
+		assertEquals(0, grid.getDay(5, 0));
+		assertEquals(5, grid.getWeekCount());
+	}
+
+	@Test
+	public void gridsAreShared() {
+		assertSame(CalendarGrid.of(2020, 2), CalendarGrid.of(2020, 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidMonth() {
+		CalendarGrid.of(2020, 13);
+	}
+
+}
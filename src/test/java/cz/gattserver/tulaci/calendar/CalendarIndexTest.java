@@ -0,0 +1,133 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Index dnů v roce -- narozeniny a svátky
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarIndexTest {
+
+	@Test
+	public void leapYears() {
+		assertTrue(CalendarIndex.isLeapYear(2020));
+		assertTrue(CalendarIndex.isLeapYear(2000));
+		assertFalse(CalendarIndex.isLeapYear(2019));
+		assertFalse(CalendarIndex.isLeapYear(1900));
+	}
+
+	@Test
+	public void monthLengths() {
+		assertEquals(31, CalendarIndex.monthLength(2019, 1));
+		assertEquals(28, CalendarIndex.monthLength(2019, 2));
+		assertEquals(29, CalendarIndex.monthLength(2020, 2));
+		assertEquals(30, CalendarIndex.monthLength(2019, 4));
+		assertEquals(31, CalendarIndex.monthLength(2019, 12));
+	}
+
+	@Test
+	public void dayIndexKeepsSlotForLeapDay() {
+		assertEquals(0, CalendarIndex.dayIndex(1, 1));
+		assertEquals(59, CalendarIndex.dayIndex(2, 29));
+		assertEquals(60, CalendarIndex.dayIndex(3, 1));
+		assertEquals(CalendarIndex.DAYS - 1, CalendarIndex.dayIndex(12, 31));
+	}
+
+	@Test
+	public void parsesBirthdayDate() {
+		assertArrayEquals(new int[] { 6, 6, 2008 }, CalendarIndex.parseBirthdayDate("Vašek B.\t6.6.2008"));
+		assertArrayEquals(new int[] { 29, 2, 2000 }, CalendarIndex.parseBirthdayDate("Jana\t29.2.2000"));
+	}
+
+	@Test
+	public void rejectsNonexistentBirthdayDate() {
+		assertNull(CalendarIndex.parseBirthdayDate("Jana\t31.4.2000"));
+		assertNull(CalendarIndex.parseBirthdayDate("Jana\t29.2.2001"));
+		assertNull(CalendarIndex.parseBirthdayDate("Jana\t0.1.2000"));
+		assertNull(CalendarIndex.parseBirthdayDate("Jana\t1.13.2000"));
+	}
+
+	@Test
+	public void rejectsMalformedBirthdayLine() {
+		assertNull(CalendarIndex.parseBirthdayDate("Jana 6.6.2008"));
+		assertNull(CalendarIndex.parseBirthdayDate("Jana\t6.6.2008\tnavíc"));
+		assertNull(CalendarIndex.parseBirthdayDate("Jana\t6.6.08"));
+	}
+
+	@Test
+	public void ignoresTrailingTabs() {
+		assertEquals("Jana\t6.6.2008", CalendarIndex.stripTrailingTabs("Jana\t6.6.2008\t\t"));
+		assertArrayEquals(new int[] { 6, 6, 2008 },
+				CalendarIndex.parseBirthdayDate(CalendarIndex.stripTrailingTabs("Jana\t6.6.2008\t")));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void addBirthdaysFailsOnInvalidDate() {
+		new CalendarIndex(2019).addBirthdays(Collections.singletonList("Jana\t31.4.2000"));
+	}
+
+	@Test
+	public void birthdaysKeepFileOrderAndAge() {
+		CalendarIndex index = new CalendarIndex(2019);
+		index.addBirthdays(Arrays.asList("Vašek B.\t6.6.2008", "Jana\t1.1.1990", "Petr\t6.6.2010"));
+
+		assertEquals(3, index.getBirthdayCount());
+		int entry = index.firstBirthday(6, 6);
+		assertEquals("Vašek B. (11)", index.getBirthdayLabel(entry));
+		entry = index.nextBirthday(entry);
+		assertEquals("Petr (9)", index.getBirthdayLabel(entry));
+		assertEquals(-1, index.nextBirthday(entry));
+		assertEquals("Jana (29)", index.getBirthdayLabel(index.firstBirthday(1, 1)));
+		assertEquals(-1, index.firstBirthday(1, 2));
+	}
+
+	@Test
+	public void leapDayBirthdayMovesInCommonYear() {
+		CalendarIndex common = new CalendarIndex(2019);
+		common.addBirthdays(Collections.singletonList("Jana\t29.2.2000"));
+		assertEquals("Jana (19)", common.getBirthdayLabel(common.firstBirthday(2, 28)));
+		assertEquals(-1, common.firstBirthday(2, 29));
+
+		CalendarIndex leap = new CalendarIndex(2020);
+		leap.addBirthdays(Collections.singletonList("Jana\t29.2.2000"));
+		assertEquals("Jana (20)", leap.getBirthdayLabel(leap.firstBirthday(2, 29)));
+		assertEquals(-1, leap.firstBirthday(2, 28));
+	}
+
+	@Test
+	public void nameDays() {
+		NameDayTable table = NameDayTable
+				.parse(Arrays.asList("1.1.\tNový rok", "17.1.\tDrahoslav\t", "29.2.\tHorymír"));
+		CalendarIndex index = new CalendarIndex(2019);
+		index.setNameDays(table);
+
+		assertEquals(3, table.getLineCount());
+		assertEquals("Drahoslav", index.getNameDay(1, 17));
+		assertEquals("Horymír", index.getNameDay(2, 29));
+		assertNull(index.getNameDay(1, 2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void nameDaysFailOnInvalidDate() {
+		NameDayTable.parse(Collections.singletonList("31.4.\tNikdo"));
+	}
+
+	@Test
+	public void nameDayLineFormat() {
+		assertEquals(CalendarIndex.dayIndex(1, 17), NameDayTable.parseDayIndex("17.1.\tDrahoslav"));
+		assertEquals(-1, NameDayTable.parseDayIndex("17.1. Drahoslav"));
+		assertEquals(-1, NameDayTable.parseDayIndex("17.1.2019\tDrahoslav"));
+	}
+
+}
@@ -0,0 +1,162 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Server kalendářů na náhodném portu a klient proti localhostu
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarServerTest {
+
+	private Path rootDir;
+	private CalendarServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		rootDir = Files.createTempDirectory("tulaci-server");
+		Files.move(TestInputs.create(), rootDir.resolve("tulaci"));
+		Path broken = rootDir.resolve("rozbity");
+		Files.move(TestInputs.create(), broken);
+		Files.delete(broken.resolve("popisky.txt"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (server != null)
+			server.stop();
+		TestInputs.delete(rootDir);
+	}
+
+	private void start(long outputCacheBytes) throws IOException {
+		server = new CalendarServer(rootDir, null, outputCacheBytes);
+		server.start(0);
+	}
+
+	private HttpURLConnection get(String query) throws IOException {
+		URL url = new URL("http://localhost:" + server.getPort() + query);
+		return (HttpURLConnection) url.openConnection();
+	}
+
+	private static byte[] body(HttpURLConnection connection) throws IOException {
+		try (InputStream is = connection.getResponseCode() < 400 ? connection.getInputStream()
+				: connection.getErrorStream()) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			is.transferTo(bytes);
+			return bytes.toByteArray();
+		}
+	}
+
+	private static byte[] expectedWorkbook(Path dataDir) throws Exception {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setPhotoProcessor(null);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		builder.build(bytes);
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void servesCalendarAndCachesIt() throws Exception {
+		start(CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES);
+
+		HttpURLConnection first = get("/kalendar?oddil=tulaci");
+		assertEquals(200, first.getResponseCode());
+		assertEquals("MISS", first.getHeaderField("X-Cache"));
+		assertEquals("application/vnd.ms-excel", first.getContentType());
+		assertTrue(first.getHeaderField("Content-Disposition").contains("kalend%C3%A1%C5%99%202019.xls"));
+		byte[] data = body(first);
+		assertArrayEquals(expectedWorkbook(rootDir.resolve("tulaci")), data);
+
+		HttpURLConnection second = get("/kalendar?oddil=tulaci");
+		assertEquals(200, second.getResponseCode());
+		assertEquals("HIT", second.getHeaderField("X-Cache"));
+		assertArrayEquals(data, body(second));
+		assertEquals(1, server.getOutputCache().getEntryCount());
+
+		// jiný rok je jiný kalendář
+		HttpURLConnection other = get("/kalendar?oddil=tulaci&rok=2020");
+		assertEquals(200, other.getResponseCode());
+		assertEquals("MISS", other.getHeaderField("X-Cache"));
+		body(other);
+	}
+
+	@Test
+	public void changedInputMissesCache() throws Exception {
+		start(CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES);
+		body(get("/kalendar?oddil=tulaci"));
+
+		Path captions = rootDir.resolve("tulaci").resolve("popisky.txt");
+		List<String> lines = new ArrayList<>(Files.readAllLines(captions));
+		lines.set(0, "Jiný popisek");
+		Files.write(captions, lines);
+		HttpURLConnection changed = get("/kalendar?oddil=tulaci");
+		assertEquals(200, changed.getResponseCode());
+		assertEquals("MISS", changed.getHeaderField("X-Cache"));
+		body(changed);
+	}
+
+	@Test
+	public void streamsWithoutCache() throws Exception {
+		start(0);
+		HttpURLConnection connection = get("/kalendar?oddil=tulaci&format=xlsx");
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("OFF", connection.getHeaderField("X-Cache"));
+		assertEquals("chunked", connection.getHeaderField("Transfer-Encoding"));
+		byte[] data = body(connection);
+		// xlsx je zip
+		assertEquals('P', data[0]);
+		assertEquals('K', data[1]);
+	}
+
+	@Test
+	public void rejectsBadRequests() throws Exception {
+		start(CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES);
+		assertEquals(400, get("/kalendar").getResponseCode());
+		assertEquals(400, get("/kalendar?oddil=tulaci&rok=dvacet").getResponseCode());
+		assertEquals(400, get("/kalendar?oddil=tulaci&format=pdf").getResponseCode());
+		assertEquals(404, get("/kalendar?oddil=neznamy").getResponseCode());
+		assertEquals(404, get("/kalendar?oddil=..%2F" + rootDir.getFileName()).getResponseCode());
+
+		HttpURLConnection post = get("/kalendar?oddil=tulaci");
+		post.setRequestMethod("POST");
+		assertEquals(405, post.getResponseCode());
+		assertEquals("GET", post.getHeaderField("Allow"));
+	}
+
+	@Test
+	public void reportsInputErrors() throws Exception {
+		start(CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES);
+		HttpURLConnection connection = get("/kalendar?oddil=rozbity");
+		assertEquals(422, connection.getResponseCode());
+		assertTrue(new String(body(connection), StandardCharsets.UTF_8).contains("popisky.txt"));
+		assertEquals(0, server.getOutputCache().getEntryCount());
+	}
+
+	@Test
+	public void reportsStatus() throws Exception {
+		start(CalendarServer.DEFAULT_OUTPUT_CACHE_BYTES);
+		HttpURLConnection connection = get("/stav");
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(new String(body(connection), StandardCharsets.UTF_8).contains("cache kalendářů"));
+	}
+
+}
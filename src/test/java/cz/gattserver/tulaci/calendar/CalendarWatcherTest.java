@@ -0,0 +1,126 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sledování adresáře -- sloučení dávky změn do jednoho sestavení
+ *
+ * @author gattaka
+ *
+ */
+public class CalendarWatcherTest {
+
+	private static final long DEBOUNCE_MILLIS = 300;
+
+	private Path dataDir;
+	private Thread thread;
+	private final BlockingQueue<Long> builds = new LinkedBlockingQueue<>();
+
+	/**
+	 * Místo sestavení jen zaznamená, kdy proběhlo
+	 */
+	private class RecordingBuilder extends CalendarBuilder {
+
+		@Override
+		public void build() throws IOException {
+			builds.add(System.nanoTime());
+		}
+
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = Files.createTempDirectory("watcher");
+		Files.createDirectory(dataDir.resolve("fotky"));
+
+		CalendarBuilder builder = new RecordingBuilder();
+		builder.setDataDir(dataDir);
+		CalendarWatcher watcher = new CalendarWatcher(builder);
+		watcher.setDebounceMillis(DEBOUNCE_MILLIS);
+		thread = new Thread(() -> {
+			try {
+				watcher.run();
+			} catch (InterruptedException e) {
+				// konec testu
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+
+		assertNotNull("Úvodní sestavení neproběhlo", builds.poll(5, TimeUnit.SECONDS));
+		// registrace proběhla před úvodním sestavením, na sledování už se čekat nemusí
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		thread.interrupt();
+		thread.join(5000);
+		TestInputs.delete(dataDir);
+	}
+
+	private void write(String name) throws IOException {
+		Files.write(dataDir.resolve(name), Collections.singletonList(name));
+	}
+
+	@Test
+	public void burstOfChangesBuildsOnce() throws Exception {
+		long lastChange = 0;
+		for (int i = 0; i < 5; i++) {
+			write("popisky.txt");
+			write("fotky/" + i + ".jpg");
+			lastChange = System.nanoTime();
+			Thread.sleep(DEBOUNCE_MILLIS / 5);
+		}
+
+		Long build = builds.poll(5, TimeUnit.SECONDS);
+		assertNotNull("Změna nevyvolala sestavení", build);
+		assertTrue("Sestavení začalo před uplynutím prodlevy",
+				build - lastChange >= TimeUnit.MILLISECONDS.toNanos(DEBOUNCE_MILLIS));
+		assertNull("Dávka změn vyvolala více sestavení", builds.poll(3 * DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void separateChangesBuildSeparately() throws Exception {
+		write("svatky.txt");
+		assertNotNull(builds.poll(5, TimeUnit.SECONDS));
+		write("narozeniny.txt");
+		assertNotNull(builds.poll(5, TimeUnit.SECONDS));
+		assertNull(builds.poll(3 * DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void ignoresOutputsAndHiddenFiles() throws Exception {
+		write(".kalendar.tmp");
+		write("kalendar" + OutputFormat.XLS.getExtension());
+		write("kalendar" + OutputFormat.XLSX.getExtension());
+		write("kalendar" + ContentManifest.EXTENSION);
+		write("popisky.txt~");
+		Files.createDirectory(dataDir.resolve(".cache"));
+		write(".cache/obrazek");
+
+		assertNull("Výstupy a skryté soubory vyvolaly sestavení",
+				builds.poll(3 * DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS));
+
+		write("popisky.txt");
+		assertNotNull(builds.poll(5, TimeUnit.SECONDS));
+		assertEquals(0, builds.size());
+	}
+
+}
@@ -0,0 +1,127 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Parametry příkazové řádky a návratové kódy
+ *
+ * @author gattaka
+ *
+ */
+public class CliMainTest {
+
+	private PrintStream originalOut;
+	private PrintStream originalErr;
+	private ByteArrayOutputStream out;
+	private ByteArrayOutputStream err;
+
+	@Before
+	public void setUp() throws Exception {
+		originalOut = System.out;
+		originalErr = System.err;
+		out = new ByteArrayOutputStream();
+		err = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(out, true, "UTF-8"));
+		System.setErr(new PrintStream(err, true, "UTF-8"));
+	}
+
+	@After
+	public void tearDown() {
+		System.setOut(originalOut);
+		System.setErr(originalErr);
+	}
+
+	private String err() {
+		return new String(err.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private void assertUsage(String message, String... args) {
+		assertEquals(CliMain.EXIT_USAGE, CliMain.run(args));
+		assertTrue(err(), err().startsWith(message));
+		assertTrue(err().contains("Použití:"));
+		err.reset();
+	}
+
+	@Test
+	public void helpListsEveryMode() {
+		assertEquals(CliMain.EXIT_OK, CliMain.run(new String[] { "--help" }));
+		String usage = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		for (String option : new String[] { "--batch", "--processes", "--worker", "--server", "--output-cache",
+				"--watch", "--check", "--incremental", "--direct", "--deterministic", "--pages" })
+			assertTrue(option, usage.contains(option));
+	}
+
+	@Test
+	public void rejectsBadArguments() {
+		assertUsage("Chybí adresář s daty");
+		assertUsage("Neznámý přepínač: --rychle", "data", "--rychle");
+		assertUsage("Za --dpi chybí hodnota", "data", "--dpi");
+		assertUsage("Hodnota 'hodně' pro --threads musí být celé číslo", "--batch", "ulohy.txt", "--threads",
+				"hodně");
+		assertUsage("Hodnota pro --processes musí být kladná, je: 0", "--batch", "ulohy.txt", "--processes", "0");
+		assertUsage("Přebytečný parametr: navic", "data", "2020", "k.xls", "navic");
+	}
+
+	@Test
+	public void rejectsOptionsIgnoredByBatch() {
+		assertUsage("Přepínač --incremental nejde použít s --batch", "--batch", "ulohy.txt", "--incremental");
+		assertUsage("Přepínač --deterministic nejde použít s --batch", "--batch", "ulohy.txt", "--threads", "2",
+				"--deterministic");
+		assertUsage("Přepínač --dpi nejde použít s --batch --processes", "--batch", "ulohy.txt", "--processes", "2",
+				"--dpi", "150");
+		assertUsage("Přepínač --threads nejde použít s --batch --processes", "--batch", "ulohy.txt", "--processes",
+				"2", "--threads", "2");
+		assertUsage("Přepínač --queue nejde použít s --batch", "--batch", "ulohy.txt", "--queue", "fronta");
+		assertUsage("Přebytečný parametr: data", "--batch", "ulohy.txt", "data");
+		assertUsage("Přepínač --direct nejde použít s --worker", "--worker", "fronta", "--direct");
+	}
+
+	@Test
+	public void rejectsOptionsIgnoredByServerAndSingleCalendar() {
+		assertUsage("Přepínač --incremental nejde použít s --server", "data", "--server", "0", "--incremental");
+		assertUsage("Přepínač --threads platí jen pro dávku nebo server", "data", "--threads", "2");
+		assertUsage("Přepínač --output-cache platí jen pro dávku nebo server", "data", "--output-cache", "0");
+		assertUsage("Přepínač --direct vyžaduje výstupní soubor .xlsx", "data", "2020", "k.xls", "--direct");
+	}
+
+	@Test
+	public void checkReportsInputErrors() throws Exception {
+		Path dataDir = TestInputs.create();
+		try {
+			assertEquals(CliMain.EXIT_OK, CliMain.run(new String[] { dataDir.toString(), "--check" }));
+			Files.delete(dataDir.resolve("popisky.txt"));
+			assertEquals(CliMain.EXIT_FAILURE, CliMain.run(new String[] { dataDir.toString(), "--check" }));
+			assertTrue(err(), err().contains("popisky.txt: Soubor neexistuje"));
+		} finally {
+			TestInputs.delete(dataDir);
+		}
+	}
+
+	@Test
+	public void buildFailureIsNotUsageError() throws Exception {
+		Path dataDir = TestInputs.create();
+		try {
+			Files.delete(dataDir.resolve("data.txt"));
+			Path output = dataDir.resolve("kalendar.xls");
+			assertEquals(CliMain.EXIT_FAILURE, CliMain.run(new String[] { dataDir.toString(), "2020",
+					output.toString() }));
+			assertTrue(err(), err().startsWith("Generování kalendáře selhalo"));
+			assertFalse(err().contains("Použití:"));
+		} finally {
+			TestInputs.delete(dataDir);
+		}
+	}
+
+}
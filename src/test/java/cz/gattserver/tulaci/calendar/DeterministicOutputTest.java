@@ -0,0 +1,119 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Deterministický výstup a otisky listů
+ *
+ * @author gattaka
+ *
+ */
+public class DeterministicOutputTest {
+
+	private Path dataDir;
+	private Path outputDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+		outputDir = Files.createTempDirectory("tulaci-test");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+		TestInputs.delete(outputDir);
+	}
+
+	private ContentManifest build(String fileName, boolean deterministic) throws Exception {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		Path output = outputDir.resolve(fileName);
+		builder.setOutputFile(output);
+		builder.setOutputFormat(OutputFormat.forFile(output));
+		builder.setDeterministic(deterministic);
+		builder.build();
+		return builder.getContentManifest();
+	}
+
+	private void assertSameBuilds(String extension) throws Exception {
+		ContentManifest first = build("a" + extension, true);
+		// časové značky by se lišily nejméně o sekundu
+		Thread.sleep(1100);
+		ContentManifest second = build("b" + extension, true);
+
+		assertArrayEquals(Files.readAllBytes(outputDir.resolve("a" + extension)),
+				Files.readAllBytes(outputDir.resolve("b" + extension)));
+		assertArrayEquals(Files.readAllBytes(ContentManifest.pathFor(outputDir.resolve("a" + extension))),
+				Files.readAllBytes(ContentManifest.pathFor(outputDir.resolve("b" + extension))));
+		assertEquals(first.getHashes(), second.getHashes());
+		assertTrue(second.changedSheets(first).isEmpty());
+		assertEquals(first.getHashes(),
+				ContentManifest.read(ContentManifest.pathFor(outputDir.resolve("a" + extension))).getHashes());
+	}
+
+	@Test
+	public void xlsBuildsAreIdentical() throws Exception {
+		assertSameBuilds(".xls");
+	}
+
+	@Test
+	public void xlsxBuildsAreIdentical() throws Exception {
+		assertSameBuilds(".xlsx");
+	}
+
+	@Test
+	public void manifestDoesNotDependOnFormat() throws Exception {
+		assertEquals(build("a.xls", true).getHashes(), build("a.xlsx", true).getHashes());
+	}
+
+	@Test
+	public void changedLineChangesOneSheet() throws Exception {
+		ContentManifest before = build("a.xls", true);
+		Path captions = dataDir.resolve("popisky.txt");
+		List<String> lines = new ArrayList<>(Files.readAllLines(captions));
+		lines.set(0, "Jiný popisek");
+		Files.write(captions, lines);
+		ContentManifest after = build("a.xls", true);
+
+		List<String> changed = after.changedSheets(before);
+		assertEquals(1, changed.size());
+		int sheetNo = after.getSheetNames().indexOf(changed.get(0));
+		for (int i = 0; i < after.getHashes().size(); i++)
+			assertEquals(i == sheetNo, !after.getHashes().get(i).equals(before.getHashes().get(i)));
+	}
+
+	@Test
+	public void nonDeterministicBuildRemovesStaleManifest() throws Exception {
+		build("a.xls", true);
+		assertTrue(Files.exists(ContentManifest.pathFor(outputDir.resolve("a.xls"))));
+		build("a.xls", false);
+		assertFalse(Files.exists(ContentManifest.pathFor(outputDir.resolve("a.xls"))));
+	}
+
+	@Test
+	public void changedSheetsCoverAddedAndRemovedSheets() {
+		ContentManifest previous = new ContentManifest(Arrays.asList("Leden", "Únor", "Březen"),
+				Arrays.asList("1", "2", "3"));
+		ContentManifest current = new ContentManifest(Arrays.asList("Leden", "Duben", "Únor"),
+				Arrays.asList("1", "4", "5"));
+
+		assertEquals(Arrays.asList("Duben", "Únor", "Březen"), current.changedSheets(previous));
+		assertEquals(Arrays.asList("Únor", "Březen", "Duben"), previous.changedSheets(current));
+		assertTrue(current.changedSheets(current).isEmpty());
+	}
+
+}
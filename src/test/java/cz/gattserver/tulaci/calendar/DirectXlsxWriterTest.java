@@ -0,0 +1,126 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.ClientAnchor;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Picture;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Shape;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFDrawing;
+import org.apache.poi.xssf.usermodel.XSSFShape;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Přímý zápis SpreadsheetML musí dát stejný sešit jako POI (SXSSF)
+ *
+ * @author gattaka
+ *
+ */
+public class DirectXlsxWriterTest {
+
+	private static Path dataDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		dataDir = TestInputs.create();
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	private static byte[] build(OutputFormat format) throws Exception {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setOutputFormat(format);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		builder.build(bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Obsah sešitu po řádcích: buňky s hodnotou a vlastnostmi stylu, šířky sloupců, sloučené oblasti a ukotvení
+	 * fotek
+	 */
+	private static List<String> describe(byte[] data) throws Exception {
+		List<String> lines = new ArrayList<>();
+		try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(data))) {
+			for (Sheet sheet : workbook) {
+				lines.add("list " + sheet.getSheetName());
+				for (int col = 0; col < 12; col++)
+					lines.add("sloupec " + col + " " + sheet.getColumnWidth(col));
+				lines.add("výchozí výška " + sheet.getDefaultRowHeightInPoints());
+				for (Row row : sheet) {
+					lines.add("řádek " + row.getRowNum() + " " + row.getHeightInPoints());
+					for (Cell cell : row)
+						lines.add(cell.getAddress() + " " + value(cell) + " " + style(workbook, cell.getCellStyle()));
+				}
+				List<String> regions = new ArrayList<>();
+				for (CellRangeAddress region : sheet.getMergedRegions())
+					regions.add(region.formatAsString());
+				regions.sort(null);
+				lines.add("sloučeno " + regions);
+				XSSFDrawing drawing = (XSSFDrawing) sheet.getDrawingPatriarch();
+				if (drawing != null)
+					for (XSSFShape shape : drawing.getShapes())
+						lines.add(picture((Picture) (Shape) shape));
+			}
+		}
+		return lines;
+	}
+
+	private static String value(Cell cell) {
+		switch (cell.getCellTypeEnum()) {
+		case NUMERIC:
+			return "=" + cell.getNumericCellValue();
+		case STRING:
+			return "'" + cell.getStringCellValue() + "'";
+		default:
+			return cell.getCellTypeEnum().toString();
+		}
+	}
+
+	private static String style(Workbook workbook, CellStyle style) {
+		Font font = workbook.getFontAt(style.getFontIndex());
+		return font.getFontName() + "/" + font.getFontHeightInPoints() + (font.getBold() ? "/b" : "")
+				+ (font.getItalic() ? "/i" : "") + "/" + font.getColor() + " " + style.getAlignmentEnum() + "/"
+				+ style.getVerticalAlignmentEnum() + (style.getWrapText() ? "/wrap" : "") + " "
+				+ style.getBorderTopEnum() + "/" + style.getBorderBottomEnum() + "/" + style.getBorderLeftEnum()
+				+ "/" + style.getBorderRightEnum() + " " + style.getFillPatternEnum() + "/"
+				+ style.getFillForegroundColor();
+	}
+
+	private static String picture(Picture picture) {
+		ClientAnchor anchor = picture.getClientAnchor();
+		return "fotka " + picture.getPictureData().getMimeType() + " "
+				+ Arrays.hashCode(picture.getPictureData().getData()) + " " + anchor.getCol1() + "+"
+				+ anchor.getDx1() + "," + anchor.getRow1() + "+" + anchor.getDy1() + " - " + anchor.getCol2() + "+"
+				+ anchor.getDx2() + "," + anchor.getRow2() + "+" + anchor.getDy2();
+	}
+
+	@Test
+	public void matchesPoiOutput() throws Exception {
+		List<String> expected = describe(build(OutputFormat.XLSX));
+		List<String> actual = describe(build(OutputFormat.XLSX_DIRECT));
+		assertEquals(14, expected.stream().filter(line -> line.startsWith("fotka ")).count());
+		assertEquals(String.join("\n", expected), String.join("\n", actual));
+	}
+
+}
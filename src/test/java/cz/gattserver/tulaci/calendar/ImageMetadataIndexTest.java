@@ -0,0 +1,131 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Čtení formátu a rozměrů z hlavičky obrázku
+ *
+ * @author gattaka
+ *
+ */
+public class ImageMetadataIndexTest {
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("metadata");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dir);
+	}
+
+	private Path jpeg(String name, int width, int height) throws Exception {
+		Path file = dir.resolve(name);
+		TestInputs.writePhoto(file, width, height, new Random(1));
+		return file;
+	}
+
+	private Path png(String name, int width, int height) throws Exception {
+		Path file = dir.resolve(name);
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+		return file;
+	}
+
+	@Test
+	public void readsJpegSize() throws Exception {
+		ImageMetadata metadata = ImageMetadataIndex.read(jpeg("a.jpg", 640, 480));
+		assertEquals(ImageMetadata.Format.JPEG, metadata.getFormat());
+		assertEquals(640, metadata.getWidth());
+		assertEquals(480, metadata.getHeight());
+	}
+
+	@Test
+	public void readsPortraitJpeg() throws Exception {
+		ImageMetadata metadata = ImageMetadataIndex.read(jpeg("a.jpg", 300, 500));
+		assertEquals(300, metadata.getWidth());
+		assertEquals(500, metadata.getHeight());
+	}
+
+	@Test
+	public void skipsFillBytesBeforeMarker() throws Exception {
+		Path file = jpeg("a.jpg", 64, 32);
+		byte[] data = Files.readAllBytes(file);
+		// za SOI vložit výplňové 0xFF před značku dalšího segmentu
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(data, 0, 2);
+		out.write(new byte[] { (byte) 0xFF, (byte) 0xFF });
+		out.write(data, 2, data.length - 2);
+		Files.write(file, out.toByteArray());
+
+		ImageMetadata metadata = ImageMetadataIndex.read(file);
+		assertEquals(64, metadata.getWidth());
+		assertEquals(32, metadata.getHeight());
+	}
+
+	@Test
+	public void readsPngSize() throws Exception {
+		ImageMetadata metadata = ImageMetadataIndex.read(png("a.png", 200, 100));
+		assertEquals(ImageMetadata.Format.PNG, metadata.getFormat());
+		assertEquals(200, metadata.getWidth());
+		assertEquals(100, metadata.getHeight());
+	}
+
+	@Test
+	public void truncatedFileHasNoMetadata() throws Exception {
+		Path file = jpeg("a.jpg", 640, 480);
+		byte[] data = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(data, 40));
+		assertNull(ImageMetadataIndex.read(file));
+
+		Path png = png("a.png", 200, 100);
+		Files.write(png, Arrays.copyOf(Files.readAllBytes(png), 20));
+		assertNull(ImageMetadataIndex.read(png));
+	}
+
+	@Test
+	public void otherFilesHaveNoMetadata() throws Exception {
+		Path text = dir.resolve("a.txt");
+		Files.write(text, "Není to obrázek".getBytes("UTF-8"));
+		assertNull(ImageMetadataIndex.read(text));
+
+		Path gif = dir.resolve("a.gif");
+		ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "gif", gif.toFile());
+		assertNull(ImageMetadataIndex.read(gif));
+	}
+
+	@Test
+	public void cachesUntilFileChanges() throws Exception {
+		ImageMetadataIndex index = new ImageMetadataIndex();
+		Path file = jpeg("a.jpg", 640, 480);
+		ImageMetadata first = index.get(file);
+		assertSame(first, index.get(file));
+
+		TestInputs.writePhoto(file, 320, 240, new Random(1));
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+		ImageMetadata second = index.get(file);
+		assertNotSame(first, second);
+		assertEquals(320, second.getWidth());
+		assertEquals(1, index.size());
+	}
+
+}
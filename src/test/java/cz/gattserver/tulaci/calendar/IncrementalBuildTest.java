@@ -0,0 +1,146 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Inkrementální sestavení -- přeskočení nezměněného kalendáře a přestavba jen změněných listů
+ *
+ * @author gattaka
+ *
+ */
+public class IncrementalBuildTest {
+
+	private Path dataDir;
+	private Path output;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+		output = dataDir.resolve("vystup").resolve("kalendar.xls");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	private CalendarBuilder builder() {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setOutputFile(output);
+		builder.setIncremental(true);
+		return builder;
+	}
+
+	private List<Integer> build(CalendarBuilder builder) throws Exception {
+		builder.build();
+		return builder.getRebuiltSheets();
+	}
+
+	private static List<Integer> allSheets() {
+		List<Integer> sheets = new ArrayList<>();
+		for (int sheetNo = 0; sheetNo < ReferenceDataRegistry.SHEET_COUNT; sheetNo++)
+			sheets.add(sheetNo);
+		return sheets;
+	}
+
+	@Test
+	public void unchangedInputsSkipBuild() throws Exception {
+		assertEquals(allSheets(), build(builder()));
+		byte[] first = Files.readAllBytes(output);
+		FileTime written = Files.getLastModifiedTime(output);
+
+		assertEquals(Collections.emptyList(), build(builder()));
+		assertArrayEquals(first, Files.readAllBytes(output));
+		assertEquals(written, Files.getLastModifiedTime(output));
+
+		// jen nový čas změny fotky, obsah stejný
+		Path photo = dataDir.resolve("1.jpg");
+		Files.setLastModifiedTime(photo, FileTime.fromMillis(Files.getLastModifiedTime(photo).toMillis() + 10_000));
+		assertEquals(Collections.emptyList(), build(builder()));
+	}
+
+	@Test
+	public void changedInputRebuildsItsSheet() throws Exception {
+		build(builder());
+		byte[] first = Files.readAllBytes(output);
+
+		Path captions = dataDir.resolve("popisky.txt");
+		List<String> lines = new ArrayList<>(Files.readAllLines(captions));
+		lines.set(0, "Jiný popisek");
+		Files.write(captions, lines);
+		assertEquals(1, build(builder()).size());
+		assertFalse(Arrays.equals(first, Files.readAllBytes(output)));
+
+		TestInputs.writePhoto(dataDir.resolve("2.jpg"), 640, 480, new Random(99));
+		assertEquals(1, build(builder()).size());
+		assertEquals(Collections.emptyList(), build(builder()));
+	}
+
+	@Test
+	public void missingOutputIsRebuilt() throws Exception {
+		build(builder());
+		Files.delete(output);
+		// otisky se nezměnily, ale výstup chybí
+		build(builder());
+		assertTrue(Files.exists(output));
+	}
+
+	@Test
+	public void changedOptionsRebuildEverything() throws Exception {
+		build(builder());
+
+		CalendarBuilder originals = builder();
+		originals.setPhotoProcessor(null);
+		assertEquals(allSheets(), build(originals));
+
+		CalendarBuilder deterministic = builder();
+		deterministic.setPhotoProcessor(null);
+		deterministic.setDeterministic(true);
+		assertEquals(allSheets(), build(deterministic));
+
+		CalendarBuilder otherYear = builder();
+		otherYear.setPhotoProcessor(null);
+		otherYear.setDeterministic(true);
+		otherYear.setYearOverride(2030);
+		assertEquals(allSheets(), build(otherYear));
+	}
+
+	@Test
+	public void cacheKeepsOnlyUsedImages() throws Exception {
+		build(builder());
+		Path cacheDir = IncrementalCache.open(output).getDir();
+		long images = countImages(cacheDir);
+		assertTrue(images > 0);
+
+		// zmenšené fotky z jiného nastavení nahradí původní, staré se smažou
+		CalendarBuilder lowRes = builder();
+		lowRes.setPhotoProcessor(new PhotoProcessor(100, PhotoProcessor.DEFAULT_QUALITY));
+		build(lowRes);
+		assertEquals(images, countImages(cacheDir));
+	}
+
+	private static long countImages(Path cacheDir) throws Exception {
+		try (Stream<Path> files = Files.list(cacheDir)) {
+			return files.filter(file -> file.getFileName().toString().endsWith(".img")).count();
+		}
+	}
+
+}
@@ -0,0 +1,160 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Vstupy v archivu {@code .zip}
+ *
+ * @author gattaka
+ *
+ */
+public class InputBundleTest {
+
+	private Path dataDir;
+	private Path bundle;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+		bundle = Files.createTempDirectory("tulaci-test").resolve("oddil.zip");
+		try (OutputStream os = Files.newOutputStream(bundle); ZipOutputStream zip = new ZipOutputStream(os);
+				Stream<Path> files = Files.list(dataDir)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				zip.putNextEntry(new ZipEntry(file.getFileName().toString()));
+				Files.copy(file, zip);
+				zip.closeEntry();
+			}
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		InputBundle.closeAll();
+		TestInputs.delete(dataDir);
+		TestInputs.delete(bundle.getParent());
+	}
+
+	private void touch() throws Exception {
+		Files.setLastModifiedTime(bundle,
+				FileTime.fromMillis(Files.getLastModifiedTime(bundle).toMillis() + 10_000));
+	}
+
+	@Test
+	public void recognizesBundles() {
+		assertTrue(InputBundle.isBundle(bundle));
+		assertFalse(InputBundle.isBundle(dataDir));
+		assertFalse(InputBundle.isBundle(dataDir.resolve("data.txt")));
+		assertFalse(InputBundle.isBundle(dataDir.resolve("neni.zip")));
+	}
+
+	@Test
+	public void directoryIsPassedThrough() throws Exception {
+		assertSame(dataDir, InputBundle.acquire(dataDir));
+		InputBundle.release(dataDir);
+		assertEquals(0, InputBundle.getOpenCount());
+	}
+
+	@Test
+	public void bundleBuildsSameWorkbookAsDirectory() throws Exception {
+		assertEquals(0, new InputValidator(bundle, null).validate().size());
+
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		builder.build(expected);
+
+		builder.setDataDir(bundle);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		builder.build(actual);
+
+		assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		// archiv zůstává otevřený pro další sestavení
+		assertEquals(1, InputBundle.getOpenCount());
+	}
+
+	@Test
+	public void openArchiveIsReusedUntilChanged() throws Exception {
+		Path root = InputBundle.acquire(bundle);
+		InputBundle.release(root);
+		assertSame(root, InputBundle.acquire(bundle));
+		InputBundle.release(root);
+
+		touch();
+		Path changed = InputBundle.acquire(bundle);
+		InputBundle.release(changed);
+		assertNotSame(root.getFileSystem(), changed.getFileSystem());
+		// předchozí verzi nikdo nečetl, zavřela se hned
+		assertFalse(root.getFileSystem().isOpen());
+		assertEquals(1, InputBundle.getOpenCount());
+	}
+
+	@Test
+	public void retiredArchiveClosesAfterLastUser() throws Exception {
+		Path first = InputBundle.acquire(bundle);
+		Path second = InputBundle.acquire(bundle);
+		touch();
+		Path fresh = InputBundle.acquire(bundle);
+		assertEquals(2, InputBundle.getOpenCount());
+
+		// běžící sestavení čtou dál z předchozí verze
+		InputBundle.release(first);
+		assertTrue(Files.exists(second.resolve("data.txt")));
+		InputBundle.release(second);
+		assertFalse(second.getFileSystem().isOpen());
+		assertEquals(1, InputBundle.getOpenCount());
+
+		InputBundle.release(fresh);
+		assertTrue(fresh.getFileSystem().isOpen());
+	}
+
+	@Test
+	public void metadataIndexDoesNotGrowWithReopenedArchive() throws Exception {
+		ImageMetadataIndex index = new ImageMetadataIndex();
+		Path root = InputBundle.acquire(bundle);
+		ImageMetadata metadata = index.get(root.resolve("1.jpg"));
+		String key = InputBundle.cacheKey(root.resolve("1.jpg"));
+		InputBundle.release(root);
+		assertEquals(640, metadata.getWidth());
+
+		touch();
+		Path reopened = InputBundle.acquire(bundle);
+		assertEquals(metadata.getHeight(), index.get(reopened.resolve("1.jpg")).getHeight());
+		assertEquals(key, InputBundle.cacheKey(reopened.resolve("1.jpg")));
+		InputBundle.release(reopened);
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	public void photoHashesDoNotGrowWithReopenedArchive() throws Exception {
+		MemoryPhotoHasher hasher = new MemoryPhotoHasher();
+		Path root = InputBundle.acquire(bundle);
+		String hash = hasher.photoHash(root.resolve("1.jpg"));
+		InputBundle.release(root);
+		assertEquals(ContentHash.sha256(Files.readAllBytes(dataDir.resolve("1.jpg"))), hash);
+
+		touch();
+		Path reopened = InputBundle.acquire(bundle);
+		assertEquals(hash, hasher.photoHash(reopened.resolve("1.jpg")));
+		InputBundle.release(reopened);
+		assertEquals(1, hasher.size());
+	}
+
+}
@@ -0,0 +1,112 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Hlášení všech chyb vstupů najednou
+ *
+ * @author gattaka
+ *
+ */
+public class InputValidatorTest {
+
+	private Path dataDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	private void replaceLine(String fileName, int lineNo, String line) throws Exception {
+		List<String> lines = new ArrayList<>(Files.readAllLines(dataDir.resolve(fileName)));
+		lines.set(lineNo - 1, line);
+		Files.write(dataDir.resolve(fileName), lines);
+	}
+
+	@Test
+	public void sampleInputsAreValid() {
+		assertEquals(0, new InputValidator(dataDir, null).validate().size());
+	}
+
+	@Test
+	public void reportsEveryProblemSorted() throws Exception {
+		replaceLine("svatky.txt", 3, "3. ledna\tRadmila");
+		replaceLine("narozeniny.txt", 2, "Petr\t31.2.2009");
+		replaceLine("foto.txt", 5, "chybi.jpg\tVýprava");
+		Files.write(dataDir.resolve("3.jpg"), "není obrázek".getBytes("UTF-8"));
+		Files.delete(dataDir.resolve("popisky.txt"));
+
+		List<InputProblem> problems = new InputValidator(dataDir, null).validate();
+
+		List<String> places = new ArrayList<>();
+		for (InputProblem problem : problems)
+			places.add(problem.getFile() + ":" + problem.getLine());
+		assertEquals("[foto.txt:3, foto.txt:5, narozeniny.txt:2, popisky.txt:0, svatky.txt:3]", places.toString());
+		assertTrue(problems.get(1).getMessage(), problems.get(1).getMessage().contains("chybi.jpg"));
+		assertEquals("popisky.txt: Soubor neexistuje", problems.get(3).toString());
+	}
+
+	@Test
+	public void reportsBadYearUnlessOverridden() throws Exception {
+		replaceLine("data.txt", 1, "dvacet");
+
+		List<InputProblem> problems = new InputValidator(dataDir, null).validate();
+		assertEquals(1, problems.size());
+		assertEquals("data.txt", problems.get(0).getFile());
+		assertEquals(1, problems.get(0).getLine());
+
+		assertEquals(0, new InputValidator(dataDir, 2020).validate().size());
+	}
+
+	@Test
+	public void stopsWithoutDataFile() throws Exception {
+		Files.delete(dataDir.resolve("data.txt"));
+
+		List<InputProblem> problems = new InputValidator(dataDir, null).validate();
+		assertEquals(1, problems.size());
+		assertEquals("data.txt", problems.get(0).getFile());
+	}
+
+	@Test
+	public void checkListsAllProblems() throws Exception {
+		replaceLine("svatky.txt", 1, "x");
+		replaceLine("svatky.txt", 2, "y");
+		try {
+			new InputValidator(dataDir, null).check();
+			fail("Kontrola měla selhat");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Vstupní data obsahují chyby (2):"));
+			assertTrue(e.getMessage(), e.getMessage().contains("svatky.txt:2:"));
+		}
+	}
+
+	@Test
+	public void builderRefusesInvalidInputs() throws Exception {
+		replaceLine("narozeniny.txt", 1, "bez data");
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		try {
+			builder.validateInputs();
+			fail("Sestavení mělo odmítnout neplatné vstupy");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("narozeniny.txt:1:"));
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Cache bajtů s LRU vyhazováním
+ *
+ * @author gattaka
+ *
+ */
+public class LruByteCacheTest {
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		LruByteCache cache = new LruByteCache("test", 30);
+		cache.put("a", new byte[10]);
+		cache.put("b", new byte[10]);
+		cache.put("c", new byte[10]);
+		cache.get("a");
+		cache.put("d", new byte[10]);
+
+		assertNull(cache.get("b"));
+		assertEquals(3, cache.getEntryCount());
+		assertEquals(30, cache.getCurrentBytes());
+		assertEquals(1, cache.getEvictions());
+	}
+
+	@Test
+	public void skipsEntryLargerThanCache() {
+		LruByteCache cache = new LruByteCache("test", 10);
+		cache.put("a", new byte[5]);
+		cache.put("b", new byte[11]);
+		assertNull(cache.get("b"));
+		assertEquals(5, cache.getCurrentBytes());
+	}
+
+	@Test
+	public void wholeArrayIsReturnedWithoutCopy() {
+		LruByteCache cache = new LruByteCache("test", 100);
+		byte[] data = { 1, 2, 3 };
+		cache.put("a", data);
+		assertSame(data, cache.get("a"));
+	}
+
+	@Test
+	public void bufferIsSharedAndCountedByArray() {
+		LruByteCache cache = new LruByteCache("test", 100);
+		byte[] array = { 0, 1, 2, 3, 4, 5, 6, 7 };
+		cache.put("a", ByteBuffer.wrap(array, 0, 5));
+		// do velikosti se počítá celé pole, které buffer drží
+		assertEquals(8, cache.getCurrentBytes());
+
+		ByteBuffer first = cache.getBuffer("a");
+		assertSame(array, first.array());
+		assertEquals(5, first.remaining());
+		first.get();
+		// každý volající má vlastní pozici
+		assertEquals(5, cache.getBuffer("a").remaining());
+		assertArrayEquals(new byte[] { 0, 1, 2, 3, 4 }, cache.get("a"));
+	}
+
+}
@@ -0,0 +1,94 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import cz.gattserver.tulaci.calendar.SheetLayout.Region;
+
+/**
+ * Kontrola překryvů sloučených oblastí
+ *
+ * @author gattaka
+ *
+ */
+public class MergedRegionCollectorTest {
+
+	private static MergedRegionCollector collect(Region... regions) {
+		MergedRegionCollector collector = new MergedRegionCollector();
+		for (Region region : regions)
+			collector.add(region);
+		return collector;
+	}
+
+	private static void assertRejected(String expectedMessagePart, Region... regions) {
+		try {
+			collect(regions).validate("Leden");
+			fail("Oblasti měly být odmítnuty");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("'Leden'"));
+			assertTrue(e.getMessage(), e.getMessage().contains(expectedMessagePart));
+		}
+	}
+
+	@Test
+	public void acceptsTouchingRegionsInInsertionOrder() {
+		Region second = new Region(4, 5, 0, 6);
+		Region first = new Region(0, 3, 0, 2);
+		Region beside = new Region(0, 3, 3, 6);
+		// po skončení oblasti se stejné sloupce uvolní pro další řádky
+		Region below = new Region(6, 6, 0, 1);
+		List<Region> regions = collect(second, first, beside, below).validate("Leden");
+
+		assertEquals(4, regions.size());
+		assertEquals(second, regions.get(0));
+		assertEquals(below, regions.get(3));
+	}
+
+	@Test
+	public void rejectsOverlapFromLeft() {
+		assertRejected("A1:C2 a C2:D3 se překrývají", new Region(0, 1, 0, 2), new Region(1, 2, 2, 3));
+	}
+
+	@Test
+	public void rejectsOverlapFromRight() {
+		assertRejected("se překrývají", new Region(0, 1, 3, 5), new Region(1, 1, 0, 3));
+	}
+
+	@Test
+	public void rejectsNestedRegion() {
+		assertRejected("A1:H10 a C3:D4 se překrývají", new Region(0, 9, 0, 7), new Region(2, 3, 2, 3));
+	}
+
+	@Test
+	public void rejectsRegionStartingInsideLongerOne() {
+		// otevřená oblast na jiných sloupcích nesmí zakrýt kolizi s dlouhou oblastí
+		assertRejected("A1:A30 a A20:B20 se překrývají", new Region(0, 29, 0, 0), new Region(0, 0, 1, 4),
+				new Region(19, 19, 0, 1));
+	}
+
+	@Test
+	public void rejectsSingleCell() {
+		assertRejected("B2:B2 musí mít aspoň dvě buňky", new Region(1, 1, 1, 1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvertedRegion() {
+		new Region(3, 1, 0, 0);
+	}
+
+	@Test
+	public void layoutBuilderValidatesRegions() {
+		try {
+			new SheetLayout.Builder("Únor").merge(0, 0, 0, 1).merge(0, 0, 1, 2).build();
+			fail("Model s překryvem měl být odmítnut");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("'Únor'"));
+		}
+	}
+
+}
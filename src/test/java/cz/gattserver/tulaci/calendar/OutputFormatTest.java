@@ -0,0 +1,125 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Výstup do {@code .xls} a streamovaného {@code .xlsx}
+ *
+ * @author gattaka
+ *
+ */
+public class OutputFormatTest {
+
+	private static Path dataDir;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		dataDir = TestInputs.create();
+	}
+
+	@AfterClass
+	public static void tearDownClass() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	private static byte[] build(OutputFormat format, int rowWindowSize) throws Exception {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		builder.setOutputFormat(format);
+		builder.setRowWindowSize(rowWindowSize);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		builder.build(bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Obsah sešitu nezávislý na formátu: listy, texty buněk, sloučené oblasti a počet fotek
+	 */
+	private static List<String> describe(byte[] data) throws Exception {
+		List<String> lines = new ArrayList<>();
+		DataFormatter formatter = new DataFormatter();
+		try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(data))) {
+			lines.add("fotek " + workbook.getAllPictures().size());
+			for (Sheet sheet : workbook) {
+				lines.add("list " + sheet.getSheetName());
+				for (Row row : sheet)
+					for (Cell cell : row)
+						lines.add(cell.getAddress() + " " + formatter.formatCellValue(cell));
+				List<String> regions = new ArrayList<>();
+				for (CellRangeAddress region : sheet.getMergedRegions())
+					regions.add(region.formatAsString());
+				regions.sort(null);
+				lines.add("sloučeno " + regions);
+			}
+		}
+		return lines;
+	}
+
+	@Test
+	public void formatForFile() {
+		assertEquals(OutputFormat.XLSX, OutputFormat.forFile(Paths.get("kalendar.xlsx")));
+		assertEquals(OutputFormat.XLSX, OutputFormat.forFile(Paths.get("KALENDAR.XLSX")));
+		assertEquals(OutputFormat.XLS, OutputFormat.forFile(Paths.get("kalendar.xls")));
+		assertEquals(OutputFormat.XLS, OutputFormat.forFile(Paths.get("kalendar")));
+	}
+
+	@Test
+	public void xlsxHasSameContentAsXls() throws Exception {
+		byte[] xlsx = build(OutputFormat.XLSX, OutputFormat.MIN_ROW_WINDOW_SIZE);
+		try (Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(xlsx))) {
+			assertTrue(workbook instanceof XSSFWorkbook);
+			assertEquals(ReferenceDataRegistry.SHEET_COUNT, workbook.getNumberOfSheets());
+		}
+		List<String> expected = describe(build(OutputFormat.XLS, OutputFormat.MIN_ROW_WINDOW_SIZE));
+		assertEquals(String.join("\n", expected), String.join("\n", describe(xlsx)));
+	}
+
+	@Test
+	public void smallRowWindowIsRaisedToMinimum() throws Exception {
+		List<String> expected = describe(build(OutputFormat.XLSX, 1000));
+		assertEquals(String.join("\n", expected), String.join("\n", describe(build(OutputFormat.XLSX, 1))));
+	}
+
+	@Test
+	public void createsWorkbookForFormat() throws Exception {
+		Workbook xls = OutputFormat.XLS.createWorkbook(1);
+		assertTrue(xls instanceof HSSFWorkbook);
+		xls.close();
+
+		Workbook xlsx = OutputFormat.XLSX.createWorkbook(1);
+		try {
+			assertTrue(xlsx instanceof SXSSFWorkbook);
+		} finally {
+			OutputFormat.dispose(xlsx);
+			xlsx.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void directFormatHasNoPoiWorkbook() {
+		OutputFormat.XLSX_DIRECT.createWorkbook(OutputFormat.MIN_ROW_WINDOW_SIZE);
+	}
+
+}
@@ -0,0 +1,284 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Cíle zápisu sešitu
+ *
+ * @author gattaka
+ *
+ */
+public class OutputSinkTest {
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("tulaci-test");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dir);
+	}
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void write(OutputSink sink, String text) throws IOException {
+		OutputStream os = sink.open();
+		os.write(bytes(text));
+		// SXSSF proud po zápisu zavírá, sink musí přežít
+		os.close();
+	}
+
+	@Test
+	public void fileSinkReplacesTargetOnlyOnCommit() throws Exception {
+		Path target = dir.resolve("kalendar.xls");
+		Files.write(target, bytes("starý"));
+
+		OutputSink aborted = OutputSink.file(target);
+		write(aborted, "rozepsaný");
+		aborted.abort();
+		assertArrayEquals(bytes("starý"), Files.readAllBytes(target));
+		assertEquals(1, dir.toFile().list().length);
+
+		OutputSink committed = OutputSink.file(target);
+		write(committed, "nový");
+		committed.commit();
+		assertArrayEquals(bytes("nový"), Files.readAllBytes(target));
+		// dočasný soubor po sobě nic nenechal
+		assertEquals(1, dir.toFile().list().length);
+	}
+
+	@Test
+	public void fileSinkCreatesDirectories() throws Exception {
+		Path target = dir.resolve("a").resolve("b").resolve("kalendar.xlsx");
+		OutputSink sink = OutputSink.file(target);
+		write(sink, "obsah");
+		sink.commit();
+		assertArrayEquals(bytes("obsah"), Files.readAllBytes(target));
+	}
+
+	@Test
+	public void fileSinkKeepsUsualPermissions() throws Exception {
+		Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+		Path reference = Files.createFile(dir.resolve("obyčejný"));
+		Path target = dir.resolve("kalendar.xls");
+		OutputSink sink = OutputSink.file(target);
+		write(sink, "obsah");
+		sink.commit();
+
+		// stejná práva jako jakýkoliv jiný nový soubor, ne jen pro vlastníka jako u createTempFile
+		assertEquals(Files.getPosixFilePermissions(reference), Files.getPosixFilePermissions(target));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void fileSinkOpensOnce() throws Exception {
+		OutputSink sink = OutputSink.file(dir.resolve("kalendar.xls"));
+		try {
+			sink.open();
+			sink.open();
+		} finally {
+			sink.abort();
+		}
+	}
+
+	@Test
+	public void streamSinkLeavesStreamOpen() throws Exception {
+		boolean[] closed = new boolean[1];
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		OutputStream owned = new FilterOutputStream(target) {
+
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+				super.close();
+			}
+
+		};
+		OutputSink sink = OutputSink.of(owned);
+		write(sink, "obsah");
+		sink.commit();
+
+		assertFalse(closed[0]);
+		assertEquals("obsah", target.toString("UTF-8"));
+	}
+
+	@Test
+	public void streamSinkAbortDropsBuffer() throws Exception {
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		OutputSink sink = OutputSink.of(target);
+		sink.open().write(bytes("rozepsaný"));
+		sink.abort();
+		assertEquals(0, target.size());
+	}
+
+	@Test
+	public void channelSinkLeavesChannelOpen() throws Exception {
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		WritableByteChannel channel = Channels.newChannel(target);
+		OutputSink sink = OutputSink.of(channel);
+		write(sink, "kanál");
+		sink.commit();
+
+		assertTrue(channel.isOpen());
+		assertEquals("kanál", target.toString("UTF-8"));
+	}
+
+	/**
+	 * Kanál jako neblokující soket, který najednou přijme jen část bufferu
+	 */
+	private static final class PartialChannel implements WritableByteChannel {
+
+		final ByteArrayOutputStream target = new ByteArrayOutputStream();
+		int largestOffer;
+
+		@Override
+		public int write(ByteBuffer src) {
+			largestOffer = Math.max(largestOffer, src.remaining());
+			int length = Math.min(src.remaining(), 1000);
+			byte[] chunk = new byte[length];
+			src.get(chunk);
+			target.write(chunk, 0, length);
+			return length;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+			throw new AssertionError("Kanál patří volajícímu");
+		}
+
+	}
+
+	@Test
+	public void channelSinkWritesWholeBlocks() throws Exception {
+		byte[] data = new byte[200_000];
+		new Random(7).nextBytes(data);
+		PartialChannel channel = new PartialChannel();
+		OutputSink sink = new ChannelOutputSink(channel);
+		OutputStream os = sink.open();
+		os.write(data, 0, 10);
+		os.write(data[10]);
+		os.write(data, 11, data.length - 11);
+		os.close();
+		sink.commit();
+
+		assertArrayEquals(data, channel.target.toByteArray());
+		// kanál dostává celé 64 KB bloky, ne jednotlivé zápisy
+		assertEquals(64 * 1024, channel.largestOffer);
+	}
+
+	@Test
+	public void channelSinkAbortDropsBuffer() throws Exception {
+		PartialChannel channel = new PartialChannel();
+		OutputSink sink = new ChannelOutputSink(channel);
+		sink.open().write(bytes("rozepsaný"));
+		sink.abort();
+		assertEquals(0, channel.target.size());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void channelSinkOpensOnce() throws Exception {
+		OutputSink sink = new ChannelOutputSink(new PartialChannel());
+		sink.open();
+		sink.open();
+	}
+
+	/**
+	 * Soubor, na který po několika kilobajtech dojde místo
+	 */
+	private static OutputSink failingFile(Path target) {
+		AtomicFileSink file = new AtomicFileSink(target);
+		return new OutputSink() {
+
+			@Override
+			public OutputStream open() throws IOException {
+				return new FilterOutputStream(file.open()) {
+
+					private int written;
+
+					@Override
+					public void write(int b) throws IOException {
+						write(new byte[] { (byte) b }, 0, 1);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						written += len;
+						if (written > 8192)
+							throw new IOException("Na disku není místo");
+						out.write(b, off, len);
+					}
+
+				};
+			}
+
+			@Override
+			public void commit() throws IOException {
+				file.commit();
+			}
+
+			@Override
+			public void abort() {
+				file.abort();
+			}
+
+		};
+	}
+
+	@Test
+	public void failedBuildKeepsPreviousCalendar() throws Exception {
+		Path dataDir = TestInputs.create();
+		try {
+			Path target = dir.resolve("kalendar.xls");
+			CalendarBuilder builder = new CalendarBuilder();
+			builder.setDataDir(dataDir);
+			builder.build(OutputSink.file(target));
+			byte[] previous = Files.readAllBytes(target);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			builder.build(expected);
+			assertArrayEquals(expected.toByteArray(), previous);
+
+			try {
+				builder.build(failingFile(target));
+				fail("Zápis měl selhat");
+			} catch (IOException e) {
+				assertEquals("Na disku není místo", e.getMessage());
+			}
+			assertArrayEquals(previous, Files.readAllBytes(target));
+			assertEquals(1, dir.toFile().list().length);
+		} finally {
+			TestInputs.delete(dataDir);
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Test;
+import org.w3c.dom.NodeList;
+
+/**
+ * Vykreslení listů do PNG
+ *
+ * @author gattaka
+ *
+ */
+public class PageRendererTest {
+
+	private static final int COLUMN_WIDTH = 10 * 256;
+
+	private static SheetLayout textLayout() {
+		return new SheetLayout.Builder("Leden").columnWidth(0, COLUMN_WIDTH).columnWidth(1, COLUMN_WIDTH)
+				.cell(0, 0, "Leden", StyleKey.centered(20)).merge(0, 0, 0, 1).cell(1, 1, 7, StyleKey.centered(10))
+				.build();
+	}
+
+	private static int darkPixels(BufferedImage image) {
+		int count = 0;
+		for (int y = 0; y < image.getHeight(); y++)
+			for (int x = 0; x < image.getWidth(); x++)
+				if ((image.getRGB(x, y) & 0xff) < 128)
+					count++;
+		return count;
+	}
+
+	/**
+	 * @return rozlišení z bloku pHYs v pixelech na metr
+	 */
+	private static int pixelsPerMeter(InputStream png) throws Exception {
+		try (ImageInputStream iis = ImageIO.createImageInputStream(png)) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(iis);
+				IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(0)
+						.getAsTree("javax_imageio_png_1.0");
+				NodeList nodes = root.getElementsByTagName("pHYs");
+				return Integer.parseInt(((IIOMetadataNode) nodes.item(0)).getAttribute("pixelsPerUnitXAxis"));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	@Test
+	public void pageSizeFollowsLayoutAndDpi() throws Exception {
+		float width = 2 * PhotoSlot.columnWidthPoints(COLUMN_WIDTH);
+		// řádky se zvětší podle písma, 20 a 10 bodů s řádkováním 1,3
+		float height = 20 * 1.3f + 13f;
+
+		BufferedImage image = new PageRenderer(72, 0).render(textLayout(), null);
+		assertEquals(Math.round(width), image.getWidth());
+		assertEquals(Math.round(height), image.getHeight());
+
+		BufferedImage print = new PageRenderer(PageRenderer.PRINT_DPI, 10).render(textLayout(), null);
+		float scale = PageRenderer.PRINT_DPI / 72f;
+		assertEquals(Math.round((width + 20) * scale), print.getWidth());
+		assertEquals(Math.round((height + 20) * scale), print.getHeight());
+	}
+
+	@Test
+	public void drawsText() throws Exception {
+		BufferedImage empty = new PageRenderer(150).render(new SheetLayout.Builder("Prázdný")
+				.cell(0, 0, null, StyleKey.centered(20)).build(), null);
+		assertEquals(0, darkPixels(empty));
+		assertTrue(darkPixels(new PageRenderer(150).render(textLayout(), null)) > 0);
+	}
+
+	@Test
+	public void pngCarriesDpi() throws Exception {
+		PageRenderer renderer = new PageRenderer(PageRenderer.PRINT_DPI);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		renderer.writePng(renderer.render(textLayout(), null), bytes);
+
+		// 300 DPI = 11811 pixelů na metr
+		assertEquals(11811, pixelsPerMeter(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsZeroDpi() {
+		new PageRenderer(0);
+	}
+
+	@Test
+	public void rendersWholeCalendar() throws Exception {
+		Path dataDir = TestInputs.create();
+		Path pagesDir = Files.createTempDirectory("tulaci-test");
+		try {
+			CalendarBuilder builder = new CalendarBuilder();
+			builder.setDataDir(dataDir);
+			List<Path> pages = builder.renderPages(pagesDir, new PageRenderer(PageRenderer.PREVIEW_DPI));
+
+			assertEquals(ReferenceDataRegistry.SHEET_COUNT, pages.size());
+			assertEquals("02 Leden.png", pages.get(1).getFileName().toString());
+			for (Path page : pages) {
+				try (InputStream is = Files.newInputStream(page)) {
+					assertEquals(Math.round(PageRenderer.PREVIEW_DPI / 0.0254), pixelsPerMeter(is));
+				}
+				BufferedImage image = ImageIO.read(page.toFile());
+				// stránka s fotkou není prázdná
+				assertTrue(page.toString(), darkPixels(image) > 0);
+			}
+		} finally {
+			TestInputs.delete(dataDir);
+			TestInputs.delete(pagesDir);
+		}
+	}
+
+}
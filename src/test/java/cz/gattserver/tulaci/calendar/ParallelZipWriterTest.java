@@ -0,0 +1,119 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Test;
+
+/**
+ * Archiv z {@link ParallelZipWriter} musí přečíst {@link java.util.zip} -- proudově podle lokálních hlaviček i přes
+ * centrální adresář
+ *
+ * @author gattaka
+ *
+ */
+public class ParallelZipWriterTest {
+
+	private static final String[] NAMES = { "[Content_Types].xml", "xl/worksheets/sheet1.xml", "xl/media/Září.jpg",
+			"xl/media/šum.bin", "prázdný.txt" };
+
+	private static byte[][] contents() {
+		StringBuilder xml = new StringBuilder();
+		for (int i = 0; i < 2000; i++)
+			xml.append("<c r=\"A").append(i).append("\"><v>").append(i % 31).append("</v></c>");
+		byte[] photo = new byte[100_000];
+		byte[] noise = new byte[10_000];
+		Random random = new Random(3);
+		random.nextBytes(photo);
+		random.nextBytes(noise);
+		return new byte[][] { "<Types/>".getBytes(StandardCharsets.UTF_8),
+				xml.toString().getBytes(StandardCharsets.UTF_8), photo, noise, new byte[0] };
+	}
+
+	private static byte[] write(byte[][] contents) throws Exception {
+		ParallelZipWriter writer = new ParallelZipWriter();
+		// fotka se nekomprimuje, šum se komprimovat zkusí, ale nevyplatí se
+		for (int i = 0; i < NAMES.length; i++)
+			writer.add(NAMES[i], contents[i], i != 2);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		long written = writer.write(bytes);
+		assertEquals(bytes.size(), written);
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void readsBackAsStream() throws Exception {
+		byte[][] contents = contents();
+		// krátké XML by deflate jen prodloužil, uloží se stejně jako šum
+		int[] expectedMethods = { ZipEntry.STORED, ZipEntry.DEFLATED, ZipEntry.STORED, ZipEntry.STORED,
+				ZipEntry.STORED };
+		try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(write(contents)),
+				StandardCharsets.UTF_8)) {
+			for (int i = 0; i < NAMES.length; i++) {
+				ZipEntry entry = zip.getNextEntry();
+				assertEquals(NAMES[i], entry.getName());
+				assertEquals(NAMES[i], expectedMethods[i], entry.getMethod());
+				assertArrayEquals(NAMES[i], contents[i], zip.readAllBytes());
+				CRC32 crc = new CRC32();
+				crc.update(contents[i]);
+				assertEquals(crc.getValue(), entry.getCrc());
+			}
+			assertNull(zip.getNextEntry());
+		}
+	}
+
+	@Test
+	public void readsBackThroughCentralDirectory() throws Exception {
+		byte[][] contents = contents();
+		Path file = Files.createTempFile("tulaci-test", ".zip");
+		try {
+			Files.write(file, write(contents));
+			try (ZipFile zip = new ZipFile(file.toFile(), StandardCharsets.UTF_8)) {
+				assertEquals(NAMES.length, zip.size());
+				List<String> names = new ArrayList<>();
+				for (ZipEntry entry : Collections.list(zip.entries()))
+					names.add(entry.getName());
+				assertEquals(List.of(NAMES), names);
+				for (int i = 0; i < NAMES.length; i++) {
+					ZipEntry entry = zip.getEntry(NAMES[i]);
+					assertEquals(contents[i].length, entry.getSize());
+					assertArrayEquals(contents[i], zip.getInputStream(entry).readAllBytes());
+				}
+				// XML se komprimuje, fotka zůstává, jak byla
+				assertTrue(zip.getEntry(NAMES[1]).getCompressedSize() < contents[1].length / 4);
+				assertEquals(contents[2].length, zip.getEntry(NAMES[2]).getCompressedSize());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void sameEntriesGiveSameBytes() throws Exception {
+		assertArrayEquals(write(contents()), write(contents()));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsMoreEntriesThanZipAllows() {
+		ParallelZipWriter writer = new ParallelZipWriter();
+		for (int i = 0; i <= 0xFFFF; i++)
+			writer.add("polozka" + i, new byte[0], false);
+	}
+
+}
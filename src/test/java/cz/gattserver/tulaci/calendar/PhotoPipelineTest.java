@@ -0,0 +1,162 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Paralelní příprava fotek všech listů
+ *
+ * @author gattaka
+ *
+ */
+public class PhotoPipelineTest {
+
+	private Path dataDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = Files.createTempDirectory("pipeline");
+		for (int i = 0; i < ReferenceDataRegistry.SHEET_COUNT; i++)
+			TestInputs.writePhoto(dataDir.resolve(i + ".jpg"), 1200 + 100 * i, 900, new Random(i));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	private static List<String> lines() {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < ReferenceDataRegistry.SHEET_COUNT; i++)
+			lines.add(i + ".jpg\tAkce " + i);
+		return lines;
+	}
+
+	@Test
+	public void preparesPhotosInSheetOrder() throws Exception {
+		PhotoProcessor processor = new PhotoProcessor(72, 0.85f);
+		List<Photo> photos = new PhotoPipeline(dataDir, processor, null).prepare(lines());
+		try {
+			assertEquals(ReferenceDataRegistry.SHEET_COUNT, photos.size());
+			for (int sheetNo = 0; sheetNo < photos.size(); sheetNo++) {
+				Photo photo = photos.get(sheetNo);
+				assertEquals(sheetNo + ".jpg", photo.getFileName());
+				assertEquals(Workbook.PICTURE_TYPE_JPEG, photo.getPictureType());
+				byte[] expected = processor.process(Files.readAllBytes(dataDir.resolve(sheetNo + ".jpg")),
+						PhotoSlot.forSheet(sheetNo));
+				assertArrayEquals(expected, photo.getData());
+			}
+		} finally {
+			PhotoPipeline.close(photos);
+		}
+	}
+
+	@Test
+	public void processedPhotoFitsSlot() throws Exception {
+		List<Photo> photos = new PhotoPipeline(dataDir, new PhotoProcessor(72, 0.85f), null).prepare(lines());
+		try {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(photos.get(1).getData()));
+			assertTrue(image.getWidth() <= Math.round(PhotoSlot.MONTH.getWidthPoints()));
+			assertTrue(image.getHeight() <= Math.round(PhotoSlot.MONTH.getHeightPoints()));
+			assertTrue(photos.get(1).getSize() < Files.size(dataDir.resolve("1.jpg")));
+		} finally {
+			PhotoPipeline.close(photos);
+		}
+	}
+
+	@Test
+	public void withoutProcessorKeepsOriginals() throws Exception {
+		List<Photo> photos = new PhotoPipeline(dataDir, null, null).prepare(lines());
+		try {
+			assertArrayEquals(Files.readAllBytes(dataDir.resolve("5.jpg")), photos.get(5).getData());
+		} finally {
+			PhotoPipeline.close(photos);
+		}
+	}
+
+	@Test
+	public void reusesCachedPhotos() throws Exception {
+		ProcessedImageCache cache = new ProcessedImageCache(ProcessedImageCache.DEFAULT_MAX_BYTES);
+		PhotoPipeline pipeline = new PhotoPipeline(dataDir, new PhotoProcessor(72, 0.85f), cache);
+		List<Photo> first = pipeline.prepare(lines());
+		List<Photo> second = pipeline.prepare(lines());
+		try {
+			assertEquals(ReferenceDataRegistry.SHEET_COUNT, cache.getEntryCount());
+			assertEquals(ReferenceDataRegistry.SHEET_COUNT, cache.getMisses());
+			assertEquals(ReferenceDataRegistry.SHEET_COUNT, cache.getHits());
+			for (int sheetNo = 0; sheetNo < first.size(); sheetNo++)
+				assertArrayEquals(first.get(sheetNo).getData(), second.get(sheetNo).getData());
+		} finally {
+			PhotoPipeline.close(first);
+			PhotoPipeline.close(second);
+		}
+	}
+
+	@Test
+	public void cacheKeyDependsOnSlotAndSettings() throws Exception {
+		ProcessedImageCache cache = new ProcessedImageCache(ProcessedImageCache.DEFAULT_MAX_BYTES);
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < ReferenceDataRegistry.SHEET_COUNT; i++)
+			lines.add("0.jpg\tAkce " + i);
+		List<Photo> photos = new PhotoPipeline(dataDir, new PhotoProcessor(72, 0.85f), cache).prepare(lines);
+		List<Photo> other = new PhotoPipeline(dataDir, new PhotoProcessor(96, 0.85f), cache).prepare(lines);
+		try {
+			// stejná fotka ve třech různých místech (titulní, měsíc, zadní list), pro každé DPI zvlášť
+			assertEquals(6, cache.getEntryCount());
+			assertEquals(photos.get(1).getHash(), photos.get(12).getHash());
+			assertNotEquals(photos.get(0).getHash(), photos.get(1).getHash());
+			assertNotEquals(photos.get(1).getHash(), other.get(1).getHash());
+		} finally {
+			PhotoPipeline.close(photos);
+			PhotoPipeline.close(other);
+		}
+	}
+
+	@Test
+	public void repeatedPhotoIsStoredOnce() throws Exception {
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < ReferenceDataRegistry.SHEET_COUNT; i++)
+			lines.add((i % 2) + ".jpg\tAkce " + i);
+		List<Photo> photos = new PhotoPipeline(dataDir, null, null).prepare(lines);
+		try (HSSFWorkbook workbook = new HSSFWorkbook()) {
+			PictureStore store = new PictureStore(workbook);
+			for (Photo photo : photos)
+				store.addPicture(photo);
+			assertEquals(2, workbook.getAllPictures().size());
+		} finally {
+			PhotoPipeline.close(photos);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsMalformedLine() {
+		new PhotoPipeline(dataDir, new PhotoProcessor(), null).prepare(Collections.singletonList("0.jpg"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsMissingFile() {
+		new PhotoPipeline(dataDir, new PhotoProcessor(), null)
+				.prepare(Arrays.asList("0.jpg\tAkce", "chybi.jpg\tAkce"));
+	}
+
+}
@@ -0,0 +1,108 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Zmenšení fotky na rozlišení kotvy
+ *
+ * @author gattaka
+ *
+ */
+public class PhotoProcessorTest {
+
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("processor");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dir);
+	}
+
+	private byte[] jpeg(int width, int height) throws IOException {
+		Path file = dir.resolve(width + "x" + height + ".jpg");
+		TestInputs.writePhoto(file, width, height, new Random(1));
+		return Files.readAllBytes(file);
+	}
+
+	private static BufferedImage decode(byte[] data) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(data));
+	}
+
+	@Test
+	public void downscalesToSlotAtDpi() throws Exception {
+		PhotoSlot slot = PhotoSlot.MONTH;
+		int targetWidth = Math.round(slot.getWidthPoints() / 72f * 72);
+		int targetHeight = Math.round(slot.getHeightPoints() / 72f * 72);
+
+		BufferedImage result = decode(new PhotoProcessor(72, 0.85f).process(jpeg(2000, 1000), slot));
+		// široká fotka je omezená šířkou místa
+		assertEquals(targetWidth, result.getWidth());
+		assertEquals(Math.round(targetWidth / 2.0), result.getHeight(), 1);
+		assertTrue(result.getHeight() <= targetHeight);
+	}
+
+	@Test
+	public void higherDpiKeepsMorePixels() throws Exception {
+		byte[] source = jpeg(3000, 2000);
+		BufferedImage low = decode(new PhotoProcessor(72, 0.85f).process(source, PhotoSlot.FRONT));
+		BufferedImage high = decode(new PhotoProcessor(144, 0.85f).process(source, PhotoSlot.FRONT));
+		assertEquals(2 * low.getWidth(), high.getWidth(), 1);
+		assertEquals(2 * low.getHeight(), high.getHeight(), 1);
+	}
+
+	@Test
+	public void doesNotUpscale() throws Exception {
+		BufferedImage result = decode(new PhotoProcessor().process(jpeg(100, 80), PhotoSlot.MONTH));
+		assertEquals(100, result.getWidth());
+		assertEquals(80, result.getHeight());
+	}
+
+	@Test
+	public void pngBecomesJpeg() throws Exception {
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(50, 40, BufferedImage.TYPE_INT_ARGB), "png", png);
+
+		byte[] result = new PhotoProcessor().process(png.toByteArray(), PhotoSlot.BACK);
+		assertEquals(0xFF, result[0] & 0xFF);
+		assertEquals(0xD8, result[1] & 0xFF);
+		// průhledná místa jsou podložená bílou
+		int rgb = decode(result).getRGB(25, 20);
+		for (int shift = 0; shift < 24; shift += 8)
+			assertTrue(((rgb >> shift) & 0xFF) > 250);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsUnreadableData() throws Exception {
+		new PhotoProcessor().process("Není to obrázek".getBytes("UTF-8"), PhotoSlot.MONTH);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveDpi() {
+		new PhotoProcessor(0, 0.85f);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsQualityOutOfRange() {
+		new PhotoProcessor(300, 1.5f);
+	}
+
+}
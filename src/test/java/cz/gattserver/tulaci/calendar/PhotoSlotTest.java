@@ -0,0 +1,124 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Umístění fotky do místa na listu se zachovaným poměrem stran
+ *
+ * @author gattaka
+ *
+ */
+public class PhotoSlotTest {
+
+	private static final double DELTA = 1e-3;
+
+	@Test
+	public void slotForSheet() {
+		assertSame(PhotoSlot.FRONT, PhotoSlot.forSheet(0));
+		assertSame(PhotoSlot.MONTH, PhotoSlot.forSheet(1));
+		assertSame(PhotoSlot.MONTH, PhotoSlot.forSheet(12));
+		assertSame(PhotoSlot.BACK, PhotoSlot.forSheet(13));
+	}
+
+	@Test
+	public void monthSlotSize() {
+		PhotoSlot slot = PhotoSlot.MONTH;
+		float expected = 7 * PhotoSlot.columnWidthPoints(PhotoSlot.DAY_COLUMN_WIDTH)
+				+ PhotoSlot.columnWidthPoints(PhotoSlot.BIRTHDAY_COLUMN_WIDTH)
+				+ 2 * PhotoSlot.columnWidthPoints(PhotoSlot.DEFAULT_COLUMN_WIDTH);
+		assertEquals(expected, slot.getWidthPoints(), DELTA);
+		assertEquals(27 * PhotoSlot.DEFAULT_ROW_HEIGHT_POINTS, slot.getHeightPoints(), DELTA);
+	}
+
+	/**
+	 * @return vzdálenost rohu kotvy od levého okraje místa v bodech
+	 */
+	private static double x(PhotoSlot slot, int col, double offset) {
+		double points = 0;
+		for (int c = slot.getCol1(); c < col; c++)
+			points += slot.getColumnWidthPoints(c);
+		return col < slot.getCol2() ? points + offset * slot.getColumnWidthPoints(col) : points;
+	}
+
+	/**
+	 * @return vzdálenost rohu kotvy od horního okraje místa v bodech
+	 */
+	private static double y(PhotoSlot slot, int row, double offset) {
+		return (row - slot.getRow1() + offset) * PhotoSlot.DEFAULT_ROW_HEIGHT_POINTS;
+	}
+
+	/**
+	 * @return levý, horní, pravý a dolní okraj kotvy v bodech od levého horního rohu místa
+	 */
+	private static double[] bounds(PhotoSlot slot, PhotoAnchor anchor) {
+		return new double[] { x(slot, anchor.getCol1(), anchor.getCol1Offset()),
+				y(slot, anchor.getRow1(), anchor.getRow1Offset()), x(slot, anchor.getCol2(), anchor.getCol2Offset()),
+				y(slot, anchor.getRow2(), anchor.getRow2Offset()) };
+	}
+
+	@Test
+	public void fullCoversSlot() {
+		for (PhotoSlot slot : PhotoSlot.values()) {
+			double[] bounds = bounds(slot, slot.full());
+			assertEquals(0, bounds[0], DELTA);
+			assertEquals(0, bounds[1], DELTA);
+			assertEquals(slot.getWidthPoints(), bounds[2], DELTA);
+			assertEquals(slot.getHeightPoints(), bounds[3], DELTA);
+		}
+	}
+
+	@Test
+	public void wideImageFillsWidthCentered() {
+		PhotoSlot slot = PhotoSlot.MONTH;
+		double[] bounds = bounds(slot, slot.fit(4000, 1000));
+		double height = slot.getWidthPoints() / 4;
+		assertEquals(0, bounds[0], DELTA);
+		assertEquals(slot.getWidthPoints(), bounds[2], DELTA);
+		assertEquals((slot.getHeightPoints() - height) / 2, bounds[1], DELTA);
+		assertEquals(height, bounds[3] - bounds[1], DELTA);
+	}
+
+	@Test
+	public void tallImageFillsHeightCentered() {
+		PhotoSlot slot = PhotoSlot.FRONT;
+		double[] bounds = bounds(slot, slot.fit(1000, 4000));
+		double width = slot.getHeightPoints() / 4;
+		assertEquals(0, bounds[1], DELTA);
+		assertEquals(slot.getHeightPoints(), bounds[3], DELTA);
+		assertEquals((slot.getWidthPoints() - width) / 2, bounds[0], DELTA);
+		assertEquals(width, bounds[2] - bounds[0], DELTA);
+	}
+
+	@Test
+	public void fitKeepsAspectRatio() {
+		int[][] sizes = { { 640, 480 }, { 480, 640 }, { 1920, 1080 }, { 1000, 1000 }, { 3, 2 } };
+		for (PhotoSlot slot : PhotoSlot.values()) {
+			for (int[] size : sizes) {
+				double[] bounds = bounds(slot, slot.fit(size[0], size[1]));
+				double width = bounds[2] - bounds[0];
+				double height = bounds[3] - bounds[1];
+				String message = slot + " " + size[0] + "x" + size[1];
+				assertEquals(message, (double) size[0] / size[1], width / height, 1e-3);
+				// vystředěná, alespoň jedna strana přes celé místo
+				assertEquals(message, slot.getWidthPoints() - bounds[2], bounds[0], DELTA);
+				assertEquals(message, slot.getHeightPoints() - bounds[3], bounds[1], DELTA);
+				assertEquals(message, 0, Math.min(bounds[0], bounds[1]), DELTA);
+			}
+		}
+	}
+
+	@Test
+	public void imageWithSlotAspectFillsSlot() {
+		PhotoSlot slot = PhotoSlot.BACK;
+		double[] bounds = bounds(slot,
+				slot.fit(Math.round(slot.getWidthPoints() * 100), Math.round(slot.getHeightPoints() * 100)));
+		assertEquals(0, bounds[0], 0.01);
+		assertEquals(0, bounds[1], 0.01);
+		assertEquals(slot.getWidthPoints(), bounds[2], 0.01);
+		assertEquals(slot.getHeightPoints(), bounds[3], 0.01);
+	}
+
+}
@@ -0,0 +1,109 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Rozpočet haldy pro připravené fotky a odkládání na disk
+ *
+ * @author gattaka
+ *
+ */
+public class PictureStorageTest {
+
+	private static byte[] bytes(int size, int value) {
+		byte[] data = new byte[size];
+		Arrays.fill(data, (byte) value);
+		return data;
+	}
+
+	@Test
+	public void spillsWhatDoesNotFitTheBudget() throws Exception {
+		try (PictureStorage storage = new PictureStorage(1000)) {
+			StoredPicture first = storage.store(bytes(600, 1));
+			StoredPicture second = storage.store(bytes(600, 2));
+
+			assertFalse(first.isSpilled());
+			assertTrue(second.isSpilled());
+			assertTrue(Files.exists(second.getFile()));
+			assertEquals(600, storage.getHeapBytes());
+			assertEquals(600, storage.getSpilledBytes());
+			assertArrayEquals(bytes(600, 2), second.load());
+			assertEquals(ContentHash.sha256(bytes(600, 2)), second.getHash());
+
+			Path file = second.getFile();
+			second.close();
+			assertFalse(Files.exists(file));
+			assertEquals(0, storage.getSpilledBytes());
+
+			// uvolněné místo na haldě dostane další fotka
+			first.close();
+			first.close();
+			assertEquals(0, storage.getHeapBytes());
+			StoredPicture third = storage.store(bytes(900, 3));
+			assertFalse(third.isSpilled());
+			third.close();
+			assertEquals(1, storage.getSpilledTotal());
+		}
+	}
+
+	@Test
+	public void zeroBudgetSpillsEverything() throws Exception {
+		try (PictureStorage storage = new PictureStorage(0)) {
+			StoredPicture picture = storage.store(bytes(10, 1));
+			assertTrue(picture.isSpilled());
+			picture.close();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void closedPictureCannotBeLoaded() throws Exception {
+		try (PictureStorage storage = new PictureStorage(100)) {
+			StoredPicture picture = storage.store(bytes(10, 1));
+			picture.close();
+			picture.load();
+		}
+	}
+
+	@Test
+	public void closeDeletesLeftoverFiles() throws Exception {
+		PictureStorage storage = new PictureStorage(0);
+		StoredPicture picture = storage.store(bytes(10, 1));
+		Path dir = picture.getFile().getParent();
+		storage.close();
+		assertFalse(Files.exists(picture.getFile()));
+		assertFalse(Files.exists(dir));
+	}
+
+	@Test
+	public void spilledPhotosGiveTheSameWorkbook() throws Exception {
+		Path dataDir = TestInputs.create();
+		try (PictureStorage onDisk = new PictureStorage(0)) {
+			CalendarBuilder builder = new CalendarBuilder();
+			builder.setDataDir(dataDir);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			builder.build(expected);
+
+			builder.setPictureStorage(onDisk);
+			ByteArrayOutputStream actual = new ByteArrayOutputStream();
+			builder.build(actual);
+
+			assertEquals(14, onDisk.getSpilledTotal());
+			// každá fotka se po zápisu sešitu uvolní
+			assertEquals(0, onDisk.getSpilledBytes());
+			assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+		} finally {
+			TestInputs.delete(dataDir);
+		}
+	}
+
+}
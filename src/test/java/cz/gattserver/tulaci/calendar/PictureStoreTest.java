@@ -0,0 +1,38 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+/**
+ * Vkládání obrázků do sešitu adresované obsahem
+ *
+ * @author gattaka
+ *
+ */
+public class PictureStoreTest {
+
+	private static Photo photo(String fileName, int value) {
+		return new Photo(fileName, new byte[] { (byte) 0xFF, (byte) 0xD8, (byte) value }, Workbook.PICTURE_TYPE_JPEG);
+	}
+
+	@Test
+	public void samePictureIsAddedOnce() throws Exception {
+		try (HSSFWorkbook workbook = new HSSFWorkbook()) {
+			PictureStore store = new PictureStore(workbook);
+			int first = store.addPicture(photo("a.jpg", 1));
+			// jiný soubor se stejným obsahem
+			assertEquals(first, store.addPicture(photo("b.jpg", 1)));
+			int other = store.addPicture(photo("c.jpg", 2));
+			assertNotEquals(first, other);
+			assertEquals(first, store.addPicture(photo("a.jpg", 1)));
+
+			assertEquals(2, store.getPictureCount());
+			assertEquals(2, workbook.getAllPictures().size());
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.usermodel.WorkbookFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Dávka rozdělená mezi skutečné procesy workerů nad dočasnou frontou
+ *
+ * @author gattaka
+ *
+ */
+public class ProcessCoordinatorTest {
+
+	private Path dataDir;
+	private Path dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+		dir = Files.createTempDirectory("tulaci-fronta");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+		TestInputs.delete(dir);
+	}
+
+	private BatchJob job(int year, Path inputDir) {
+		return new BatchJob(year, inputDir, dir.resolve("vystup").resolve("kalendar" + year + ".xls"));
+	}
+
+	@Test
+	public void workersBuildEveryJob() throws Exception {
+		WorkQueue queue = new WorkQueue(dir.resolve("fronta"));
+		assertTrue(new ProcessCoordinator(2).run(queue, Arrays.asList(job(2019, dataDir), job(2020, dataDir))));
+
+		assertTrue(queue.isFinished());
+		assertEquals(2, queue.getDone().size());
+		for (int year : new int[] { 2019, 2020 })
+			try (Workbook workbook = WorkbookFactory.create(dir.resolve("vystup").resolve("kalendar" + year + ".xls")
+					.toFile())) {
+				assertEquals(14, workbook.getNumberOfSheets());
+			}
+		assertTrue(Files.exists(queue.getDir().resolve("logs").resolve("worker-1.log")));
+		assertTrue(Files.exists(queue.getDir().resolve("logs").resolve("worker-2.log")));
+	}
+
+	@Test
+	public void reusedQueueCountsOnlyOwnJobs() throws Exception {
+		WorkQueue queue = new WorkQueue(dir.resolve("fronta"));
+		ProcessCoordinator coordinator = new ProcessCoordinator(1);
+		assertFalse(coordinator.run(queue, Collections.singletonList(job(2019, dir.resolve("neexistuje")))));
+		assertEquals(1, queue.getFailed().size());
+
+		// chyba z minulého běhu ve frontě zůstává, výsledek dalšího běhu ale neovlivní
+		assertTrue(coordinator.run(queue, Collections.singletonList(job(2020, dataDir))));
+		assertEquals(1, queue.getFailed().size());
+		assertEquals(1, queue.getDone().size());
+	}
+
+}
@@ -0,0 +1,108 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cz.gattserver.tulaci.calendar.ReferenceDataRegistry.TextBlock;
+
+/**
+ * Sdílení referenčních dat mezi sestaveními
+ *
+ * @author gattaka
+ *
+ */
+public class ReferenceDataRegistryTest {
+
+	private Path dir;
+	private long time = System.currentTimeMillis();
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("tulaci-test");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dir);
+	}
+
+	/**
+	 * Zapíše soubor svátků; každý zápis dostane jiný čas změny, jako by ho upravil člověk
+	 */
+	private Path write(String name, String... lines) throws IOException {
+		Path file = dir.resolve(name);
+		Files.write(file, Arrays.asList(lines));
+		time += 10_000;
+		Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+		return file;
+	}
+
+	@Test
+	public void filesWithSameContentShareTable() throws Exception {
+		ReferenceDataRegistry registry = new ReferenceDataRegistry();
+		Path first = write("a.txt", "1.1.\tNový rok", "2.1.\tKarina");
+		Path second = write("b.txt", "1.1.\tNový rok", "2.1.\tKarina");
+
+		NameDayTable table = registry.getNameDays(first);
+		assertSame(table, registry.getNameDays(second));
+		assertSame(table, registry.getNameDays(first));
+		assertEquals("Karina", table.get(1, 2));
+		assertEquals(1, registry.getNameDayTableCount());
+	}
+
+	@Test
+	public void changedFileIsReadAgainAndOldTableReleased() throws Exception {
+		ReferenceDataRegistry registry = new ReferenceDataRegistry();
+		Path first = write("a.txt", "1.1.\tNový rok");
+		Path second = write("b.txt", "1.1.\tNový rok");
+		NameDayTable original = registry.getNameDays(first);
+		registry.getNameDays(second);
+
+		write("b.txt", "1.1.\tNový rok", "29.2.\tHorymír");
+		NameDayTable changed = registry.getNameDays(second);
+		assertNotSame(original, changed);
+		assertEquals("Horymír", changed.get(2, 29));
+		assertEquals(2, registry.getNameDayTableCount());
+
+		// na původní tabulku už žádný soubor neodkazuje
+		write("a.txt", "1.1.\tNový rok", "29.2.\tHorymír");
+		assertSame(changed, registry.getNameDays(first));
+		assertEquals(1, registry.getNameDayTableCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsBadLine() throws Exception {
+		new ReferenceDataRegistry().getNameDays(write("a.txt", "1.1.\tNový rok", "32.1.\tNikdo"));
+	}
+
+	@Test
+	public void backPageIsBuiltOncePerYear() {
+		ReferenceDataRegistry registry = new ReferenceDataRegistry();
+		List<TextBlock> page = registry.getBackPage(2020);
+
+		assertSame(page, registry.getBackPage(2020));
+		assertEquals(2020, page.get(1).getValue());
+		assertEquals(2021, registry.getBackPage(2021).get(1).getValue());
+	}
+
+	@Test
+	public void namesSheetsAndMonths() {
+		assertEquals("První list", ReferenceDataRegistry.getSheetName(0));
+		assertEquals("Březen", ReferenceDataRegistry.getSheetName(3));
+		assertEquals("BŘEZEN", ReferenceDataRegistry.getMonthTitle(3));
+		assertEquals("Poslední list", ReferenceDataRegistry.getSheetName(ReferenceDataRegistry.SHEET_COUNT - 1));
+	}
+
+}
@@ -0,0 +1,79 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.Test;
+
+/**
+ * Převod modelu listu ({@link SheetLayout}) na list POI
+ *
+ * @author gattaka
+ *
+ */
+public class SheetSerializerTest {
+
+	private static final StyleKey TITLE = StyleKey.centered(24);
+	private static final StyleKey DAY = StyleKey.centered(10);
+
+	private static SheetLayout sampleLayout() {
+		return new SheetLayout.Builder("Leden").columnWidth(0, 3000).columnWidth(2, 1500)
+				.cell(0, 0, "Leden", TITLE).cell(2, 0, 1, DAY).cell(2, 1, "Po", DAY).cell(3, 0, null, DAY)
+				.merge(0, 1, 0, 2).build();
+	}
+
+	@Test
+	public void writesCellsWidthsAndRegions() throws Exception {
+		try (Workbook workbook = new HSSFWorkbook()) {
+			Sheet sheet = new SheetSerializer(workbook).write(sampleLayout(), null);
+
+			assertEquals("Leden", sheet.getSheetName());
+			assertEquals(3000, sheet.getColumnWidth(0));
+			assertEquals(1500, sheet.getColumnWidth(2));
+
+			Cell title = sheet.getRow(0).getCell(0);
+			assertEquals("Leden", title.getStringCellValue());
+			assertEquals(24, workbook.getFontAt(title.getCellStyle().getFontIndex()).getFontHeightInPoints());
+			Cell day = sheet.getRow(2).getCell(0);
+			assertEquals(CellType.NUMERIC, day.getCellTypeEnum());
+			assertEquals(1, day.getNumericCellValue(), 0);
+			assertEquals("Po", sheet.getRow(2).getCell(1).getStringCellValue());
+			// prázdná buňka nese jen styl
+			Cell empty = sheet.getRow(3).getCell(0);
+			assertEquals(CellType.BLANK, empty.getCellTypeEnum());
+			assertEquals(day.getCellStyle().getIndex(), empty.getCellStyle().getIndex());
+
+			assertEquals(1, sheet.getNumMergedRegions());
+			assertEquals("A1:C2", sheet.getMergedRegion(0).formatAsString());
+		}
+	}
+
+	@Test
+	public void sheetsShareStyles() throws Exception {
+		try (Workbook workbook = new HSSFWorkbook()) {
+			SheetSerializer serializer = new SheetSerializer(workbook);
+			serializer.write(sampleLayout(), null);
+			int styles = workbook.getNumCellStyles();
+			serializer.write(new SheetLayout.Builder("Únor").cell(0, 0, "Únor", TITLE).build(), null);
+
+			assertEquals(2, workbook.getNumberOfSheets());
+			assertEquals(styles, workbook.getNumCellStyles());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnsupportedValue() {
+		new SheetLayout.Builder("Leden").cell(0, 0, Boolean.TRUE, DAY);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void layoutCellsAreReadOnly() {
+		// model se sdílí mezi vlákny, měnit ho nejde
+		sampleLayout().getCells().clear();
+	}
+
+}
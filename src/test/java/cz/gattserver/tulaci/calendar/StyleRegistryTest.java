@@ -0,0 +1,72 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.HorizontalAlignment;
+import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sdílení stylů a písem přes {@link StyleRegistry}
+ *
+ * @author gattaka
+ *
+ */
+public class StyleRegistryTest {
+
+	private Path dataDir;
+
+	@Before
+	public void setUp() throws Exception {
+		dataDir = TestInputs.create();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		TestInputs.delete(dataDir);
+	}
+
+	@Test
+	public void sameKeyGivesSameStyle() throws Exception {
+		try (Workbook workbook = new HSSFWorkbook()) {
+			StyleRegistry registry = new StyleRegistry(workbook);
+			int styles = workbook.getNumCellStyles();
+			int fonts = workbook.getNumberOfFonts();
+
+			assertSame(registry.getStyle(StyleKey.centered(12)), registry.getStyle(StyleKey.centered(12)));
+			registry.getStyle(StyleKey.of(12, Font.COLOR_NORMAL, HorizontalAlignment.LEFT, VerticalAlignment.TOP));
+
+			// jiné zarovnání je nový styl, písmo se ale sdílí
+			assertEquals(2, registry.getStyleCount());
+			assertEquals(1, registry.getFontCount());
+			assertEquals(styles + 2, workbook.getNumCellStyles());
+			assertEquals(fonts + 1, workbook.getNumberOfFonts());
+		}
+	}
+
+	@Test
+	public void wholeCalendarSharesStyles() throws Exception {
+		CalendarBuilder builder = new CalendarBuilder();
+		builder.setDataDir(dataDir);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		builder.build(bytes);
+
+		// bez registru měl sešit 882 stylů a 865 písem
+		try (Workbook workbook = new HSSFWorkbook(new ByteArrayInputStream(bytes.toByteArray()))) {
+			assertEquals(14, workbook.getNumberOfSheets());
+			assertEquals(37, workbook.getNumCellStyles());
+			assertEquals(19, workbook.getNumberOfFonts());
+		}
+	}
+
+}
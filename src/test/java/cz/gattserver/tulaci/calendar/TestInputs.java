@@ -0,0 +1,68 @@
+package cz.gattserver.tulaci.calendar;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Vstupy pro testy -- textové soubory z ukázkového adresáře {@code data} a k nim vygenerované malé fotky, které
+ * v repozitáři nejsou.
+ *
+ * @author gattaka
+ *
+ */
+final class TestInputs {
+
+	static final Path SAMPLE_DIR = Paths.get("data");
+
+	private TestInputs() {
+	}
+
+	/**
+	 * Zkopíruje ukázková data do dočasného adresáře a doplní fotky ze {@code foto.txt}
+	 */
+	static Path create() throws IOException {
+		Path dir = Files.createTempDirectory("tulaci-test");
+		try (Stream<Path> files = Files.list(SAMPLE_DIR)) {
+			for (Path file : (Iterable<Path>) files::iterator)
+				Files.copy(file, dir.resolve(file.getFileName().toString()));
+		}
+		List<String> photos = Files.readAllLines(dir.resolve("foto.txt"));
+		Random random = new Random(42);
+		for (String line : photos)
+			writePhoto(dir.resolve(line.split("\t")[0]), 640, 480, random);
+		return dir;
+	}
+
+	static void writePhoto(Path path, int width, int height, Random random) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setPaint(new GradientPaint(0, 0, new Color(random.nextInt()), width, height,
+					new Color(random.nextInt())));
+			g.fillRect(0, 0, width, height);
+		} finally {
+			g.dispose();
+		}
+		ImageIO.write(image, "jpg", path.toFile());
+	}
+
+	static void delete(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(path);
+		}
+	}
+
+}
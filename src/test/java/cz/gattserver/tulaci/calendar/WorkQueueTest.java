@@ -0,0 +1,158 @@
+package cz.gattserver.tulaci.calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Souborová fronta úloh -- přivlastnění, dokončení a návrat úloh mrtvých workerů
+ *
+ * @author gattaka
+ *
+ */
+public class WorkQueueTest {
+
+	/**
+	 * Worker, jehož proces neběží (takové PID systém nepřidělí)
+	 */
+	private static final String DEAD_WORKER = Integer.MAX_VALUE + "-dead";
+
+	private Path dir;
+	private WorkQueue queue;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("tulaci-queue");
+		queue = new WorkQueue(dir);
+		queue.enqueue(Arrays.asList(job(2019), job(2020)));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		try (Stream<Path> files = Files.walk(dir)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(file);
+		}
+	}
+
+	private static BatchJob job(int year) {
+		return new BatchJob(year, Paths.get("data"), Paths.get("kalendar" + year + ".xls"));
+	}
+
+	private String liveWorker() throws IOException {
+		String workerId = WorkQueue.newWorkerId();
+		queue.heartbeat(workerId);
+		return workerId;
+	}
+
+	@Test
+	public void claimsInOrderAndCompletes() throws Exception {
+		String worker = liveWorker();
+		WorkQueue.Entry first = queue.claim(worker);
+		WorkQueue.Entry second = queue.claim(worker);
+		assertEquals(2019, first.getJob().getYear());
+		assertEquals(2020, second.getJob().getYear());
+		assertEquals(1, first.getAttempts());
+		assertNull(queue.claim(worker));
+		assertFalse(queue.isFinished());
+
+		assertTrue(queue.complete(worker, first, 42, null));
+		assertTrue(queue.complete(worker, second, 7, new IOException("Chybí data")));
+		assertTrue(queue.isFinished());
+		assertEquals(1, queue.getDone().size());
+		assertEquals(42, queue.getDone().get(0).getDurationMillis());
+		assertNull(queue.getDone().get(0).getError());
+		assertEquals(1, queue.getFailed().size());
+		assertEquals("Chybí data", queue.getFailed().get(0).getError());
+	}
+
+	@Test
+	public void enqueueContinuesNumbering() throws Exception {
+		String worker = liveWorker();
+		WorkQueue.Entry first = queue.claim(worker);
+		queue.complete(worker, first, 0, null);
+		queue.enqueue(Arrays.asList(job(2021)));
+		WorkQueue.Entry second = queue.claim(worker);
+		WorkQueue.Entry third = queue.claim(worker);
+		assertEquals(2020, second.getJob().getYear());
+		assertEquals(2021, third.getJob().getYear());
+		assertNotEquals(first.getId(), third.getId());
+	}
+
+	@Test
+	public void reclaimsJobOfDeadWorker() throws Exception {
+		WorkQueue.Entry lost = queue.claim(DEAD_WORKER);
+		String worker = liveWorker();
+		WorkQueue.Entry retried = queue.claim(worker);
+		assertEquals(lost.getId(), retried.getId());
+		assertEquals(2, retried.getAttempts());
+
+		// mrtvý worker už výsledek zapsat nesmí
+		assertFalse(queue.complete(DEAD_WORKER, lost, 0, null));
+		assertTrue(queue.complete(worker, retried, 0, null));
+		assertEquals(1, queue.getDone().size());
+	}
+
+	@Test
+	public void keepsJobOfLiveWorker() throws Exception {
+		String owner = liveWorker();
+		WorkQueue.Entry first = queue.claim(owner);
+		WorkQueue.Entry second = queue.claim(liveWorker());
+		assertNotEquals(first.getId(), second.getId());
+		assertTrue(queue.complete(owner, first, 0, null));
+	}
+
+	@Test
+	public void reclaimsAfterHeartbeatTimeout() throws Exception {
+		String owner = liveWorker();
+		WorkQueue.Entry stale = queue.claim(owner);
+		Path heartbeat = dir.resolve("workers").resolve(owner + ".heartbeat");
+		Files.setLastModifiedTime(heartbeat, FileTime.fromMillis(
+				System.currentTimeMillis() - WorkQueue.DEFAULT_HEARTBEAT_TIMEOUT_MILLIS - 1000));
+		WorkQueue.Entry retried = queue.claim(liveWorker());
+		assertEquals(stale.getId(), retried.getId());
+		assertFalse(queue.complete(owner, stale, 0, null));
+	}
+
+	@Test
+	public void retireReturnsUnfinishedJobs() throws Exception {
+		String worker = liveWorker();
+		WorkQueue.Entry entry = queue.claim(worker);
+		queue.retire(worker);
+		assertEquals(entry.getId(), queue.claim(liveWorker()).getId());
+	}
+
+	@Test
+	public void failsAfterMaxAttempts() throws Exception {
+		String id = null;
+		for (int i = 0; i < WorkQueue.MAX_ATTEMPTS; i++) {
+			WorkQueue.Entry entry = queue.claim(DEAD_WORKER);
+			assertEquals(i + 1, entry.getAttempts());
+			if (id != null)
+				assertEquals(id, entry.getId());
+			id = entry.getId();
+		}
+		// návrat do fronty při dalším přivlastnění úlohu už jen odloží mezi chybné
+		WorkQueue.Entry next = queue.claim(liveWorker());
+		assertNotEquals(id, next.getId());
+		assertEquals(1, queue.getFailed().size());
+		assertEquals(id, queue.getFailed().get(0).getId());
+		assertEquals(WorkQueue.MAX_ATTEMPTS, queue.getFailed().get(0).getAttempts());
+	}
+
+}